@@ -0,0 +1,22 @@
+#!/bin/sh
+# Runs the benchmarks from the jar built by "mvn package" with the same JVM
+# settings as run.sh. Without a benchmark name every benchmark is run;
+# otherwise the first argument names one, e.g.
+#   ./bench.sh SearchBenchmark -tweets 200000
+# See bench/README.txt for the arguments.
+
+HEAP=${HEAP:-2g}
+DIR=$(dirname "$0")
+JAR="$DIR/bench/target/tweet-search-bench.jar"
+JVM="-Xms$HEAP -Xmx$HEAP -XX:+AlwaysPreTouch -XX:+UseParallelGC -Dfile.encoding=UTF-8"
+
+case "$1" in
+    [A-Z]*)
+        NAME=$1
+        shift
+        exec java $JVM $JAVA_OPTS -cp "$JAR" "$NAME" "$@"
+        ;;
+    *)
+        exec java $JVM $JAVA_OPTS -jar "$JAR" "$@"
+        ;;
+esac
@@ -0,0 +1,55 @@
+import java.util.Map;
+
+/*
+ * The analyzer choices side by side on a synthetic corpus: for each one the
+ * index is built through QueryProcessor, and its build time, vocabulary and
+ * size are printed, followed by the latency and MAP of a plain search pass
+ * over all the queries, with the result cache off.
+ *
+ * Arguments: [-tweets N] [-topics N] [-warmup N] [-rounds N]
+ */
+public class AnalyzerBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		Bench.configure(args);
+		int numTopics = Bench.intArgument(args, "-topics", 49);
+		String folder = SyntheticCorpus.writeTemporary(
+			Bench.intArgument(args, "-tweets", 100000), numTopics);
+		TrecEvaluator evaluator =
+			new TrecEvaluator(folder + SyntheticCorpus.QRELS_FILE);
+
+		for(QueryProcessor.AnalyzerChoice ac :
+				QueryProcessor.AnalyzerChoice.values()) {
+			final QueryProcessor processor = new QueryProcessor(
+				folder + SyntheticCorpus.TWEETS_FILE,
+				folder + SyntheticCorpus.QUERIES_FILE,
+				folder + "vocabulary.txt",
+				folder + "results.txt",
+				false, new Double[3], null, false, null, ac);
+			processor.setResultCache(0, null);
+			processor.open();
+
+			Metrics metrics = processor.getMetrics();
+			Map<String, Long> statistics = metrics.getIndexStatistics();
+			System.out.println(String.format(
+				"%-10s built in %d ms: %d terms, %d postings, %d bytes",
+				ac.name().toLowerCase(),
+				metrics.getPhaseWallMillis().get("buildIndex"),
+				statistics.get("tweet.terms"),
+				statistics.get("tweet.postings"),
+				statistics.get("bytes")));
+
+			final ScoringOptions options = processor.getScoringOptions();
+			double nanos = Bench.run("search pass, " + ac.name().toLowerCase(),
+				1, new Bench.Body() {
+					public Object run() {
+						return processor.search(options);
+					}
+				});
+			System.out.println(String.format("%-40s %14.1f us/query, MAP %.4f",
+				"", nanos / numTopics / 1000,
+				evaluator.evaluate(processor.search(options)).meanAveragePrecision()));
+			processor.close();
+		}
+	}
+}
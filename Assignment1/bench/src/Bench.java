@@ -0,0 +1,85 @@
+import java.lang.management.ManagementFactory;
+
+/*
+ * Tiny benchmark harness for the classes in ../src. Runs a body for some
+ * warmup rounds, then times the measured rounds and reports the mean time
+ * and heap allocation per operation.
+ *
+ * Compile from the Assignment1 folder after compiling the program to ./bin:
+ *
+ * javac -cp "./bin:./lib/*" -d ./bin/bench ./bench/src/*
+ *
+ * and run a benchmark with, for example:
+ *
+ * java -cp "./bin:./bin/bench:./lib/*" TopKBenchmark
+ *
+ * BenchmarkSuite runs all of them. See bench/README.txt.
+ */
+public class Bench {
+
+	// A piece of work to time. Returns something so it cannot be optimized away
+	public interface Body {
+		Object run() throws Exception;
+	}
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+		(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	// Keeps results reachable so the JIT has to compute them
+	private static volatile Object sink;
+
+	private static int warmupRounds = 5;
+	private static int measuredRounds = 10;
+
+	/* Reads "-warmup N" and "-rounds N" from a benchmark's arguments.
+	 */
+	public static void configure(String[] args) {
+		for(int i = 0; i + 1 < args.length; i++) {
+			if(args[i].equals("-warmup")) {
+				warmupRounds = Integer.parseInt(args[i + 1]);
+			} else if(args[i].equals("-rounds")) {
+				measuredRounds = Integer.parseInt(args[i + 1]);
+			}
+		}
+	}
+
+	// The integer after a flag in a benchmark's arguments, or the default
+	public static int intArgument(String[] args, String flag, int defaultValue) {
+		for(int i = 0; i + 1 < args.length; i++) {
+			if(args[i].equals(flag)) {
+				return Integer.parseInt(args[i + 1]);
+			}
+		}
+		return defaultValue;
+	}
+
+	/* Runs the body opsPerRound times per round and prints
+	 * name, ns/op and bytes/op. Returns the ns/op.
+	 */
+	public static double run(String name, int opsPerRound, Body body)
+			throws Exception {
+		for(int r = 0; r < warmupRounds; r++) {
+			for(int i = 0; i < opsPerRound; i++) {
+				sink = body.run();
+			}
+		}
+
+		long threadId = Thread.currentThread().getId();
+		long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+
+		for(int r = 0; r < measuredRounds; r++) {
+			for(int i = 0; i < opsPerRound; i++) {
+				sink = body.run();
+			}
+		}
+
+		long elapsed = System.nanoTime() - start;
+		long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+		long ops = (long) opsPerRound * measuredRounds;
+
+		System.out.println(String.format("%-40s %14.1f ns/op %14.1f B/op",
+			name, elapsed / (double) ops, allocated / (double) ops));
+		return elapsed / (double) ops;
+	}
+}
@@ -0,0 +1,28 @@
+/*
+ * Runs every benchmark one after another with the same arguments, each
+ * benchmark reading the ones it uses.
+ *
+ * Arguments: [-tweets N] [-topics N] [-threads N] [-numR N] [-batch N]
+ *            [-hits N] [-warmup N] [-rounds N]
+ */
+public class BenchmarkSuite {
+
+	public static void main(String[] args) throws Exception {
+		System.out.println("== Indexing");
+		IndexingBenchmark.main(args);
+		System.out.println("== Corpus reader");
+		CorpusReaderBenchmark.main(args);
+		System.out.println("== Search");
+		SearchBenchmark.main(args);
+		System.out.println("== Analyzers");
+		AnalyzerBenchmark.main(args);
+		System.out.println("== Relevance feedback");
+		FeedbackBenchmark.main(args);
+		System.out.println("== Hashtag merge");
+		TopKBenchmark.main(args);
+		System.out.println("== Cosine similarity");
+		CosineSimilarityBenchmark.main(args);
+		System.out.println("== Output");
+		OutputBuilderBenchmark.main(args);
+	}
+}
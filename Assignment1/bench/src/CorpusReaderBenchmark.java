@@ -0,0 +1,184 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.util.Version;
+
+/*
+ * Reading the tweets file into documents and running their fields through
+ * the analyzer, without indexing them: the line reader path TweetIndexer
+ * used before (a BufferedReader, split() and a new Document per tweet),
+ * the line reader with a reused TweetDocument, and the memory mapped file
+ * TweetIndexer uses now.
+ *
+ * Arguments: [-tweets N] [-warmup N] [-rounds N]
+ */
+@SuppressWarnings("deprecation")
+public class CorpusReaderBenchmark {
+
+	// The tweet field type before the text was stored as bytes
+	private static final FieldType TYPE_STORED = 
+		new FieldType(QueryProcessor.TYPE_TEXT);
+
+	static {
+		TYPE_STORED.setStored(true);
+		TYPE_STORED.freeze();
+	}
+
+	public static void main(String[] args) throws Exception {
+		Bench.configure(args);
+		final int numTweets = Bench.intArgument(args, "-tweets", 100000);
+		final String tweetsFile = SyntheticCorpus.writeTemporary(numTweets, 49)
+			+ SyntheticCorpus.TWEETS_FILE;
+		final Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_40);
+
+		report(numTweets, Bench.run("line reader, split, new documents", 1,
+			new Bench.Body() {
+				public Object run() throws Exception {
+					return readLines(tweetsFile, analyzer);
+				}
+			}));
+		report(numTweets, Bench.run("line reader, reused TweetDocument", 1,
+			new Bench.Body() {
+				public Object run() throws Exception {
+					return readLinesReused(tweetsFile, analyzer);
+				}
+			}));
+		report(numTweets, Bench.run("mapped file, reused TweetDocument", 1,
+			new Bench.Body() {
+				public Object run() throws Exception {
+					return readMapped(tweetsFile, analyzer);
+				}
+			}));
+	}
+
+	private static void report(int numTweets, double nanos) {
+		System.out.println(String.format("%-40s %14.0f tweets/sec", "",
+			numTweets / (nanos / 1e9)));
+	}
+
+	private static long readLines(String tweetsFile, Analyzer analyzer)
+			throws Exception {
+		BufferedReader in = new BufferedReader(new FileReader(new File(tweetsFile)));
+		Map<String, TokenStream> streams = new HashMap<String, TokenStream>();
+		long tokens = 0;
+		try {
+			String tweet;
+			while((tweet = in.readLine()) != null) {
+				Document doc = buildDocument(tweet);
+				if(doc != null) {
+					tokens += analyze(doc, analyzer, streams);
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return tokens;
+	}
+
+	private static long readLinesReused(String tweetsFile, Analyzer analyzer)
+			throws Exception {
+		BufferedReader in = new BufferedReader(new FileReader(new File(tweetsFile)));
+		TweetDocument builder = new TweetDocument(analyzer);
+		Map<String, TokenStream> streams = new HashMap<String, TokenStream>();
+		long tokens = 0;
+		try {
+			String tweet;
+			while((tweet = in.readLine()) != null) {
+				Document doc = builder.set(tweet);
+				if(doc != null) {
+					tokens += analyze(doc, analyzer, streams);
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return tokens;
+	}
+
+	private static long readMapped(String tweetsFile, Analyzer analyzer)
+			throws Exception {
+		MappedTweetFile in = new MappedTweetFile(tweetsFile);
+		TweetDocument builder = new TweetDocument(analyzer);
+		Map<String, TokenStream> streams = new HashMap<String, TokenStream>();
+		long tokens = 0;
+		try {
+			MappedTweetFile.Lines lines;
+			while((lines = in.nextLines(256)) != null) {
+				for(int i = 0; i < lines.count; i++) {
+					Document doc = builder.set(lines.bytes, lines.starts[i],
+						lines.ends[i]);
+					if(doc != null) {
+						tokens += analyze(doc, analyzer, streams);
+					}
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return tokens;
+	}
+
+	/* Runs the tokenized fields through the analyzer, reusing each field's
+	 * token stream as IndexWriter does
+	 */
+	private static long analyze(Document doc, Analyzer analyzer,
+								Map<String, TokenStream> streams) throws Exception {
+		long tokens = 0;
+		for(IndexableField field : doc) {
+			if(!field.fieldType().indexed() || !field.fieldType().tokenized()) {
+				continue;
+			}
+			TokenStream stream = field.tokenStream(analyzer, 
+				streams.get(field.name()));
+			streams.put(field.name(), stream);
+			try {
+				stream.reset();
+				while(stream.incrementToken()) {
+					tokens++;
+				}
+				stream.end();
+			} finally {
+				stream.close();
+			}
+		}
+		return tokens;
+	}
+
+	// The document as TweetIndexer built it before TweetDocument
+	private static Document buildDocument(String tweet) {
+		String[] idAndMessage = tweet.split("\t");
+		if(idAndMessage.length < 2) {
+			return null;
+		}
+
+		Document doc = new Document();
+		doc.add(new Field("tweet", idAndMessage[1], TYPE_STORED));
+		doc.add(new StringField("id", idAndMessage[0], Store.NO));
+		doc.add(new NumericDocValuesField("id", Long.parseLong(idAndMessage[0])));
+		doc.add(new NumericDocValuesField("simhash",
+			SimHash.compute(idAndMessage[1])));
+
+		String hashtags = "";
+		String[] tweetWords = idAndMessage[1].split(" ");
+		for(int i = 0; i < tweetWords.length; i++) {
+			if(tweetWords[i].contains("#")) {
+				hashtags += tweetWords[i].replace("#", "") + " ";
+			}
+		}
+		doc.add(new Field("Hashtags", hashtags, QueryProcessor.TYPE_HASHTAG));
+		return doc;
+	}
+}
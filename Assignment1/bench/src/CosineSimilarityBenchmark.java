@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.SimpleAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.Version;
+
+/*
+ * Pairwise tweet similarity: the old one-RAMDirectory-per-pair approach
+ * against CosineDocumentSimilarity, pairwise and in batches of one text
+ * against many.
+ *
+ * Arguments: [-batch N] [-warmup N] [-rounds N]
+ */
+@SuppressWarnings("deprecation")
+public class CosineSimilarityBenchmark {
+
+	private static final FieldType TYPE_VECTORS = new FieldType();
+
+	static {
+		TYPE_VECTORS.setIndexed(true);
+		TYPE_VECTORS.setTokenized(true);
+		TYPE_VECTORS.setStoreTermVectors(true);
+		TYPE_VECTORS.freeze();
+	}
+
+	public static void main(String[] args) throws Exception {
+		Bench.configure(args);
+
+		int batch = 100;
+		for(int i = 0; i + 1 < args.length; i++) {
+			if(args[i].equals("-batch")) {
+				batch = Integer.parseInt(args[i + 1]);
+			}
+		}
+
+		final String[] tweets = new SyntheticTweets(7).tweets(batch + 1);
+		final String query = tweets[0];
+		final String[] documents = new String[batch];
+		System.arraycopy(tweets, 1, documents, 0, batch);
+
+		final CosineDocumentSimilarity similarity =
+			new CosineDocumentSimilarity(new SimpleAnalyzer(Version.LUCENE_40));
+		final Random random = new Random(1);
+
+		Bench.run("RAMDirectory per pair", 200, new Bench.Body() {
+			public Object run() throws IOException {
+				return ramDirectoryCosine(query, 
+					documents[random.nextInt(documents.length)]);
+			}
+		});
+
+		Bench.run("sparse vectors per pair", 20000, new Bench.Body() {
+			public Object run() throws IOException {
+				return similarity.similarity(query, 
+					documents[random.nextInt(documents.length)]);
+			}
+		});
+
+		Bench.run("sparse vectors, batch of " + batch, 200, new Bench.Body() {
+			public Object run() throws IOException {
+				return similarity.similarities(query, documents);
+			}
+		});
+	}
+
+	// What CosineDocumentSimilarity used to do for every pair
+	private static double ramDirectoryCosine(String s1, String s2)
+			throws IOException {
+		Directory directory = new RAMDirectory();
+		Analyzer analyzer = new SimpleAnalyzer(Version.LUCENE_40);
+		IndexWriter writer = new IndexWriter(directory, 
+			new IndexWriterConfig(Version.LUCENE_40, analyzer));
+
+		for(String s : new String[] {s1, s2}) {
+			Document doc = new Document();
+			doc.add(new Field("Content", s, TYPE_VECTORS));
+			writer.addDocument(doc);
+		}
+		writer.close();
+
+		IndexReader reader = DirectoryReader.open(directory);
+		Map<String, Integer> f1 = frequencies(reader, 0);
+		Map<String, Integer> f2 = frequencies(reader, 1);
+		reader.close();
+
+		Set<String> terms = new HashSet<String>(f1.keySet());
+		terms.addAll(f2.keySet());
+
+		double dot = 0, norm1 = 0, norm2 = 0;
+		for(String term : terms) {
+			int a = f1.containsKey(term) ? f1.get(term) : 0;
+			int b = f2.containsKey(term) ? f2.get(term) : 0;
+			dot += a * b;
+			norm1 += a * a;
+			norm2 += b * b;
+		}
+		return dot / Math.sqrt(norm1 * norm2);
+	}
+
+	private static Map<String, Integer> frequencies(IndexReader reader, int doc)
+			throws IOException {
+		Map<String, Integer> frequencies = new HashMap<String, Integer>();
+		Terms vector = reader.getTermVector(doc, "Content");
+		if(vector == null) {
+			return frequencies;
+		}
+
+		TermsEnum termsEnum = vector.iterator(null);
+		BytesRef text;
+		while((text = termsEnum.next()) != null) {
+			frequencies.put(text.utf8ToString(), (int) termsEnum.totalTermFreq());
+		}
+		return frequencies;
+	}
+}
@@ -0,0 +1,108 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+
+/*
+ * The cost of relevance feedback on its own: expanding each query from
+ * its first results with RelevanceFeedback (loading and vectorizing the
+ * top tweets), then the second search with the expanded query. This is
+ * what evaluateQueryWithRelevanceFeedback adds to a query. With -fbCache N
+ * the term vectors of the feedback documents are cached, as QueryProcessor
+ * does, so every round after the first finds them there.
+ *
+ * Arguments: [-tweets N] [-topics N] [-numR N] [-fbCache N] [-warmup N]
+ *            [-rounds N]
+ */
+@SuppressWarnings("deprecation")
+public class FeedbackBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		Bench.configure(args);
+		int numR = Bench.intArgument(args, "-numR", 5);
+		int cacheEntries = Bench.intArgument(args, "-fbCache", 0);
+		String folder = SyntheticCorpus.writeTemporary(
+			Bench.intArgument(args, "-tweets", 100000),
+			Bench.intArgument(args, "-topics", 49));
+
+		Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_40);
+		RAMDirectory directory = new RAMDirectory();
+		IndexWriter writer = new IndexWriter(directory, 
+			new IndexWriterConfig(Version.LUCENE_40, analyzer));
+		new TweetIndexer(writer, 1).index(folder + SyntheticCorpus.TWEETS_FILE);
+		writer.close();
+
+		final IndexSearcher searcher = 
+			new IndexSearcher(DirectoryReader.open(directory));
+		final TopKCollector collector = new TopKCollector(1000);
+
+		// each query with its first results
+		QueryParser parser = new QueryParser(Version.LUCENE_40, "tweet", analyzer);
+		final List<Query> queries = new ArrayList<Query>();
+		final List<RankedDocs> firstResults = new ArrayList<RankedDocs>();
+		for(String title : titles(folder + SyntheticCorpus.QUERIES_FILE)) {
+			Query query = parser.parse(title);
+			collector.reset();
+			searcher.search(query, collector);
+			queries.add(query);
+			firstResults.add(collector.toRankedDocs());
+		}
+
+		TermVectorCache cache = cacheEntries > 0 ?
+			new TermVectorCache(cacheEntries, new Metrics()) : null;
+		final TermDictionary dictionary = new TermDictionary();
+		final RelevanceFeedback feedback = new RelevanceFeedback(analyzer,
+			cache, 1, 5.5, 0, numR, 50);
+
+		Bench.run("feedback expansion, numR " + numR, queries.size(),
+			new Bench.Body() {
+				int next;
+
+				public Object run() throws Exception {
+					int i = next++ % queries.size();
+					return feedback.expand(queries.get(i), searcher, 
+						dictionary, 0, firstResults.get(i));
+				}
+			});
+
+		Bench.run("expansion and second search", queries.size(),
+			new Bench.Body() {
+				int next;
+
+				public Object run() throws Exception {
+					int i = next++ % queries.size();
+					Query expanded = feedback.expand(queries.get(i), searcher, 
+						dictionary, 0, firstResults.get(i));
+					collector.reset();
+					if(expanded != null) {
+						searcher.search(expanded, collector);
+					}
+					return collector.toRankedDocs();
+				}
+			});
+	}
+
+	static List<String> titles(String queriesFile) throws Exception {
+		List<String> titles = new ArrayList<String>();
+		BufferedReader in = new BufferedReader(new FileReader(queriesFile));
+		String line;
+		while((line = in.readLine()) != null) {
+			if(line.startsWith("<title>")) {
+				titles.add(line.replace("<title>", "").replace("</title>", "").trim());
+			}
+		}
+		in.close();
+		return titles;
+	}
+}
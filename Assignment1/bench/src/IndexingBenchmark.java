@@ -0,0 +1,49 @@
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+
+/*
+ * Indexing throughput of TweetIndexer on a synthetic corpus, into memory,
+ * with one worker thread and with one per core.
+ *
+ * Arguments: [-tweets N] [-threads N] [-warmup N] [-rounds N]
+ */
+@SuppressWarnings("deprecation")
+public class IndexingBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		Bench.configure(args);
+		final int numTweets = Bench.intArgument(args, "-tweets", 100000);
+		int cores = Bench.intArgument(args, "-threads", 
+			Runtime.getRuntime().availableProcessors());
+		final String tweetsFile = SyntheticCorpus.writeTemporary(numTweets, 49)
+			+ SyntheticCorpus.TWEETS_FILE;
+
+		int[] threadCounts = cores > 1 ? new int[] { 1, cores } : new int[] { 1 };
+		for(final int threads : threadCounts) {
+			double nanos = Bench.run("index " + numTweets + " tweets, " 
+				+ threads + " threads", 1, new Bench.Body() {
+					public Object run() throws Exception {
+						return index(tweetsFile, threads);
+					}
+				});
+			System.out.println(String.format("%-40s %14.0f docs/sec", "",
+				numTweets / (nanos / 1e9)));
+		}
+	}
+
+	private static RAMDirectory index(String tweetsFile, int threads)
+			throws Exception {
+		IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_40,
+			new StandardAnalyzer(Version.LUCENE_40));
+		config.setMaxThreadStates(threads);
+
+		RAMDirectory directory = new RAMDirectory();
+		IndexWriter writer = new IndexWriter(directory, config);
+		new TweetIndexer(writer, threads).index(tweetsFile);
+		writer.close();
+		return directory;
+	}
+}
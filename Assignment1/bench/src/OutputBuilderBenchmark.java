@@ -0,0 +1,61 @@
+import java.io.File;
+import java.util.Random;
+
+/*
+ * Writing a full results file with OutputBuilder: 1000 rows for each
+ * topic, in the TREC text format alone and with the binary run file too.
+ *
+ * Arguments: [-topics N] [-warmup N] [-rounds N]
+ */
+public class OutputBuilderBenchmark {
+
+	private static final int NUM_HITS = 1000;
+
+	public static void main(String[] args) throws Exception {
+		Bench.configure(args);
+		final int numTopics = Bench.intArgument(args, "-topics", 49);
+
+		final String[] queryNums = new String[numTopics];
+		for(int t = 0; t < numTopics; t++) {
+			queryNums[t] = String.format("MB%03d", t + 1);
+		}
+
+		Random random = new Random(3);
+		final long[] ids = new long[NUM_HITS];
+		final float[] scores = new float[NUM_HITS];
+		for(int i = 0; i < NUM_HITS; i++) {
+			ids[i] = 28965131362770944L + random.nextInt(1 << 30);
+			scores[i] = 20 * random.nextFloat();
+		}
+
+		final File text = File.createTempFile("results", ".txt");
+		final File binary = File.createTempFile("results", ".bin");
+		text.deleteOnExit();
+		binary.deleteOnExit();
+
+		Bench.run("results file, " + numTopics + " topics", 1, new Bench.Body() {
+			public Object run() {
+				return write(new OutputBuilder(text.getPath()), queryNums, ids, scores);
+			}
+		});
+
+		Bench.run("results and binary file", 1, new Bench.Body() {
+			public Object run() {
+				return write(new OutputBuilder(text.getPath(), binary.getPath()), 
+					queryNums, ids, scores);
+			}
+		});
+	}
+
+	private static OutputBuilder write(OutputBuilder output, String[] queryNums,
+									   long[] ids, float[] scores) {
+		for(String queryNum : queryNums) {
+			output.resetRank();
+			for(int i = 0; i < ids.length; i++) {
+				output.add(queryNum, ids[i], scores[i]);
+			}
+		}
+		output.close();
+		return output;
+	}
+}
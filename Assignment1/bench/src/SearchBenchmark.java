@@ -0,0 +1,79 @@
+/*
+ * Search latency through QueryProcessor on a synthetic corpus: one pass
+ * over all the queries with plain scoring, hashtag scoring (the fused
+ * tweet and hashtag query), relevance feedback and both, then plain passes
+ * with each of the other ranking models. The index is built once and every
+ * pass shares its searcher, as in a parameter sweep. Each pass's MAP on
+ * the corpus's judgments is printed with its latency. With -shards the
+ * index is split into that many shards searched concurrently. The result
+ * cache is off, since every round repeats the same searches; -cache N
+ * turns it on to measure searches answered from it.
+ *
+ * Arguments: [-tweets N] [-topics N] [-shards N] [-cache N] [-warmup N]
+ *            [-rounds N]
+ */
+public class SearchBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		Bench.configure(args);
+		int numTopics = Bench.intArgument(args, "-topics", 49);
+		String folder = SyntheticCorpus.writeTemporary(
+			Bench.intArgument(args, "-tweets", 100000), numTopics);
+
+		final QueryProcessor processor = new QueryProcessor(
+			folder + SyntheticCorpus.TWEETS_FILE,
+			folder + SyntheticCorpus.QUERIES_FILE,
+			folder + "vocabulary.txt",
+			folder + "results.txt",
+			false, new Double[3], null, false, null,
+			QueryProcessor.AnalyzerChoice.STANDARD);
+		processor.setShards(Bench.intArgument(args, "-shards", 1), false);
+		processor.setResultCache(Bench.intArgument(args, "-cache", 0), null);
+		processor.open();
+
+		TrecEvaluator evaluator = 
+			new TrecEvaluator(folder + SyntheticCorpus.QRELS_FILE);
+		ScoringOptions defaults = processor.getScoringOptions();
+		ScoringOptions[] passes = {
+			options(defaults, false, false, defaults.rankTool),
+			options(defaults, false, true, defaults.rankTool),
+			options(defaults, true, false, defaults.rankTool),
+			options(defaults, true, true, defaults.rankTool),
+			options(defaults, false, false, model("bm25")),
+			options(defaults, false, false, model("lm")),
+			options(defaults, false, false, model("recency"))
+		};
+		String[] names = { "plain", "hashtags (-t)", "feedback (-r)",
+			"feedback and hashtags (-r -t)", "bm25", "lm", "recency" };
+
+		for(int i = 0; i < passes.length; i++) {
+			final ScoringOptions pass = passes[i];
+			double nanos = Bench.run("search pass, " + names[i], 1,
+				new Bench.Body() {
+					public Object run() {
+						return processor.search(pass);
+					}
+				});
+			System.out.println(String.format("%-40s %14.1f us/query, MAP %.4f", 
+				"", nanos / numTopics / 1000, 
+				evaluator.evaluate(processor.search(pass)).meanAveragePrecision()));
+		}
+	}
+
+	private static RankTool model(String name) {
+		return RankTool.forName(name, RankTool.DEFAULT_HALF_LIFE_HOURS);
+	}
+
+	private static ScoringOptions options(ScoringOptions defaults,
+										  boolean feedback, boolean hashtags,
+										  RankTool rankTool) {
+		return new ScoringOptions(feedback,
+								  defaults.originalQueryCoefficient,
+								  defaults.relevantQueryCoefficient,
+								  defaults.irrelevantQueryCoefficient,
+								  defaults.relevantDocumentsConsidered,
+								  hashtags,
+								  defaults.hashtagScoreCoefficient,
+								  rankTool);
+	}
+}
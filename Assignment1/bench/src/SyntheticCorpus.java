@@ -0,0 +1,216 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/*
+ * Writes a stand-in for the res folder so the program and the benchmarks
+ * can run without the licensed TREC microblog data: input_tweets.txt,
+ * test_queries.txt and Trec_microblog11-qrels.txt in the same formats.
+ *
+ * Tweets come from SyntheticTweets and get Twitter style ids that grow
+ * with their time, over two weeks. Each topic has a few mid-frequency
+ * words as its title and a small share of the tweets are written about
+ * one topic. Those are judged: relevant when they hold the whole title
+ * and were posted before the query time, not relevant otherwise.
+ *
+ * Arguments: [-tweets N] [-topics N] [-seed N] [-out FOLDER]
+ *
+ * java -cp "./bin/bench:./lib/*" SyntheticCorpus -tweets 1000000 -out res/
+ */
+public class SyntheticCorpus {
+
+	public static final String TWEETS_FILE = "input_tweets.txt";
+	public static final String QUERIES_FILE = "test_queries.txt";
+	public static final String QRELS_FILE = "Trec_microblog11-qrels.txt";
+
+	// Twitter's id epoch and the start of the corpus, 2011-01-24 UTC
+	private static final long TWITTER_EPOCH = 1288834974657L;
+	private static final long FIRST_TIME = 1295827200000L;
+	private static final long TIME_SPAN = 14L * 24 * 60 * 60 * 1000;
+
+	// Share of tweets written about a topic
+	private static final double ON_TOPIC = 0.02;
+	// Title words are drawn from this band of vocabulary ranks
+	private static final int TITLE_RANK_START = 200;
+	private static final int TITLE_RANK_END = 5000;
+
+	private final int numTweets;
+	private final int numTopics;
+	private final long seed;
+
+	public SyntheticCorpus(int numTweets, int numTopics, long seed) {
+		this.numTweets = numTweets;
+		this.numTopics = numTopics;
+		this.seed = seed;
+	}
+
+	public static void main(String[] args) throws IOException {
+		String folder = "res/";
+		for(int i = 0; i + 1 < args.length; i++) {
+			if(args[i].equals("-out")) {
+				folder = args[i + 1];
+			}
+		}
+
+		SyntheticCorpus corpus = new SyntheticCorpus(
+			Bench.intArgument(args, "-tweets", 100000),
+			Bench.intArgument(args, "-topics", 49),
+			Bench.intArgument(args, "-seed", 7));
+		corpus.write(folder);
+	}
+
+	/* Writes the corpus to a new temporary folder that is deleted when the
+	 * JVM exits, and returns the folder with a trailing separator.
+	 */
+	public static String writeTemporary(int numTweets, int numTopics)
+			throws IOException {
+		final File folder = File.createTempFile("tweets", "");
+		folder.delete();
+		folder.mkdirs();
+
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				deleteAll(folder);
+			}
+		});
+
+		new SyntheticCorpus(numTweets, numTopics, 7).write(folder.getPath());
+		return folder.getPath() + File.separator;
+	}
+
+	public void write(String folder) throws IOException {
+		new File(folder).mkdirs();
+		Random random = new Random(seed);
+		SyntheticTweets text = new SyntheticTweets(seed);
+
+		String[][] titles = new String[numTopics][];
+		long[] queryTimes = new long[numTopics];
+		for(int t = 0; t < numTopics; t++) {
+			titles[t] = new String[2 + random.nextInt(2)];
+			for(int w = 0; w < titles[t].length; w++) {
+				titles[t][w] = text.word(TITLE_RANK_START
+					+ random.nextInt(TITLE_RANK_END - TITLE_RANK_START));
+			}
+			// queries are asked in the second week
+			queryTimes[t] = FIRST_TIME + TIME_SPAN / 2
+				+ (long) (random.nextDouble() * TIME_SPAN / 2);
+		}
+
+		StringBuilder[] judgments = new StringBuilder[numTopics];
+		for(int t = 0; t < numTopics; t++) {
+			judgments[t] = new StringBuilder();
+		}
+
+		Writer tweets = open(folder, TWEETS_FILE);
+		try {
+			for(int i = 0; i < numTweets; i++) {
+				long time = FIRST_TIME + (long) i * TIME_SPAN / Math.max(1, numTweets);
+				long id = ((time - TWITTER_EPOCH) << 22) | random.nextInt(1 << 22);
+				String tweet = text.tweet();
+
+				if(numTopics > 0 && random.nextDouble() < ON_TOPIC) {
+					int topic = random.nextInt(numTopics);
+					boolean whole = random.nextInt(3) > 0;
+					tweet = onTopic(tweet, titles[topic], whole, random);
+
+					int level = 0;
+					if(whole && time <= queryTimes[topic]) {
+						level = tweet.indexOf('#') >= 0 ? 2 : 1;
+					}
+					judgments[topic].append(topic + 1).append(" 0 ").append(id)
+						.append(' ').append(level).append('\n');
+				}
+
+				tweets.write(Long.toString(id));
+				tweets.write('\t');
+				tweets.write(tweet);
+				tweets.write('\n');
+			}
+		} finally {
+			tweets.close();
+		}
+
+		Writer qrels = open(folder, QRELS_FILE);
+		try {
+			for(StringBuilder topicJudgments : judgments) {
+				qrels.write(topicJudgments.toString());
+			}
+		} finally {
+			qrels.close();
+		}
+
+		writeQueries(folder, titles, queryTimes);
+	}
+
+	// Puts the title (or part of it) into the tweet at random places
+	private static String onTopic(String tweet, String[] title, boolean whole,
+								  Random random) {
+		StringBuilder text = new StringBuilder(tweet);
+		int words = whole ? title.length : 1 + random.nextInt(title.length - 1);
+
+		for(int w = 0; w < words; w++) {
+			String word = title[w];
+			if(random.nextInt(6) == 0) {
+				word = "#" + word;
+			}
+
+			int at = random.nextInt(text.length() + 1);
+			while(at < text.length() && text.charAt(at) != ' ') {
+				at++;
+			}
+			text.insert(at, " " + word);
+		}
+		return text.toString().trim();
+	}
+
+	private void writeQueries(String folder, String[][] titles, long[] queryTimes)
+			throws IOException {
+		SimpleDateFormat format =
+			new SimpleDateFormat("EEE MMM dd HH:mm:ss Z yyyy", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+		Writer queries = open(folder, QUERIES_FILE);
+		try {
+			for(int t = 0; t < titles.length; t++) {
+				StringBuilder title = new StringBuilder();
+				for(String word : titles[t]) {
+					title.append(word).append(' ');
+				}
+
+				queries.write("<top>\n");
+				queries.write(String.format("<num> Number: MB%03d </num>\n", t + 1));
+				queries.write("<title> " + title + "</title>\n");
+				queries.write("<querytime> " + format.format(new Date(queryTimes[t]))
+					+ " </querytime>\n");
+				queries.write("<querytweettime> "
+					+ ((queryTimes[t] - TWITTER_EPOCH) << 22) + " </querytweettime>\n");
+				queries.write("</top>\n\n");
+			}
+		} finally {
+			queries.close();
+		}
+	}
+
+	private static Writer open(String folder, String name) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(
+			new FileOutputStream(new File(folder, name)), "utf-8"), 1 << 16);
+	}
+
+	private static void deleteAll(File file) {
+		File[] children = file.listFiles();
+		if(children != null) {
+			for(File child : children) {
+				deleteAll(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,86 @@
+import java.util.Random;
+
+/*
+ * Generates tweet-like text for the benchmarks so they can run without the
+ * TREC microblog corpus. Words are drawn from a Zipf-like distribution over
+ * a made-up vocabulary, with some hashtags, mentions, links and retweets
+ * mixed in.
+ */
+public class SyntheticTweets {
+
+	private static final int VOCABULARY_SIZE = 20000;
+	private static final String[] COMMON = {
+		"the", "a", "to", "and", "of", "in", "is", "for", "on", "my",
+		"rt", "lol", "sooooo", "news", "good", "today", "new", "love"
+	};
+
+	private final Random random;
+	private final String[] vocabulary;
+
+	public SyntheticTweets(long seed) {
+		random = new Random(seed);
+		vocabulary = new String[VOCABULARY_SIZE];
+
+		Random words = new Random(0);
+		for(int i = 0; i < VOCABULARY_SIZE; i++) {
+			vocabulary[i] = i < COMMON.length ? COMMON[i] : word(words);
+		}
+	}
+
+	public String[] tweets(int count) {
+		String[] tweets = new String[count];
+		for(int i = 0; i < count; i++) {
+			tweets[i] = tweet();
+		}
+		return tweets;
+	}
+
+	public String tweet() {
+		StringBuilder text = new StringBuilder(140);
+
+		if(random.nextInt(10) == 0) {
+			text.append("RT @user").append(random.nextInt(5000)).append(": ");
+		}
+
+		int words = 5 + random.nextInt(12);
+		for(int i = 0; i < words; i++) {
+			if(i > 0) {
+				text.append(' ');
+			}
+			text.append(randomWord());
+		}
+
+		if(random.nextInt(5) == 0) {
+			text.append(" #").append(randomWord());
+		}
+		if(random.nextInt(8) == 0) {
+			text.append(" @user").append(random.nextInt(5000));
+		}
+		if(random.nextInt(10) == 0) {
+			text.append(" http://t.co/").append(Integer.toString(random.nextInt(), 36));
+		}
+
+		return text.toString();
+	}
+
+	// The word at a rank of the vocabulary, 0 is the most common
+	public String word(int rank) {
+		return vocabulary[rank % VOCABULARY_SIZE];
+	}
+
+	// A vocabulary word, low indexes far more likely than high ones
+	public String randomWord() {
+		double u = random.nextDouble();
+		int index = (int) Math.pow(VOCABULARY_SIZE, u) - 1;
+		return vocabulary[Math.min(index, VOCABULARY_SIZE - 1)];
+	}
+
+	private static String word(Random random) {
+		int length = 3 + random.nextInt(7);
+		char[] letters = new char[length];
+		for(int i = 0; i < length; i++) {
+			letters[i] = (char) ('a' + random.nextInt(26));
+		}
+		return new String(letters);
+	}
+}
@@ -0,0 +1,117 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/*
+ * Compares the old hashtag merge path (HashMap of boxed scores, one
+ * IDandScore per candidate, full sort, keep 1000) with ranking the same
+ * candidates through the reusable primitive TopKCollector heap.
+ *
+ * Arguments: [-hits N] [-warmup N] [-rounds N]
+ */
+public class TopKBenchmark {
+
+	private static final int NUM_HITS = 1000;
+
+	public static void main(String[] args) throws Exception {
+		Bench.configure(args);
+
+		int hits = NUM_HITS;
+		for(int i = 0; i + 1 < args.length; i++) {
+			if(args[i].equals("-hits")) {
+				hits = Integer.parseInt(args[i + 1]);
+			}
+		}
+
+		// two hit lists over a shared doc space, half of them overlapping
+		Random random = new Random(42);
+		final int[] tweetDocs = new int[hits];
+		final float[] tweetScores = new float[hits];
+		final int[] hashtagDocs = new int[hits];
+		final float[] hashtagScores = new float[hits];
+		final String[] ids = new String[hits * 2];
+
+		for(int i = 0; i < ids.length; i++) {
+			ids[i] = String.valueOf(30000000000000000L + random.nextInt(1 << 30));
+		}
+		for(int i = 0; i < hits; i++) {
+			tweetDocs[i] = i;
+			tweetScores[i] = random.nextFloat() * 5;
+			hashtagDocs[i] = i + hits / 2;
+			hashtagScores[i] = random.nextFloat();
+		}
+
+		final TopKCollector collector = new TopKCollector(NUM_HITS);
+
+		Bench.run("IDandScore merge + sort", 1000, new Bench.Body() {
+			public Object run() {
+				return legacyMerge(tweetDocs, tweetScores,
+					hashtagDocs, hashtagScores, ids);
+			}
+		});
+
+		Bench.run("TopKCollector", 1000, new Bench.Body() {
+			public Object run() {
+				collector.reset();
+				for(int i = 0; i < tweetDocs.length; i++) {
+					collector.insert(tweetDocs[i], tweetScores[i]);
+				}
+				for(int i = 0; i < hashtagDocs.length; i++) {
+					collector.insert(hashtagDocs[i], hashtagScores[i]);
+				}
+				return collector.toRankedDocs();
+			}
+		});
+	}
+
+	// The ranking code getResults() used before the hashtag field was fused
+	private static List<LegacyIDandScore> legacyMerge(int[] tweetDocs,
+			float[] tweetScores, int[] hashtagDocs, float[] hashtagScores,
+			String[] ids) {
+		Map<String, Float> scoreMapping = new HashMap<>(1500);
+
+		for(int i = 0; i < tweetDocs.length; i++) {
+			scoreMapping.put(ids[tweetDocs[i]], tweetScores[i]);
+		}
+
+		for(int i = 0; i < hashtagDocs.length; i++) {
+			String id = ids[hashtagDocs[i]];
+
+			if(scoreMapping.containsKey(id)){
+				Float hitScore = scoreMapping.get(id);
+				scoreMapping.put(id, hitScore + hashtagScores[i]);
+			}
+			else{
+				scoreMapping.put(id, hashtagScores[i]);
+			}
+		}
+
+		List<LegacyIDandScore> ranking = new ArrayList<>();
+
+		for(String key : scoreMapping.keySet()){
+			ranking.add(new LegacyIDandScore(key, scoreMapping.get(key)));
+		}
+
+		Collections.sort(ranking);
+
+		return ranking.subList(0, Math.min(ranking.size(), NUM_HITS));
+	}
+
+	private static class LegacyIDandScore implements Comparable<LegacyIDandScore> {
+		public String id;
+		public Float score;
+
+		public LegacyIDandScore(String id, Float score) {
+			this.id = id;
+			this.score = score;
+		}
+
+		@Override
+		public int compareTo(LegacyIDandScore other) {
+			return (-1) * this.score.compareTo(other.score);
+		}
+	}
+}
@@ -0,0 +1,20 @@
+#!/bin/sh
+# Runs the tweet search program from the jar built by "mvn package", with
+# the same JVM settings everywhere so timings can be compared between
+# machines. Run it from this folder (res/ is read relative to it) and pass
+# the program's options as usual, e.g. ./run.sh -r -t -p
+#
+# The heap is fixed and touched up front so no run pays for growing it,
+# and the throughput (parallel) collector suits the batch indexing and
+# search workload, which has no pause time target. Override with:
+#   HEAP=4g ./run.sh ...           heap size (default 2g)
+#   JAVA_OPTS="..." ./run.sh ...   extra JVM options, added last
+
+HEAP=${HEAP:-2g}
+DIR=$(dirname "$0")
+
+exec java -Xms$HEAP -Xmx$HEAP -XX:+AlwaysPreTouch \
+    -XX:+UseParallelGC \
+    -Dfile.encoding=UTF-8 \
+    $JAVA_OPTS \
+    -jar "$DIR/target/tweet-search.jar" "$@"
@@ -1,12 +1,10 @@
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /* This class runs the tweet searching with the input tweets and 
  * the queries. It takes a few command line arguments.
@@ -14,24 +12,50 @@ import java.util.Arrays;
 public class Assignment1Runner {
     
     public final String DATA_FOLDER = "res/";
-    public final String LIB_FOLDER = "lib/";
     public final String INPUT_FILE = "input_tweets.txt";
     public final String QUERIES_FILE = "test_queries.txt";
     public final String OUTPUT_FILE = "results.txt";
+    public final String BINARY_OUTPUT_FILE = "results.bin";
     public final String VOCAB_OUTPUT_FILE = "vocabulary.txt";
     public final String RELEVANCE_FEEDBACK_FILE = "Trec_microblog11-qrels.txt";
     public final String EVALUATION_RESULT_FILE = "eval_results.txt";
-    public final String TREC_ARGUMENTS = "-o";
+    public final String SWEEP_RESULT_FILE = "sweep_results.txt";
+    public final String METRICS_JSON_FILE = "metrics.json";
+    public final String METRICS_CSV_FILE = "metrics.csv";
+    public final String INDEX_FOLDER = "index/";
 
     private boolean useRelevanceFeedback;
     private Double oQCoef;
     private Double rQCoef;
     private Double iQCoef;
     private Integer numR;
+    private Integer fbTerms;
     private boolean useHashtagScoring;
     private Float htCoef;
     private static boolean noEval;
+    private boolean persistIndex;
+    private boolean binaryOutput;
+    private Integer indexingThreads;
+    private Double ramBufferMB;
+    private Integer queryThreads;
+    private Integer cacheEntries;
+    private Double cacheMB;
+    private Integer fbCacheEntries;
+    private Double duplicateThreshold;
+    private Integer shards;
+    private boolean shardByTime;
+    private boolean timeFiltered;
+    private RankTool rankTool;
     private QueryProcessor.AnalyzerChoice ac;
+    private QueryProcessor processor;
+    private ParameterSweep parameterSweep;
+    private boolean writeMetrics;
+    private boolean registerMetrics;
+    private Integer serverPort;
+    // Address the server listens on, null for the loopback address
+    private String bindAddress;
+    private Long refreshMillis;
+    private boolean tailTweets;
 
     public Assignment1Runner(String[] args) {
     	parseCommandLineArguments(args);
@@ -40,6 +64,85 @@ public class Assignment1Runner {
     // Does non-evaluation tasks (building the index, parsing queries, and
     // searching for results)
     public void indexAndSearch() {
+    	QueryProcessor q = createProcessor();
+    	q.go();
+    	processor = q;
+    }
+
+    /* Builds the index once, then searches and evaluates every combination
+     * of the swept parameters and writes them to the sweep results file,
+     * best first.
+     */
+    public void sweep() {
+    	QueryProcessor q = createProcessor();
+    	q.open();
+
+    	try {
+    		TrecEvaluator evaluator = new TrecEvaluator(DATA_FOLDER + 
+    													RELEVANCE_FEEDBACK_FILE);
+    		int threads = queryThreads != null ? queryThreads : 
+    			Runtime.getRuntime().availableProcessors();
+
+    		Metrics.Phase phase = q.getMetrics().startPhase("sweep");
+    		List<ParameterSweep.Entry> entries = 
+    			parameterSweep.run(q, evaluator, q.getScoringOptions(), threads);
+    		phase.end();
+    		ParameterSweep.writeLeaderboard(DATA_FOLDER + SWEEP_RESULT_FILE, 
+    										entries);
+
+    		if(!entries.isEmpty()) {
+    			System.out.println("Best MAP " + 
+    				entries.get(0).result.meanAveragePrecision() + " with " + 
+    				entries.get(0).options + ", see " + DATA_FOLDER + 
+    				SWEEP_RESULT_FILE);
+    		}
+    	} catch (IOException e) {
+    		System.out.println("The sweep could not be evaluated, the " + 
+    			"relevance judgments could not be read.");
+    		e.printStackTrace();
+    	}
+    	processor = q;
+    }
+
+    /* Builds or loads the index once and serves searches over HTTP until
+     * the program is stopped, then prints the request latencies.
+     */
+    public void serve() {
+    	final QueryProcessor q = createProcessor();
+    	q.setNearRealTime(refreshMillis != null);
+    	q.open();
+    	processor = q;
+
+    	final SearchServer server = new SearchServer(q);
+    	final TweetIngester ingester = refreshMillis == null ? null : 
+    		q.startIngestion(refreshMillis, tailTweets);
+    	server.setIngester(ingester);
+    	int threads = queryThreads != null ? queryThreads : 
+    		Runtime.getRuntime().availableProcessors();
+    	try {
+    		server.start(bindAddress, serverPort, threads);
+    	} catch (IOException e) {
+    		System.out.println("Error starting the server on port " + serverPort);
+    		e.printStackTrace();
+    		return;
+    	}
+
+    	Runtime.getRuntime().addShutdownHook(new Thread() {
+    		public void run() {
+    			server.stop();
+    			q.close();
+    			System.out.print(server.latencySummary());
+    			if(ingester != null) System.out.print(ingester.summary());
+    			if(writeMetrics) saveMetrics();
+    		}
+    	});
+    	System.out.println("Serving on http://" + 
+    		(bindAddress != null ? bindAddress : "localhost") + ":" + serverPort + 
+    		"/search?q=... with " + threads + " threads, Ctrl-C to stop");
+    }
+
+    // Creates the query processor with the command line options
+    private QueryProcessor createProcessor() {
     	Double[] relevanceArray = new Double[4];
     	relevanceArray[0] = oQCoef;
     	relevanceArray[1] = rQCoef;
@@ -54,106 +157,95 @@ public class Assignment1Runner {
                                               useHashtagScoring,
                                               htCoef,
                                               ac);
-    	q.go();
+    	q.setIndexingOptions(indexingThreads, ramBufferMB);
+    	q.setShards(shards, shardByTime);
+    	q.setQueryThreads(queryThreads);
+    	q.setResultCache(cacheEntries, cacheMB);
+    	q.setTermVectorCache(fbCacheEntries);
+    	q.setFeedbackTermLimit(fbTerms);
+    	q.setDuplicateThreshold(duplicateThreshold);
+    	q.setTimeFiltered(timeFiltered);
+    	q.setRankTool(rankTool);
+    	if(binaryOutput) {
+    		q.setBinaryResultsFile(DATA_FOLDER + BINARY_OUTPUT_FILE);
+    	}
+    	if(persistIndex) {
+    		q.usePersistentIndex(DATA_FOLDER + INDEX_FOLDER, ac);
+    	}
+    	if(registerMetrics) {
+    		q.getMetrics().registerMBean();
+    	}
+    	return q;
     }
 
-    // Compiles and uses the trec_eval script to evaluate the results
+    /* Evaluates the rankings of the last search against the relevance
+     * judgments and saves the report, laid out like trec_eval's
+     */
     public void evaluate() {
-        compileTrecEval();
-        runTrecEval();
+        try {
+            Metrics.Phase phase = processor.getMetrics().startPhase("evaluate");
+            TrecEvaluator evaluator = new TrecEvaluator(DATA_FOLDER + 
+                                                        RELEVANCE_FEEDBACK_FILE);
+            String report = evaluator.evaluate(processor.getRun()).toString();
+            phase.end();
+            System.out.print(report);
+            saveResultToFile(DATA_FOLDER + EVALUATION_RESULT_FILE, report);
+        } catch (IOException e) {
+            System.out.println("Evaluation could not be run. " + 
+                "Result files will still be generated.\n" + 
+                "See res/results.txt for the results.");
+            e.printStackTrace();
+        }
+    }
+
+    // Writes the phase timings, query latencies and index statistics
+    public void saveMetrics() {
+        processor.getMetrics().writeReport(DATA_FOLDER + METRICS_JSON_FILE, 
+                                           DATA_FOLDER + METRICS_CSV_FILE);
+        System.out.println("Metrics written to " + DATA_FOLDER + 
+            METRICS_JSON_FILE + " and " + DATA_FOLDER + METRICS_CSV_FILE);
     }
 
     public static void main(String[] args) {
         Assignment1Runner runner = new Assignment1Runner(args);
 
+        if(runner.serverPort != null) {
+            runner.serve();
+            return;
+        }
+
+        if(runner.parameterSweep != null) {
+            runner.sweep();
+            if(runner.writeMetrics) runner.saveMetrics();
+            System.out.println("Done!");
+            return;
+        }
+
         runner.indexAndSearch();
 
         if(!noEval) runner.evaluate();
+
+        if(runner.writeMetrics) runner.saveMetrics();
         
         System.out.println("Done!");
     }
 
-    private void compileTrecEval() {
-        
-        //Skips compilation if already compiled
-        File f = new File(LIB_FOLDER + "trec_eval.8.1/trec_eval");
-        if(f.exists()) {
-            return;
-        }
-
-    	Runtime rt = Runtime.getRuntime();
-    	Process pr;
-    	try {
-    		pr = rt.exec("make -C " + LIB_FOLDER + "trec_eval.8.1");
-    		int result = pr.waitFor();
-    		
-    		if (result != 0) throw new IOException("trec_eval exited with exit code" 
-                + String.valueOf(result));
-    		
-    	} catch(IOException | InterruptedException e) {
-    		System.out.println("Trec_eval could not be compiled. " +
-                "The result files will still be generated.\n" + 
-                "Evaluation will need to be done manually, sorry. " +
-                "See res/results.txt for the results.");
-    	} 
-    }
-    
-    private void runTrecEval() {
-    	Runtime rt = Runtime.getRuntime();
-    	Process pr;
-    	try {
-            //The kinda complex trec_eval command line call
-    		pr = rt.exec("./" + 
-                         LIB_FOLDER + 
-                         "trec_eval.8.1/trec_eval " + 
-                         TREC_ARGUMENTS + 
-                         " " + 
-                         DATA_FOLDER + 
-                         RELEVANCE_FEEDBACK_FILE + 
-                         " " + 
-                         DATA_FOLDER + 
-                         OUTPUT_FILE);
-    		
-    		saveResultToFile(DATA_FOLDER + 
-                             EVALUATION_RESULT_FILE, 
-                             pr.getInputStream());
-            
-    		int result = pr.waitFor();
-    		if (result != 0) 
-                throw new IOException("trec_eval exited with exit code " + 
-                                      String.valueOf(result));
-    		
-    	} catch(IOException | InterruptedException e) {
-    		System.out.println("Trec_eval could not be run. " + 
-                "Result files will still be generated.\n" + 
-                "Evaluation will need to be done manually, sorry. " +
-                "See res/results.txt for the results.");
-    	}
-    }
-        
     // Saves the eval results to file
-    private void saveResultToFile(String filename, InputStream inputStream) {
+    private void saveResultToFile(String filename, String report) {
     	
     	BufferedWriter output = null;
-    	BufferedReader input = new BufferedReader(
-				new InputStreamReader(inputStream));
     	
     	try {
 		 	output = new BufferedWriter(
 		 		new OutputStreamWriter(
 		 		new FileOutputStream(filename), "utf-8"));
 		 	
-	        String line = null;
-	
-	        while((line = input.readLine()) != null) {
-	            System.out.println(line);
-	        	output.write(line + "\n");
-	        }
+	        output.write(report);
 	        
         } catch (IOException e) {
         	e.printStackTrace();
         } finally {
-        	try{ output.close(); } catch (IOException e) {}
+        	try{ if(output != null) output.close(); } catch (IOException e) {}
         }
     }
 
@@ -173,8 +265,31 @@ public class Assignment1Runner {
             useRelevanceFeedback = false;
         }
         
+        //Parameter sweep option, the coefficients below are then grids
+        if(Arrays.asList(args).contains("-sweep")) {
+            parameterSweep = new ParameterSweep();
+            parameterSweep.setOriginalQueryCoefficients(
+                gridArgument(args, "-oQCoef"));
+            parameterSweep.setRelevantQueryCoefficients(
+                gridArgument(args, "-rQCoef"));
+            parameterSweep.setIrrelevantQueryCoefficients(
+                gridArgument(args, "-iQCoef"));
+            parameterSweep.setRelevantDocuments(gridArgument(args, "-numR"));
+            parameterSweep.setHashtagScoreCoefficients(
+                gridArgument(args, "-htCoef"));
+            parameterSweep.setRankTools(rankToolsArgument(args));
+        }
+
+        //Ranking model options
+        if(parameterSweep == null) {
+            List<RankTool> tools = rankToolsArgument(args);
+            if(tools != null) {
+                rankTool = tools.get(0);
+            }
+        }
+
         //Relevance feedback coefficients
-        if(useRelevanceFeedback) {
+        if(useRelevanceFeedback && parameterSweep == null) {
             int index = Arrays.asList(args).indexOf("-oQCoef");
             if(index != -1) {
                 try {
@@ -230,6 +345,20 @@ public class Assignment1Runner {
                     numR = null; 
                 }
             }
+
+            index = Arrays.asList(args).indexOf("-fbTerms");
+            if(index != -1) {
+                try {
+                    fbTerms = Integer.valueOf(args[index + 1]);
+                } catch(NumberFormatException | 
+                    ArrayIndexOutOfBoundsException e) {
+                    System.out.println("Improper value set for fbTerms " +
+                        "please a number (integer) value as the argument " +
+                        "after -fbTerms. Default feedback term limit " +
+                        "being used for relevance feedback");
+                    fbTerms = null; 
+                }
+            }
         }
 
         //Hashtag scoring option
@@ -240,7 +369,7 @@ public class Assignment1Runner {
         }
         
         // Hashtag scoring coefficient 
-        if(useHashtagScoring) {
+        if(useHashtagScoring && parameterSweep == null) {
             int index = Arrays.asList(args).indexOf("-htCoef");
             if(index != -1) {
                 try {
@@ -264,14 +393,275 @@ public class Assignment1Runner {
             noEval = false;
         }
         
+        //Persistent index option
+        if(Arrays.asList(args).contains("-p")) {
+            persistIndex = true;
+        } else {
+            persistIndex = false;
+        }
+
+        //Binary results option
+        if(Arrays.asList(args).contains("-b")) {
+            binaryOutput = true;
+        } else {
+            binaryOutput = false;
+        }
+
+        //Indexing pipeline options
+        int index = Arrays.asList(args).indexOf("-threads");
+        if(index != -1) {
+            try {
+                indexingThreads = Integer.valueOf(args[index + 1]);
+            } catch(NumberFormatException | 
+                ArrayIndexOutOfBoundsException e) {
+                System.out.println("Improper value set for threads " +
+                    "please a number (integer) value as the argument " +
+                    "after -threads. One thread per core being used " +
+                    "for indexing");
+                indexingThreads = null;
+            }
+        }
+
+        index = Arrays.asList(args).indexOf("-ramBuffer");
+        if(index != -1) {
+            try {
+                ramBufferMB = Double.valueOf(args[index + 1]);
+            } catch(NumberFormatException | 
+                ArrayIndexOutOfBoundsException e) {
+                System.out.println("Improper value set for ramBuffer " +
+                    "please a number (double) value as the argument " +
+                    "after -ramBuffer. Default IndexWriter RAM buffer " +
+                    "being used for indexing");
+                ramBufferMB = null;
+            }
+        }
+
+        //Result cache options
+        index = Arrays.asList(args).indexOf("-cache");
+        if(index != -1) {
+            try {
+                cacheEntries = Integer.valueOf(args[index + 1]);
+            } catch(NumberFormatException | 
+                ArrayIndexOutOfBoundsException e) {
+                System.out.println("Improper value set for cache " +
+                    "please a number (integer) value as the argument " +
+                    "after -cache. Default result cache size being used");
+                cacheEntries = null;
+            }
+        }
+
+        index = Arrays.asList(args).indexOf("-cacheMB");
+        if(index != -1) {
+            try {
+                cacheMB = Double.valueOf(args[index + 1]);
+            } catch(NumberFormatException | 
+                ArrayIndexOutOfBoundsException e) {
+                System.out.println("Improper value set for cacheMB " +
+                    "please a number (double) value as the argument " +
+                    "after -cacheMB. Default result cache size being used");
+                cacheMB = null;
+            }
+        }
+
+        index = Arrays.asList(args).indexOf("-fbCache");
+        if(index != -1) {
+            try {
+                fbCacheEntries = Integer.valueOf(args[index + 1]);
+            } catch(NumberFormatException | 
+                ArrayIndexOutOfBoundsException e) {
+                System.out.println("Improper value set for fbCache " +
+                    "please a number (integer) value as the argument " +
+                    "after -fbCache. Default term vector cache size being used");
+                fbCacheEntries = null;
+            }
+        }
+
+        //Query execution option
+        index = Arrays.asList(args).indexOf("-qthreads");
+        if(index != -1) {
+            try {
+                queryThreads = Integer.valueOf(args[index + 1]);
+            } catch(NumberFormatException | 
+                ArrayIndexOutOfBoundsException e) {
+                System.out.println("Improper value set for qthreads " +
+                    "please a number (integer) value as the argument " +
+                    "after -qthreads. Queries will be run one at a time");
+                queryThreads = null;
+            }
+        }
+
+        //Near-duplicate collapsing option
+        index = Arrays.asList(args).indexOf("-d");
+        if(index != -1) {
+            try {
+                duplicateThreshold = Double.valueOf(args[index + 1]);
+            } catch(NumberFormatException | 
+                ArrayIndexOutOfBoundsException e) {
+                System.out.println("Improper value set for d " +
+                    "please a number (double) value between 0 and 1 as " +
+                    "the argument after -d. Near-duplicates will not be " +
+                    "collapsed");
+                duplicateThreshold = null;
+            }
+        }
+
+        //Sharded index options
+        index = Arrays.asList(args).indexOf("-shards");
+        if(index != -1) {
+            try {
+                shards = Integer.valueOf(args[index + 1]);
+            } catch(NumberFormatException | 
+                ArrayIndexOutOfBoundsException e) {
+                System.out.println("Improper value set for shards " +
+                    "please a number (integer) value as the argument " +
+                    "after -shards. A single index being used");
+                shards = null;
+            }
+        }
+
+        index = Arrays.asList(args).indexOf("-shardBy");
+        if(index != -1) {
+            String by = index + 1 < args.length ? args[index + 1] : "";
+            if(by.equals("time")) {
+                shardByTime = true;
+            } else if(!by.equals("hash")) {
+                System.out.println("Improper value set for shardBy " +
+                    "please hash or time as the argument after -shardBy. " +
+                    "Tweets being assigned to shards by hash");
+            }
+        }
+
+        //Search server option
+        index = Arrays.asList(args).indexOf("-server");
+        if(index != -1) {
+            try {
+                serverPort = Integer.valueOf(args[index + 1]);
+            } catch(NumberFormatException | 
+                ArrayIndexOutOfBoundsException e) {
+                System.out.println("Improper value set for server " +
+                    "please a port number (integer) as the argument " +
+                    "after -server. Port 8080 being used");
+                serverPort = 8080;
+            }
+        }
+
+        index = Arrays.asList(args).indexOf("-bind");
+        if(index != -1) {
+            try {
+                bindAddress = args[index + 1];
+            } catch(ArrayIndexOutOfBoundsException e) {
+                System.out.println("Improper value set for bind " +
+                    "please an address as the argument after -bind. " +
+                    "Serving on the loopback address only");
+                bindAddress = null;
+            }
+        }
+
+        //Near-real-time ingestion options, for the search server
+        index = Arrays.asList(args).indexOf("-nrt");
+        if(index != -1) {
+            try {
+                refreshMillis = Long.valueOf(args[index + 1]);
+            } catch(NumberFormatException | 
+                ArrayIndexOutOfBoundsException e) {
+                System.out.println("Improper value set for nrt " +
+                    "please a number (integer) of milliseconds as the " +
+                    "argument after -nrt. Searchers will be refreshed " +
+                    "every second");
+                refreshMillis = 1000L;
+            }
+        }
+        tailTweets = Arrays.asList(args).contains("-tail");
+        if((refreshMillis != null || tailTweets) && serverPort == null) {
+            System.out.println("-nrt and -tail only apply with -server " +
+                "and will be ignored");
+        }
+        if(tailTweets && refreshMillis == null) {
+            refreshMillis = 1000L;
+        }
+        if(refreshMillis != null && serverPort != null && shards != null) {
+            System.out.println("-shards does not apply with -nrt and " +
+                "will be ignored");
+        }
+
+        //Metrics options
+        writeMetrics = Arrays.asList(args).contains("-metrics");
+        registerMetrics = Arrays.asList(args).contains("-jmx");
+
+        //Time filtered search option
+        if(Arrays.asList(args).contains("-time")) {
+            timeFiltered = true;
+        } else {
+            timeFiltered = false;
+        }
+
         //Analyzer options
         if(Arrays.asList(args).contains("-e")) {
         	ac = QueryProcessor.AnalyzerChoice.ENGLISH;
+        } else if(Arrays.asList(args).contains("-tweet")) {
+        	ac = QueryProcessor.AnalyzerChoice.TWEET;
         } else {
         	ac = QueryProcessor.AnalyzerChoice.STANDARD;
         }
     }
 
+    // Reads the grid after a sweep parameter, null if it is not swept
+    private double[] gridArgument(String[] args, String name) {
+        int index = Arrays.asList(args).indexOf(name);
+        if(index == -1) {
+            return null;
+        }
+
+        try {
+            return ParameterSweep.parseGrid(args[index + 1]);
+        } catch(NumberFormatException | 
+            ArrayIndexOutOfBoundsException e) {
+            System.out.println("Improper grid set for " + name + 
+                " please a list (1,2,3) or range (1:3:0.5) of numbers " +
+                "as the argument after " + name + ". It will not be swept");
+            return null;
+        }
+    }
+
+    /* Reads the ranking models after -rank, a name or a list of names, with
+     * a model for each -halfLife value (a number, list or range) for the
+     * recency models. Null when -rank is not given.
+     */
+    private List<RankTool> rankToolsArgument(String[] args) {
+        int index = Arrays.asList(args).indexOf("-rank");
+        if(index == -1 || index + 1 >= args.length) {
+            return null;
+        }
+
+        double[] halfLives = { RankTool.DEFAULT_HALF_LIFE_HOURS };
+        if(Arrays.asList(args).contains("-halfLife")) {
+            double[] grid = gridArgument(args, "-halfLife");
+            if(grid != null) {
+                halfLives = grid;
+            }
+        }
+
+        List<RankTool> tools = new ArrayList<RankTool>();
+        try {
+            for(String name : args[index + 1].split(",")) {
+                if(name.trim().endsWith("recency")) {
+                    for(double halfLife : halfLives) {
+                        tools.add(RankTool.forName(name, halfLife));
+                    }
+                } else {
+                    tools.add(RankTool.forName(name, halfLives[0]));
+                }
+            }
+        } catch(IllegalArgumentException e) {
+            System.out.println("Improper value set for rank please " +
+                "one of " + Arrays.toString(RankTool.NAMES) + " (or " +
+                "bm25+recency, lm+recency) as the argument after -rank. " +
+                "TF-IDF being used for ranking");
+            return null;
+        }
+        return tools;
+    }
+
     // Help command line output
     private void printHelp() {
         System.out.println("This is the command line interface. The " +
@@ -283,12 +673,78 @@ public class Assignment1Runner {
             "results and vocabulary file only)\n" +
             "\t-e - use the EnglishAnalyzer rather than Lucene's " +
             "StandardAnalyzer\n" +
+            "\t-tweet - use the tweet analyzer: the EnglishAnalyzer with " +
+            "emoticons kept as words, links dropped, stretched out words " +
+            "(sooooo) shortened and rt as a stop word\n" +
+            "\t-b - also write the results in a compact binary format " +
+            "to res/results.bin\n" +
+            "\t-p - keep the index on disk in res/index and reuse it on " +
+            "later runs (rebuilt when the tweets or analyzer change)\n" +
             "\t-oQCoef VAL - sets the originalQueryCoefficient to VAL\n" +
             "\t-rQCoef VAL - sets the relevantQueryCoefficient to VAL\n" +
             "\t-iQCoef VAL - sets the irrelevantQueryCoefficient to VAL\n" +
             "\t-numR VAL - sets the number of relevant documents to consider" +
             "for relevance feeback\n" + 
-            "\t-htCoef VAL - sets the hashtagScoreCoefficient to VAL\n\n" +
+            "\t-fbTerms VAL - keeps at most VAL terms in the relevance " +
+            "feedback query\n" +
+            "\t-htCoef VAL - sets the hashtagScoreCoefficient to VAL\n" +
+            "\t-threads VAL - sets the number of indexing threads to VAL " +
+            "(defaults to the number of cores)\n" +
+            "\t-ramBuffer VAL - sets the indexing RAM buffer to VAL MB\n" +
+            "\t-qthreads VAL - runs VAL queries concurrently\n" +
+            "\t-cache VAL - keeps the top hits of the last VAL searches " +
+            "(10000 by default, 0 turns the cache off) so repeated " +
+            "queries skip the search\n" +
+            "\t-cacheMB VAL - keeps at most VAL MB of cached hits " +
+            "(64 by default)\n" +
+            "\t-fbCache VAL - keeps the term vectors of VAL relevance " +
+            "feedback documents (100000 by default, 0 turns the cache " +
+            "off)\n" +
+            "\t-shards VAL - splits the index into VAL shards that are " +
+            "built side by side and searched concurrently, one thread " +
+            "per shard, with the results merged\n" +
+            "\t-shardBy hash|time - assigns tweets to the shards by a " +
+            "hash of their id (the default) or by time ranges\n" +
+            "\t-sweep - runs every combination of the relevance feedback " +
+            "and hashtag parameters against one index and writes a " +
+            "leaderboard to res/sweep_results.txt. With -r and -t the " +
+            "-oQCoef, -rQCoef, -iQCoef, -numR and -htCoef values can be " +
+            "lists (1,2,3) or ranges (1:3:0.5); -qthreads sets how many " +
+            "combinations run at once\n" +
+            "\t-rank NAME - ranks with the model NAME: tfidf (the " +
+            "default), bm25, lm (Dirichlet smoothed language model), " +
+            "recency (tfidf decayed by the time between the tweet and " +
+            "the query), bm25+recency or lm+recency. With -sweep NAME can " +
+            "be a list (tfidf,bm25,lm) to compare the models\n" +
+            "\t-halfLife VAL - the recency models halve a tweet's score " +
+            "every VAL hours from the query time (24 by default)\n" +
+            "\t-time - only returns tweets posted at or before each " +
+            "query's querytweettime\n" +
+            "\t-d VAL - collapses near-duplicate tweets (such as " +
+            "retweets) in the results. VAL is the similarity threshold " +
+            "between 0 and 1, 0.9 is a good start\n" +
+            "\t-server PORT - keeps the index open and serves searches " +
+            "over HTTP on PORT instead of running the queries file. " +
+            "GET /search?q=TEXT ranks one query, POST /batch ranks one " +
+            "query per line and GET /metrics reports the latencies. The " +
+            "r, t, oQCoef, rQCoef, iQCoef, numR, htCoef and hits " +
+            "parameters override the options given here; -qthreads sets " +
+            "how many requests run at once. The server only listens on " +
+            "the loopback address\n" +
+            "\t-bind ADDR - with -server, listens on ADDR instead of the " +
+            "loopback address (0.0.0.0 for every interface)\n" +
+            "\t-nrt MS - with -server, keeps adding tweets to the index " +
+            "while serving: POST /ingest takes tweets in the " +
+            "input_tweets.txt format and the searchers are refreshed " +
+            "every MS milliseconds so they become searchable\n" +
+            "\t-tail - with -server, also adds tweets appended to " +
+            "input_tweets.txt (refreshing every second unless -nrt is " +
+            "given)\n" +
+            "\t-metrics - writes the time, CPU and memory of each phase, " +
+            "query latency percentiles and index statistics to " +
+            "res/metrics.json and res/metrics.csv\n" +
+            "\t-jmx - shows the same metrics over JMX while the program " +
+            "runs, as tweetsearch:type=Metrics\n\n" +
             "There are a few required input files. They need to go in the " +
             "/res folder. The files required there are as follows:\n" +
             "\tinput_tweets.txt - the input tweets to be searched\n" +
@@ -301,6 +757,7 @@ public class Assignment1Runner {
             "terms and 100 random terms from the vocabulary\n" +
             "\tresults.txt - The searching results. 1000 documents for " + 
             "each query\n\teval_results.txt - EVALUATION ONLY. This file " +
-            "contains the results of running trec_eval on the results.");
+            "contains the evaluation of the results (the measures of " +
+            "trec_eval, plus bpref and NDCG).");
     }
 }
\ No newline at end of file
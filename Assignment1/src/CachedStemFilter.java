@@ -0,0 +1,114 @@
+import java.io.IOException;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.KeywordAttribute;
+import org.apache.lucene.analysis.util.CharArrayMap;
+import org.apache.lucene.util.Version;
+import org.tartarus.snowball.ext.PorterStemmer;
+
+/*
+ * Porter stems the terms, remembering the stem of each term seen. Tweets
+ * use a small set of words over and over, so almost every term is a cache
+ * hit that is looked up straight from the term buffer, with no stemming
+ * and no allocation. The cache belongs to the filter, and so to the thread
+ * reusing the analyzer's chain, and needs no locking.
+ *
+ * The cache is bounded because the vocabulary is not: every misspelling and
+ * number adds a term. A few thousand words make up most of the text of any
+ * tweet collection, so 20000 terms hold them with room to spare, in a
+ * couple of megabytes per thread. When the cache is full, the terms looked
+ * up again since it last filled are kept, up to half of it, and the rest
+ * are dropped (second-chance eviction), so the common words stay cached.
+ */
+@SuppressWarnings("deprecation")
+public final class CachedStemFilter extends TokenFilter {
+
+	// Most terms kept in the cache
+	private static final int CACHE_SIZE = 20000;
+
+	private final CharTermAttribute termAtt =
+		addAttribute(CharTermAttribute.class);
+	private final KeywordAttribute keywordAtt =
+		addAttribute(KeywordAttribute.class);
+
+	private final PorterStemmer stemmer = new PorterStemmer();
+	private CharArrayMap<Stem> stems =
+		new CharArrayMap<Stem>(Version.LUCENE_40, 1024, false);
+
+	public CachedStemFilter(TokenStream input) {
+		super(input);
+	}
+
+	@Override
+	public boolean incrementToken() throws IOException {
+		if(!input.incrementToken()) {
+			return false;
+		}
+
+		char[] term = termAtt.buffer();
+		int length = termAtt.length();
+		// like Lucene's PorterStemFilter, words of two letters (us, as) are
+		// left alone
+		if(keywordAtt.isKeyword() || length <= 2) {
+			return true;
+		}
+
+		Stem stem = stems.get(term, 0, length);
+		if(stem == null) {
+			stem = stem(term, length);
+		} else {
+			stem.used = true;
+		}
+		termAtt.copyBuffer(stem.chars, 0, stem.chars.length);
+		return true;
+	}
+
+	// Stems the term and caches the stem
+	private Stem stem(char[] term, int length) {
+		char[] key = new char[length];
+		System.arraycopy(term, 0, key, 0, length);
+
+		stemmer.setCurrent(term, length);
+		stemmer.stem();
+		Stem stem = new Stem(new char[stemmer.getCurrentBufferLength()]);
+		System.arraycopy(stemmer.getCurrentBuffer(), 0, stem.chars, 0,
+			stem.chars.length);
+
+		if(stems.size() >= CACHE_SIZE) {
+			evict();
+		}
+		stems.put(key, stem);
+		return stem;
+	}
+
+	/* Keeps the stems used since the cache last filled, up to half of it,
+	 * giving them another round to be used again. CharArrayMap cannot
+	 * remove entries, so they go into a new map.
+	 */
+	private void evict() {
+		CharArrayMap<Stem> kept =
+			new CharArrayMap<Stem>(Version.LUCENE_40, CACHE_SIZE, false);
+		CharArrayMap<Stem>.EntryIterator entries = stems.entrySet().iterator();
+		while(entries.hasNext() && kept.size() < CACHE_SIZE / 2) {
+			char[] key = entries.nextKey();
+			Stem stem = entries.currentValue();
+			if(stem.used) {
+				stem.used = false;
+				kept.put(key, stem);
+			}
+		}
+		stems = kept;
+	}
+
+	// A cached stem and whether it was looked up again since the last eviction
+	private static final class Stem {
+		final char[] chars;
+		boolean used;
+
+		Stem(char[] chars) {
+			this.chars = chars;
+		}
+	}
+}
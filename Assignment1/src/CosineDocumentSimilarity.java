@@ -1,98 +1,137 @@
 import java.io.IOException;
-import java.util.*;
 
-
-import org.apache.commons.math3.linear.*;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.core.SimpleAnalyzer;
-import org.apache.lucene.document.*;
-import org.apache.lucene.document.Field.Store;
-import org.apache.lucene.index.*;
-import org.apache.lucene.store.*;
-import org.apache.lucene.util.*;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.util.ByteBlockPool;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.Version;
 
+/*
+ * Cosine similarity between short texts such as tweets. Each text is
+ * tokenized straight from the analyzer's TokenStream into a sparse term
+ * frequency vector, so no index is built per comparison. An instance can be
+ * shared between threads and scores one text against many at a time.
+ *
+ * The term ordinals only cover the texts of one call, so nothing is kept
+ * from one comparison to the next and no lock is taken. The scratch space
+ * for them is reused by each thread.
+ */
+@SuppressWarnings("deprecation")
 public class CosineDocumentSimilarity {
 
     public static final String CONTENT = "Content";
 
-    private final Set<String> terms = new HashSet<>();
-    private final RealVector v1;
-    private final RealVector v2;
-
-    CosineDocumentSimilarity(String s1, String s2) throws IOException {
-        Directory directory = createIndex(s1, s2);
-        IndexReader reader = DirectoryReader.open(directory);
-        Map<String, Integer> f1 = getTermFrequencies(reader, 0);
-        Map<String, Integer> f2 = getTermFrequencies(reader, 1);
-        reader.close();
-        v1 = toRealVector(f1);
-        v2 = toRealVector(f2);
-    }
-    
-    
-    Directory createIndex(String s1, String s2) throws IOException {
-        Directory directory = new RAMDirectory();
-        Analyzer analyzer = new SimpleAnalyzer(Version.LUCENE_40);
-        IndexWriterConfig iwc = new IndexWriterConfig(Version.LUCENE_40,
-                analyzer);
-        IndexWriter writer = new IndexWriter(directory, iwc);
-        addDocument(writer, s1);
-        addDocument(writer, s2);
-        writer.close();
-        return directory;
-    }
+    private final Analyzer analyzer;
 
-    /* Indexed, tokenized, stored. */
-    public static final FieldType TYPE_STORED = new FieldType();
+    // Scratch term ordinals and counts reused by each thread
+    private final ThreadLocal<Ordinals> ordinals =
+        new ThreadLocal<Ordinals>() {
+            @Override
+            protected Ordinals initialValue() {
+                return new Ordinals();
+            }
+        };
+    private final ThreadLocal<IntFloatHashMap> counts =
+        new ThreadLocal<IntFloatHashMap>() {
+            @Override
+            protected IntFloatHashMap initialValue() {
+                return new IntFloatHashMap();
+            }
+        };
 
-    static {
-        TYPE_STORED.setIndexed(true);
-        TYPE_STORED.setTokenized(true);
-        TYPE_STORED.setStored(true);
-        TYPE_STORED.setStoreTermVectors(true);
-        TYPE_STORED.setStoreTermVectorPositions(true);
-        TYPE_STORED.freeze();
+    public CosineDocumentSimilarity(Analyzer analyzer) {
+        this.analyzer = analyzer;
     }
 
-    void addDocument(IndexWriter writer, String content) throws IOException {
-        Document doc = new Document();
-        Field field = new Field(CONTENT, content, TYPE_STORED);
-        doc.add(field);
-        writer.addDocument(doc);
+    public static double getCosineSimilarity(String s1, String s2)
+            throws IOException {
+        return new CosineDocumentSimilarity(
+            new SimpleAnalyzer(Version.LUCENE_40)).similarity(s1, s2);
     }
 
-    double getCosineSimilarity() {
-        return (v1.dotProduct(v2)) / (v1.getNorm() * v2.getNorm());
+    public double similarity(String s1, String s2) throws IOException {
+        BytesRefHash terms = clearedOrdinals();
+        return cosine(vectorize(s1, terms), vectorize(s2, terms));
     }
 
-    public static double getCosineSimilarity(String s1, String s2)
+    /* Scores the query text against every document text. The query is only
+     * tokenized once.
+     */
+    public double[] similarities(String query, String[] documents)
             throws IOException {
-        return new CosineDocumentSimilarity(s1, s2).getCosineSimilarity();
+        BytesRefHash terms = clearedOrdinals();
+        SparseVector queryVector = vectorize(query, terms);
+        double queryNorm = queryVector.norm();
+        double[] scores = new double[documents.length];
+
+        for (int i = 0; i < documents.length; i++) {
+            SparseVector documentVector = vectorize(documents[i], terms);
+            scores[i] = cosine(queryVector, queryNorm, documentVector);
+        }
+
+        return scores;
+    }
+
+    private BytesRefHash clearedOrdinals() {
+        return ordinals.get().clear();
     }
 
-    Map<String, Integer> getTermFrequencies(IndexReader reader, int docId)
+    // The term frequency vector of the text, over the ordinals of the call
+    private SparseVector vectorize(String text, BytesRefHash terms)
             throws IOException {
-        Terms vector = reader.getTermVector(docId, CONTENT);
-        TermsEnum termsEnum = null;
-        termsEnum = vector.iterator(termsEnum);
-        Map<String, Integer> frequencies = new HashMap<>();
-        BytesRef text = null;
-        while ((text = termsEnum.next()) != null) {
-            String term = text.utf8ToString();
-            int freq = (int) termsEnum.totalTermFreq();
-            frequencies.put(term, freq);
-            terms.add(term);
+        IntFloatHashMap termCounts = counts.get();
+        termCounts.clear();
+
+        TokenStream stream = analyzer.tokenStream(CONTENT, text);
+        TermToBytesRefAttribute termAtt =
+            stream.addAttribute(TermToBytesRefAttribute.class);
+        BytesRef bytes = termAtt.getBytesRef();
+
+        try {
+            stream.reset();
+            while (stream.incrementToken()) {
+                termAtt.fillBytesRef();
+                int ord = terms.add(bytes);
+                termCounts.add(ord >= 0 ? ord : -ord - 1, 1);
+            }
+            stream.end();
+        } finally {
+            stream.close();
+        }
+
+        return SparseVector.fromMap(termCounts);
+    }
+
+    /* Cosine of the angle between the vectors, 0 if either one is empty.
+     */
+    public static double cosine(SparseVector v1, SparseVector v2) {
+        return cosine(v1, v1.norm(), v2);
+    }
+
+    private static double cosine(SparseVector v1, double norm1, SparseVector v2) {
+        double norms = norm1 * v2.norm();
+        if (norms == 0) {
+            return 0;
         }
-        return frequencies;
+        return v1.dot(v2) / norms;
     }
 
-    RealVector toRealVector(Map<String, Integer> map) {
-        RealVector vector = new ArrayRealVector(terms.size());
-        int i = 0;
-        for (String term : terms) {
-            int value = map.containsKey(term) ? map.get(term) : 0;
-            vector.setEntry(i++, value);
+    /* A BytesRefHash with its own pool, so clearing it for the next call
+     * keeps the first block of the pool rather than allocating a new one.
+     */
+    private static class Ordinals {
+        final ByteBlockPool pool =
+            new ByteBlockPool(new ByteBlockPool.DirectAllocator());
+        final BytesRefHash terms = new BytesRefHash(pool);
+
+        BytesRefHash clear() {
+            terms.clear(false);
+            pool.reset(false, true);
+            terms.reinit();
+            return terms;
         }
-        return (RealVector) vector.mapDivide(vector.getL1Norm());
     }
-}
\ No newline at end of file
+}
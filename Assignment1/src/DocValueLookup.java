@@ -0,0 +1,127 @@
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+
+/*
+ * Looks up a numeric doc value (such as the tweet id) by top level doc id
+ * without touching stored fields. The values of each segment are copied
+ * into a long[] once and cached against the segment's core, so every reader
+ * opened on the same segments shares the arrays and a reopened reader only
+ * loads its new segments. The smallest and largest value of each segment
+ * are cached the same way, so range checks can skip whole segments.
+ */
+public class DocValueLookup {
+
+	// segment core key -> field -> values
+	private static final Map<Object, Map<String, long[]>> SEGMENT_VALUES =
+		Collections.synchronizedMap(new WeakHashMap<Object, Map<String, long[]>>());
+
+	// segment core key -> field -> {min, max}
+	private static final Map<Object, Map<String, long[]>> SEGMENT_BOUNDS =
+		Collections.synchronizedMap(new WeakHashMap<Object, Map<String, long[]>>());
+
+	private final int[] docBases;
+	private final long[][] values;
+
+	private DocValueLookup(int[] docBases, long[][] values) {
+		this.docBases = docBases;
+		this.values = values;
+	}
+
+	// Loads (or fetches from the cache) the field's values for every segment
+	public static DocValueLookup load(IndexReader reader, String field)
+			throws IOException {
+		List<AtomicReaderContext> leaves = reader.leaves();
+		int[] docBases = new int[leaves.size()];
+		long[][] values = new long[leaves.size()][];
+
+		for(int i = 0; i < leaves.size(); i++) {
+			docBases[i] = leaves.get(i).docBase;
+			values[i] = segmentValues(leaves.get(i).reader(), field);
+		}
+
+		return new DocValueLookup(docBases, values);
+	}
+
+	/* The field's values for one segment, indexed by the segment's doc ids.
+	 * Documents without a value read as 0.
+	 */
+	public static long[] segmentValues(AtomicReader segment, String field)
+			throws IOException {
+		Object key = segment.getCoreCacheKey();
+		Map<String, long[]> fields;
+
+		synchronized(SEGMENT_VALUES) {
+			fields = SEGMENT_VALUES.get(key);
+			if(fields == null) {
+				fields = new HashMap<String, long[]>();
+				SEGMENT_VALUES.put(key, fields);
+			}
+		}
+
+		synchronized(fields) {
+			long[] segmentValues = fields.get(field);
+
+			if(segmentValues == null) {
+				segmentValues = new long[segment.maxDoc()];
+				NumericDocValues docValues = segment.getNumericDocValues(field);
+
+				if(docValues != null) {
+					for(int doc = 0; doc < segmentValues.length; doc++) {
+						segmentValues[doc] = docValues.get(doc);
+					}
+				}
+				fields.put(field, segmentValues);
+			}
+
+			return segmentValues;
+		}
+	}
+
+	/* The smallest and largest of the field's values in one segment, as
+	 * {min, max}. Deleted documents are included, so the range may be wider
+	 * than the live documents'.
+	 */
+	public static long[] segmentBounds(AtomicReader segment, String field)
+			throws IOException {
+		Object key = segment.getCoreCacheKey();
+		Map<String, long[]> fields;
+
+		synchronized(SEGMENT_BOUNDS) {
+			fields = SEGMENT_BOUNDS.get(key);
+			if(fields == null) {
+				fields = new HashMap<String, long[]>();
+				SEGMENT_BOUNDS.put(key, fields);
+			}
+		}
+
+		synchronized(fields) {
+			long[] bounds = fields.get(field);
+
+			if(bounds == null) {
+				bounds = new long[] { Long.MAX_VALUE, Long.MIN_VALUE };
+				for(long value : segmentValues(segment, field)) {
+					bounds[0] = Math.min(bounds[0], value);
+					bounds[1] = Math.max(bounds[1], value);
+				}
+				fields.put(field, bounds);
+			}
+
+			return bounds;
+		}
+	}
+
+	public long get(int doc) {
+		int segment = ReaderUtil.subIndex(doc, docBases);
+		return values[segment][doc - docBases[segment]];
+	}
+}
@@ -0,0 +1,40 @@
+import java.io.IOException;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+/*
+ * Cuts runs of three or more of the same letter down to two, in place, so
+ * the ways a word gets stretched out in tweets (sooo, soooooo) index as one
+ * term. Runs of digits are left alone.
+ */
+public final class ElongationFilter extends TokenFilter {
+
+	private final CharTermAttribute termAtt =
+		addAttribute(CharTermAttribute.class);
+
+	public ElongationFilter(TokenStream input) {
+		super(input);
+	}
+
+	@Override
+	public boolean incrementToken() throws IOException {
+		if(!input.incrementToken()) {
+			return false;
+		}
+
+		char[] term = termAtt.buffer();
+		int length = termAtt.length();
+		int kept = Math.min(length, 2);
+		for(int i = 2; i < length; i++) {
+			char c = term[i];
+			if(c != term[kept - 1] || c != term[kept - 2]
+					|| !Character.isLetter(c)) {
+				term[kept++] = c;
+			}
+		}
+		termAtt.setLength(kept);
+		return true;
+	}
+}
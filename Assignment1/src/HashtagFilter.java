@@ -0,0 +1,149 @@
+import java.io.IOException;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+
+/*
+ * Ends the analysis of the tweet text. Every token passes through unchanged,
+ * and the terms of the hashtags - the tokens after a # in the same space
+ * separated word, as in #tag or #half-term - are also copied into a
+ * reusable buffer. hashtags() replays them as the token stream of the
+ * Hashtags field, so the hashtag terms come out of the one analysis of the
+ * text, already lowercased and stemmed like the rest, and nothing is
+ * allocated per tweet. The text field has to be indexed before the
+ * Hashtags field, as it is when it comes first in the document.
+ */
+public final class HashtagFilter extends TokenFilter {
+
+	private final CharTermAttribute termAtt =
+		addAttribute(CharTermAttribute.class);
+	private final OffsetAttribute offsetAtt =
+		addAttribute(OffsetAttribute.class);
+
+	// The text being analyzed, which the offsets point into
+	private char[] text;
+	private int length;
+
+	// The hashtag terms end to end, and where each one ends and was found
+	private char[] terms = new char[64];
+	private int[] ends = new int[8];
+	private int[] startOffsets = new int[8];
+	private int[] endOffsets = new int[8];
+	private int count;
+
+	private final Hashtags hashtags = new Hashtags();
+
+	public HashtagFilter(TokenStream input) {
+		super(input);
+	}
+
+	// Sets the text the next analysis reads, up to length
+	public void setText(char[] text, int length) {
+		this.text = text;
+		this.length = length;
+	}
+
+	// Whether this filter ends the given stream
+	public boolean wraps(TokenStream stream) {
+		return input == stream;
+	}
+
+	// The hashtags found by the last analysis, as a token stream
+	public TokenStream hashtags() {
+		return hashtags;
+	}
+
+	@Override
+	public boolean incrementToken() throws IOException {
+		if(!input.incrementToken()) {
+			return false;
+		}
+
+		if(isHashtag(offsetAtt.startOffset())) {
+			keep();
+		}
+		return true;
+	}
+
+	@Override
+	public void reset() throws IOException {
+		super.reset();
+		count = 0;
+	}
+
+	// Whether a # comes before the offset in its word
+	private boolean isHashtag(int start) {
+		for(int i = Math.min(start, length) - 1; i >= 0 && text[i] != ' '; i--) {
+			if(text[i] == '#') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void keep() {
+		if(count == ends.length) {
+			ends = grow(ends);
+			startOffsets = grow(startOffsets);
+			endOffsets = grow(endOffsets);
+		}
+
+		int from = count == 0 ? 0 : ends[count - 1];
+		int to = from + termAtt.length();
+		if(terms.length < to) {
+			char[] grown = new char[Math.max(to, terms.length * 2)];
+			System.arraycopy(terms, 0, grown, 0, from);
+			terms = grown;
+		}
+
+		System.arraycopy(termAtt.buffer(), 0, terms, from, termAtt.length());
+		ends[count] = to;
+		startOffsets[count] = offsetAtt.startOffset();
+		endOffsets[count] = offsetAtt.endOffset();
+		count++;
+	}
+
+	private static int[] grow(int[] array) {
+		int[] grown = new int[array.length * 2];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	// Replays the kept hashtag terms
+	private final class Hashtags extends TokenStream {
+
+		private final CharTermAttribute hashtagAtt =
+			addAttribute(CharTermAttribute.class);
+		private final OffsetAttribute hashtagOffsetAtt =
+			addAttribute(OffsetAttribute.class);
+		private int next;
+
+		@Override
+		public boolean incrementToken() {
+			if(next == count) {
+				return false;
+			}
+
+			clearAttributes();
+			int from = next == 0 ? 0 : ends[next - 1];
+			hashtagAtt.copyBuffer(terms, from, ends[next] - from);
+			hashtagOffsetAtt.setOffset(startOffsets[next], endOffsets[next]);
+			next++;
+			return true;
+		}
+
+		@Override
+		public void end() throws IOException {
+			super.end();
+			hashtagOffsetAtt.setOffset(length, length);
+		}
+
+		@Override
+		public void reset() throws IOException {
+			super.reset();
+			next = 0;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.Constants;
+
+/*
+ * Keeps the tweet indexes on disk between runs. Each index is stamped with a
+ * key made from a checksum of the tweets file and the analyzer that built it,
+ * so a later run can open the existing segments instead of re-indexing the
+ * corpus. If the tweets file or the analyzer changes the key no longer
+ * matches and the index gets rebuilt.
+ */
+public class IndexStore {
+
+	// Bump this whenever the fields written to the index change
+	public static final int LAYOUT_VERSION = 9;
+
+	// Name of the commit user data entry holding the key
+	private static final String KEY_ENTRY = "corpusKey";
+
+	private File folder;
+	private String corpusKey;
+
+	public IndexStore(String indexFolder,
+					  String tweetsFile,
+					  QueryProcessor.AnalyzerChoice ac) throws IOException {
+		folder = new File(indexFolder, ac.name().toLowerCase());
+		corpusKey = LAYOUT_VERSION + ":" + ac.name() + ":"
+			+ checksum(new File(tweetsFile));
+	}
+
+	/* Opens (creating if needed) the named index in this store. On 64 bit
+	 * JVMs the segments are memory mapped, so they are paged in by the OS
+	 * rather than copied onto the heap.
+	 */
+	public Directory open(String indexName) throws IOException {
+		File indexFolder = new File(folder, indexName);
+		indexFolder.mkdirs();
+
+		if(Constants.JRE_IS_64BIT) {
+			return new MMapDirectory(indexFolder);
+		}
+		return FSDirectory.open(indexFolder);
+	}
+
+	// Whether the index in the directory was built from the same corpus
+	// with the same analyzer
+	public boolean isCurrent(Directory directory) {
+		try {
+			if(!DirectoryReader.indexExists(directory)) {
+				return false;
+			}
+
+			SegmentInfos infos = new SegmentInfos();
+			infos.read(directory);
+			return corpusKey.equals(infos.getUserData().get(KEY_ENTRY));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	// Stamps the next commit of the writer with this store's key
+	public void markCurrent(IndexWriter writer) {
+		Map<String, String> commitData = new HashMap<String, String>();
+		commitData.put(KEY_ENTRY, corpusKey);
+		writer.setCommitData(commitData);
+	}
+
+	/*
+	 * CRC32 of the whole file. Reading the file once is far cheaper than
+	 * tokenizing it.
+	 */
+	private static String checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+		byte[] bytes = buffer.array();
+
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			int read;
+
+			while((read = channel.read(buffer)) != -1) {
+				crc.update(bytes, 0, read);
+				buffer.clear();
+			}
+		} finally {
+			in.close();
+		}
+
+		return Long.toHexString(crc.getValue()) + "-" + file.length();
+	}
+}
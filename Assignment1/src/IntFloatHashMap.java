@@ -0,0 +1,108 @@
+import java.util.Arrays;
+
+/*
+ * Open addressing map from non-negative int keys to float values, used to
+ * accumulate term weights without boxing. Meant to be cleared and reused;
+ * clear() only resets the slots that were used.
+ */
+public class IntFloatHashMap {
+
+	private static final int EMPTY = -1;
+
+	private int[] keys;
+	private float[] values;
+	private int[] usedSlots;
+	private int size;
+	private int mask;
+
+	public IntFloatHashMap() {
+		this(64);
+	}
+
+	public IntFloatHashMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+		allocate(capacity);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// Key of the i-th entry, in insertion order
+	public int keyAt(int i) {
+		return keys[usedSlots[i]];
+	}
+
+	// Value of the i-th entry, in insertion order
+	public float valueAt(int i) {
+		return values[usedSlots[i]];
+	}
+
+	public float get(int key) {
+		int slot = find(key);
+		return keys[slot] == EMPTY ? 0 : values[slot];
+	}
+
+	// Adds delta to the key's value (a missing key counts as 0)
+	public void add(int key, float delta) {
+		int slot = find(key);
+
+		if(keys[slot] == EMPTY) {
+			if(size * 2 >= keys.length) {
+				rehash();
+				slot = find(key);
+			}
+			keys[slot] = key;
+			values[slot] = 0;
+			usedSlots[size++] = slot;
+		}
+
+		values[slot] += delta;
+	}
+
+	public void clear() {
+		for(int i = 0; i < size; i++) {
+			keys[usedSlots[i]] = EMPTY;
+		}
+		size = 0;
+	}
+
+	private int find(int key) {
+		int slot = mix(key) & mask;
+
+		while(keys[slot] != EMPTY && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void rehash() {
+		int[] oldKeys = keys;
+		float[] oldValues = values;
+		int[] oldUsed = usedSlots;
+		int oldSize = size;
+
+		allocate(keys.length * 2);
+
+		for(int i = 0; i < oldSize; i++) {
+			int slot = find(oldKeys[oldUsed[i]]);
+			keys[slot] = oldKeys[oldUsed[i]];
+			values[slot] = oldValues[oldUsed[i]];
+			usedSlots[size++] = slot;
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		values = new float[capacity];
+		usedSlots = new int[capacity / 2 + 1];
+		size = 0;
+		mask = capacity - 1;
+	}
+
+	private static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
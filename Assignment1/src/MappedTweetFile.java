@@ -0,0 +1,121 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * Reads the tweets file through memory mapped regions rather than a Reader.
+ * Lines are found by scanning the bytes for newlines and handed out in
+ * batches of offsets into the mapped region; TweetDocument parses each one
+ * straight from the bytes. Only one region is mapped at a time (plus any
+ * still held by batches being indexed) and the OS pages it in and out, so
+ * the file can be far larger than the heap.
+ */
+public class MappedTweetFile implements Closeable {
+
+	// Most bytes mapped at a time; every region ends at a line end
+	private static final int REGION_SIZE = 64 << 20;
+
+	private final int regionSize;
+	private final FileInputStream in;
+	private final FileChannel channel;
+	private final long size;
+
+	// The mapped region, where it starts in the file and the next line in it
+	private MappedByteBuffer region;
+	private long regionStart;
+	private int next;
+
+	public MappedTweetFile(String fileName) throws IOException {
+		this(fileName, REGION_SIZE);
+	}
+
+	// Maps at most regionSize bytes at a time
+	MappedTweetFile(String fileName, int regionSize) throws IOException {
+		this.regionSize = regionSize;
+		in = new FileInputStream(new File(fileName));
+		channel = in.getChannel();
+		size = channel.size();
+	}
+
+	/* The next lines of the file, at most maxLines of them, or null at the
+	 * end of the file.
+	 */
+	public Lines nextLines(int maxLines) throws IOException {
+		if(region == null || next == region.limit()) {
+			if(!mapNextRegion()) {
+				return null;
+			}
+		}
+
+		Lines lines = new Lines(region, maxLines);
+		int limit = region.limit();
+		while(lines.count < maxLines && next < limit) {
+			int end = next;
+			while(end < limit && region.get(end) != '\n') {
+				end++;
+			}
+			lines.starts[lines.count] = next;
+			lines.ends[lines.count] = end;
+			lines.count++;
+			next = end + 1;
+		}
+		next = Math.min(next, limit);
+		return lines;
+	}
+
+	public void close() throws IOException {
+		region = null;
+		in.close();
+	}
+
+	/* Maps the region after the current one, cut back to its last newline
+	 * unless it reaches the end of the file.
+	 */
+	private boolean mapNextRegion() throws IOException {
+		long start = region == null ? 0 : regionStart + region.limit();
+		if(start >= size) {
+			return false;
+		}
+
+		long length = Math.min(regionSize, size - start);
+		MappedByteBuffer mapped =
+			channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+
+		if(start + length < size) {
+			int end = (int) length;
+			while(end > 0 && mapped.get(end - 1) != '\n') {
+				end--;
+			}
+			if(end == 0) {
+				throw new IOException("Line longer than " + regionSize +
+					" bytes at byte " + start);
+			}
+			mapped.limit(end);
+		}
+
+		region = mapped;
+		regionStart = start;
+		next = 0;
+		return true;
+	}
+
+	/* A batch of lines: the bytes of line i run from starts[i] up to (not
+	 * including) ends[i], the newline or end of file.
+	 */
+	public static class Lines {
+		public final ByteBuffer bytes;
+		public final int[] starts;
+		public final int[] ends;
+		public int count;
+
+		Lines(ByteBuffer bytes, int capacity) {
+			this.bytes = bytes;
+			starts = new int[capacity];
+			ends = new int[capacity];
+		}
+	}
+}
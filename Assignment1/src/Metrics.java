@@ -0,0 +1,336 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+/*
+ * Timings of a run: wall time, CPU time and allocation for each phase,
+ * latency histograms for the stages of each query, and statistics about
+ * the index. Written out as JSON and CSV, and optionally shown over JMX.
+ *
+ * CPU time is the whole process's, since indexing and searching use
+ * thread pools. Allocation is summed over every thread: live threads are
+ * read directly and threads made by threadFactory() add their total when
+ * they finish, so work done by short lived workers is still counted.
+ */
+public class Metrics implements MetricsMXBean {
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+		(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	private static final com.sun.management.OperatingSystemMXBean OS =
+		(com.sun.management.OperatingSystemMXBean) 
+			ManagementFactory.getOperatingSystemMXBean();
+
+	// Bytes allocated by counted threads that have finished
+	private static final AtomicLong finishedThreadBytes = new AtomicLong();
+
+	// Phase name -> {count, wall ns, cpu ns, allocated bytes}
+	private final Map<String, long[]> phases = new LinkedHashMap<String, long[]>();
+	private final Map<String, LatencyHistogram> latencies = 
+		new LinkedHashMap<String, LatencyHistogram>();
+	private final Map<String, Long> indexStatistics = new LinkedHashMap<String, Long>();
+	private final Map<String, AtomicLong> counters =
+		new LinkedHashMap<String, AtomicLong>();
+
+	// A phase being timed, recorded when it ends
+	public class Phase {
+		private final String name;
+		private final long wallStart = System.nanoTime();
+		private final long cpuStart = OS.getProcessCpuTime();
+		private final long allocatedStart = allocatedBytes();
+
+		private Phase(String name) {
+			this.name = name;
+		}
+
+		public void end() {
+			recordPhase(name, System.nanoTime() - wallStart,
+				OS.getProcessCpuTime() - cpuStart,
+				allocatedBytes() - allocatedStart);
+		}
+	}
+
+	public Phase startPhase(String name) {
+		return new Phase(name);
+	}
+
+	// The histogram for a query stage, created the first time it is used
+	public LatencyHistogram latency(String stage) {
+		synchronized(latencies) {
+			LatencyHistogram histogram = latencies.get(stage);
+			if(histogram == null) {
+				histogram = new LatencyHistogram();
+				latencies.put(stage, histogram);
+			}
+			return histogram;
+		}
+	}
+
+	public void setIndexStatistic(String name, long value) {
+		synchronized(indexStatistics) {
+			indexStatistics.put(name, value);
+		}
+	}
+
+	// Adds to a running total kept with the index statistics
+	public void addIndexStatistic(String name, long delta) {
+		synchronized(indexStatistics) {
+			Long value = indexStatistics.get(name);
+			indexStatistics.put(name, (value != null ? value : 0) + delta);
+		}
+	}
+
+	/* A running total reported with the index statistics, for counts made
+	 * on every query. Callers keep the counter and update it without a
+	 * lock; it is only read when the statistics are.
+	 */
+	public AtomicLong counter(String name) {
+		synchronized(counters) {
+			AtomicLong counter = counters.get(name);
+			if(counter == null) {
+				counter = new AtomicLong();
+				counters.put(name, counter);
+			}
+			return counter;
+		}
+	}
+
+	/* Threads that add the bytes they allocated to the totals when they
+	 * finish. Use it for worker pools whose threads end inside a phase.
+	 */
+	public static ThreadFactory threadFactory(final String prefix) {
+		final AtomicInteger number = new AtomicInteger();
+		return new ThreadFactory() {
+			public Thread newThread(final Runnable work) {
+				return new Thread(new Runnable() {
+					public void run() {
+						try {
+							work.run();
+						} finally {
+							threadFinished();
+						}
+					}
+				}, prefix + "-" + number.getAndIncrement());
+			}
+		};
+	}
+
+	// Adds the calling thread's allocation to the totals as it finishes
+	public static void threadFinished() {
+		finishedThreadBytes.addAndGet(
+			THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()));
+	}
+
+	// Shows the metrics over JMX for as long as the program runs
+	public void registerMBean() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, 
+				new ObjectName("tweetsearch:type=Metrics"));
+		} catch (Exception e) {
+			System.out.println("Error registering the metrics with JMX");
+			e.printStackTrace();
+		}
+	}
+
+	public void writeReport(String jsonFile, String csvFile) {
+		write(jsonFile, getReportJson());
+		write(csvFile, toCsv());
+	}
+
+	@Override
+	public Map<String, Long> getPhaseWallMillis() {
+		return phaseValues(1, 1000000);
+	}
+
+	@Override
+	public Map<String, Long> getPhaseCpuMillis() {
+		return phaseValues(2, 1000000);
+	}
+
+	@Override
+	public Map<String, Long> getPhaseAllocatedBytes() {
+		return phaseValues(3, 1);
+	}
+
+	@Override
+	public Map<String, Double> getLatencyMicros() {
+		Map<String, Double> values = new LinkedHashMap<String, Double>();
+		for(Map.Entry<String, LatencyHistogram> entry : latencyCopy().entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+			String stage = entry.getKey();
+			values.put(stage + ".count", (double) histogram.count());
+			values.put(stage + ".mean", histogram.mean() / 1000);
+			values.put(stage + ".p50", histogram.percentile(0.5) / 1000.0);
+			values.put(stage + ".p90", histogram.percentile(0.9) / 1000.0);
+			values.put(stage + ".p99", histogram.percentile(0.99) / 1000.0);
+			values.put(stage + ".max", histogram.max() / 1000.0);
+		}
+		return values;
+	}
+
+	@Override
+	public Map<String, Long> getIndexStatistics() {
+		Map<String, Long> statistics;
+		synchronized(indexStatistics) {
+			statistics = new LinkedHashMap<String, Long>(indexStatistics);
+		}
+		synchronized(counters) {
+			for(Map.Entry<String, AtomicLong> counter : counters.entrySet()) {
+				statistics.put(counter.getKey(), counter.getValue().get());
+			}
+		}
+		return statistics;
+	}
+
+	@Override
+	public String getReportJson() {
+		StringBuilder json = new StringBuilder(2048);
+
+		json.append("{\n  \"phases\": {");
+		String separator = "\n";
+		for(Map.Entry<String, long[]> entry : phaseCopy().entrySet()) {
+			long[] phase = entry.getValue();
+			json.append(separator).append("    ").append(quote(entry.getKey()))
+				.append(": {\"count\": ").append(phase[0])
+				.append(", \"wallMillis\": ").append(number(phase[1] / 1e6))
+				.append(", \"cpuMillis\": ").append(number(phase[2] / 1e6))
+				.append(", \"allocatedBytes\": ").append(phase[3]).append('}');
+			separator = ",\n";
+		}
+
+		json.append("\n  },\n  \"latencyMicros\": {");
+		separator = "\n";
+		for(Map.Entry<String, LatencyHistogram> entry : latencyCopy().entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+			json.append(separator).append("    ").append(quote(entry.getKey()))
+				.append(": {\"count\": ").append(histogram.count())
+				.append(", \"mean\": ").append(number(histogram.mean() / 1000))
+				.append(", \"p50\": ").append(number(histogram.percentile(0.5) / 1000.0))
+				.append(", \"p90\": ").append(number(histogram.percentile(0.9) / 1000.0))
+				.append(", \"p99\": ").append(number(histogram.percentile(0.99) / 1000.0))
+				.append(", \"max\": ").append(number(histogram.max() / 1000.0))
+				.append('}');
+			separator = ",\n";
+		}
+
+		json.append("\n  },\n  \"index\": {");
+		separator = "\n";
+		for(Map.Entry<String, Long> entry : getIndexStatistics().entrySet()) {
+			json.append(separator).append("    ").append(quote(entry.getKey()))
+				.append(": ").append(entry.getValue());
+			separator = ",\n";
+		}
+		json.append("\n  }\n}\n");
+
+		return json.toString();
+	}
+
+	// One "section,name,statistic,value" row per number
+	public String toCsv() {
+		StringBuilder csv = new StringBuilder(2048);
+		csv.append("section,name,statistic,value\n");
+
+		for(Map.Entry<String, long[]> entry : phaseCopy().entrySet()) {
+			long[] phase = entry.getValue();
+			String row = "phase," + entry.getKey() + ",";
+			csv.append(row).append("count,").append(phase[0]).append('\n');
+			csv.append(row).append("wallMillis,").append(number(phase[1] / 1e6)).append('\n');
+			csv.append(row).append("cpuMillis,").append(number(phase[2] / 1e6)).append('\n');
+			csv.append(row).append("allocatedBytes,").append(phase[3]).append('\n');
+		}
+		for(Map.Entry<String, Double> entry : getLatencyMicros().entrySet()) {
+			String key = entry.getKey();
+			int dot = key.lastIndexOf('.');
+			csv.append("latencyMicros,").append(key.substring(0, dot)).append(',')
+				.append(key.substring(dot + 1)).append(',')
+				.append(number(entry.getValue())).append('\n');
+		}
+		for(Map.Entry<String, Long> entry : getIndexStatistics().entrySet()) {
+			csv.append("index,").append(entry.getKey()).append(",value,")
+				.append(entry.getValue()).append('\n');
+		}
+
+		return csv.toString();
+	}
+
+	private void recordPhase(String name, long wall, long cpu, long allocated) {
+		synchronized(phases) {
+			long[] phase = phases.get(name);
+			if(phase == null) {
+				phase = new long[4];
+				phases.put(name, phase);
+			}
+			phase[0]++;
+			phase[1] += wall;
+			phase[2] += cpu;
+			phase[3] += allocated;
+		}
+	}
+
+	private Map<String, Long> phaseValues(int column, long divisor) {
+		Map<String, Long> values = new LinkedHashMap<String, Long>();
+		for(Map.Entry<String, long[]> entry : phaseCopy().entrySet()) {
+			values.put(entry.getKey(), entry.getValue()[column] / divisor);
+		}
+		return values;
+	}
+
+	private Map<String, long[]> phaseCopy() {
+		synchronized(phases) {
+			Map<String, long[]> copy = new LinkedHashMap<String, long[]>();
+			for(Map.Entry<String, long[]> entry : phases.entrySet()) {
+				copy.put(entry.getKey(), entry.getValue().clone());
+			}
+			return copy;
+		}
+	}
+
+	private Map<String, LatencyHistogram> latencyCopy() {
+		synchronized(latencies) {
+			return new LinkedHashMap<String, LatencyHistogram>(latencies);
+		}
+	}
+
+	// Bytes allocated so far by live threads and finished counted threads
+	private static long allocatedBytes() {
+		long total = finishedThreadBytes.get();
+		for(long bytes : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+			if(bytes > 0) {
+				total += bytes;
+			}
+		}
+		return total;
+	}
+
+	private static String number(double value) {
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+
+	private static String quote(String text) {
+		return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	private static void write(String fileName, String text) {
+		BufferedWriter output = null;
+		try {
+			output = new BufferedWriter(
+				new OutputStreamWriter(
+				new FileOutputStream(fileName), "utf-8"));
+			output.write(text);
+		} catch (IOException e) {
+			System.out.println("Error while writing to file:" + fileName);
+			e.printStackTrace();
+		} finally {
+			try { if(output != null) output.close(); } catch (IOException e) {}
+		}
+	}
+}
@@ -0,0 +1,21 @@
+import java.util.Map;
+
+/*
+ * What Metrics shows over JMX, under "tweetsearch:type=Metrics". Times are
+ * in milliseconds and latencies in microseconds.
+ */
+public interface MetricsMXBean {
+
+	Map<String, Long> getPhaseWallMillis();
+
+	Map<String, Long> getPhaseCpuMillis();
+
+	Map<String, Long> getPhaseAllocatedBytes();
+
+	// Keyed by stage and statistic, such as "search.p99"
+	Map<String, Double> getLatencyMicros();
+
+	Map<String, Long> getIndexStatistics();
+
+	String getReportJson();
+}
@@ -0,0 +1,118 @@
+import java.util.Arrays;
+
+/*
+ * Collapses near-duplicate tweets in a ranking, keeping the best ranked
+ * copy. Two tweets are near-duplicates when their SimHash signatures differ
+ * in at most maxDistance bits.
+ *
+ * Rather than comparing every pair, the signature is split into
+ * maxDistance + 1 bands. Two signatures within maxDistance bits must agree
+ * exactly on at least one band, so each result is only checked against
+ * kept results that share a band with it, which keeps a ranking of k
+ * results at about O(k) work.
+ */
+public class NearDuplicateFilter {
+
+	private final int maxDistance;
+	private final int bands;
+	private final int[] bandShift;
+	private final long[] bandMask;
+
+	/* Similarity threshold between 0 and 1, the fraction of signature bits
+	 * two tweets must share to count as duplicates. Duplicates share at
+	 * least one bit, since there can be no more than 64 bands of one bit.
+	 */
+	public NearDuplicateFilter(double threshold) {
+		maxDistance = Math.min(63, 
+			(int) Math.round((1 - Math.max(0, Math.min(1, threshold))) * 64));
+		bands = maxDistance + 1;
+		bandShift = new int[bands];
+		bandMask = new long[bands];
+
+		int start = 0;
+		for(int b = 0; b < bands; b++) {
+			int end = (int) ((long) (b + 1) * 64 / bands);
+			bandShift[b] = start;
+			bandMask[b] = end - start == 64 ? -1L : (1L << (end - start)) - 1;
+			start = end;
+		}
+	}
+
+	/* Returns the ranking without the results that are near-duplicates of a
+	 * better ranked result.
+	 */
+	public RankedDocs collapse(RankedDocs ranking, DocValueLookup signatures) {
+		int length = ranking.length();
+		int[] keptDocs = new int[length];
+		float[] keptScores = new float[length];
+		long[] keptSignatures = new long[length];
+		int kept = 0;
+
+		// hash table of band key -> chain of kept results with that band
+		int tableSize = Integer.highestOneBit(Math.max(4, length * bands * 2) - 1) << 1;
+		long[] tableKeys = new long[tableSize];
+		int[] tableHeads = new int[tableSize];
+		Arrays.fill(tableHeads, -1);
+		int[] next = new int[Math.max(1, length * bands)];
+
+		for(int i = 0; i < length; i++) {
+			long signature = signatures.get(ranking.docs[i]);
+
+			if(isDuplicate(signature, keptSignatures, tableKeys, tableHeads, next)) {
+				continue;
+			}
+
+			for(int b = 0; b < bands; b++) {
+				long key = bandKey(signature, b);
+				int slot = slot(key, tableKeys, tableHeads);
+				tableKeys[slot] = key;
+				next[kept * bands + b] = tableHeads[slot];
+				tableHeads[slot] = kept * bands + b;
+			}
+
+			keptDocs[kept] = ranking.docs[i];
+			keptScores[kept] = ranking.scores[i];
+			keptSignatures[kept] = signature;
+			kept++;
+		}
+
+		if(kept == length) {
+			return ranking;
+		}
+		return new RankedDocs(Arrays.copyOf(keptDocs, kept),
+							  Arrays.copyOf(keptScores, kept));
+	}
+
+	private boolean isDuplicate(long signature, long[] keptSignatures,
+								long[] tableKeys, int[] tableHeads, int[] next) {
+		for(int b = 0; b < bands; b++) {
+			long key = bandKey(signature, b);
+			int slot = slot(key, tableKeys, tableHeads);
+
+			for(int entry = tableHeads[slot]; entry != -1; entry = next[entry]) {
+				long other = keptSignatures[entry / bands];
+				if(SimHash.distance(signature, other) <= maxDistance) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	// The band's bits tagged with the band number
+	private long bandKey(long signature, int band) {
+		return ((signature >>> bandShift[band]) & bandMask[band]) * 65 + band;
+	}
+
+	// The slot holding the key, or the empty slot where it would go
+	private static int slot(long key, long[] tableKeys, int[] tableHeads) {
+		int mask = tableKeys.length - 1;
+		long h = key * 0x9E3779B97F4A7C15L;
+		int slot = (int) (h ^ (h >>> 32)) & mask;
+
+		while(tableHeads[slot] != -1 && tableKeys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+}
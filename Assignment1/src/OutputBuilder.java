@@ -1,32 +1,102 @@
-import java.io.BufferedWriter;
+
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 
 /*
  * This is a utility class used to write both the results and vocabulary results
- * to files.
+ * to files. Rows are formatted straight into a reused byte buffer that is
+ * written out through a FileChannel, and the query number is only parsed
+ * when the topic changes, so writing results allocates next to nothing.
+ *
+ * Results can also be written to a compact binary run file alongside the
+ * TREC text file. It starts with the bytes "TRUN" and an int format version,
+ * then holds one little endian record per result:
+ * int topic, long tweet id, int rank, float score.
  */
 public class OutputBuilder {
 
-    BufferedWriter writer;
+    public static final int BINARY_VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Longest text row: topic, id, rank and score are all short
+    private static final int MAX_ROW_LENGTH = 128;
+    private static final int BINARY_RECORD_LENGTH = 20;
+    private static final byte[] ROW_END = "\ttestRun\n".getBytes(UTF_8);
+
+    FileChannel channel;
+    FileChannel binaryChannel;
+    ByteBuffer buffer;
+    ByteBuffer binaryBuffer;
     int rank;
 
+    // The topic of the last row written and its formatted row prefix
+    private String currentQuery;
+    private int topic;
+    private byte[] rowPrefix;
+
+    // Reused to format scores
+    private final StringBuilder scoreText = new StringBuilder(16);
+
     public OutputBuilder(String fileName) {
+        this(fileName, null);
+    }
+
+    /* Also writes results in the binary run format to binaryFileName,
+     * unless it is null.
+     */
+    public OutputBuilder(String fileName, String binaryFileName) {
     	try {
-    		writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName)));
+    		channel = new FileOutputStream(fileName).getChannel();
+    		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    		if(binaryFileName != null) {
+    			binaryChannel = new FileOutputStream(binaryFileName).getChannel();
+    			binaryBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    			binaryBuffer.order(ByteOrder.LITTLE_ENDIAN);
+    			binaryBuffer.put("TRUN".getBytes(UTF_8));
+    			binaryBuffer.putInt(BINARY_VERSION);
+    		}
     	} catch (FileNotFoundException e) {
     		System.out.println("Error while writing to file:" + fileName);
     		e.printStackTrace();
     	}
-    	
+
     	rank = 1;
     }
 
-    public void add(String queryNum, String id, float score) {
+    public void add(String queryNum, long id, float score) {
         try {
-        	writer.write(buildOutputString(queryNum, id, score));
+            if(!queryNum.equals(currentQuery)) {
+                startTopic(queryNum);
+            }
+
+            if(buffer.remaining() < MAX_ROW_LENGTH) {
+                flush(channel, buffer);
+            }
+
+            buffer.put(rowPrefix);
+            putLong(id);
+            buffer.put((byte) '\t');
+            putLong(rank);
+            buffer.put((byte) '\t');
+            putScore(score);
+            buffer.put(ROW_END);
+
+            if(binaryChannel != null) {
+                if(binaryBuffer.remaining() < BINARY_RECORD_LENGTH) {
+                    flush(binaryChannel, binaryBuffer);
+                }
+                binaryBuffer.putInt(topic);
+                binaryBuffer.putLong(id);
+                binaryBuffer.putInt(rank);
+                binaryBuffer.putFloat(score);
+            }
         } catch (IOException e) {
         	System.out.println("Error while writing to output file");
         	e.printStackTrace();
@@ -36,32 +106,95 @@ public class OutputBuilder {
 
     public void addRaw(String rawInput) {
         try {
-            writer.write(rawInput);
+            byte[] bytes = rawInput.getBytes(UTF_8);
+            int offset = 0;
+
+            while(offset < bytes.length) {
+                if(!buffer.hasRemaining()) {
+                    flush(channel, buffer);
+                }
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
         } catch (IOException e) {
             System.out.println("Error while writing to output file");
             e.printStackTrace();
         }
     }
-    
+
     public void resetRank() {
         rank = 1;
     }
 
     public void close() {
         try {
-        	writer.close();
+        	flush(channel, buffer);
+        	channel.close();
+
+        	if(binaryChannel != null) {
+        		flush(binaryChannel, binaryBuffer);
+        		binaryChannel.close();
+        	}
         } catch (IOException e) {
-        	
+
         }
     }
 
-    private String buildOutputString(String queryNum, String id, float score) {
-        return stripPrefix(queryNum) + "\tQ0\t" + id + "\t" + rank + "\t"
-            + score + "\ttestRun\n";
+    // Parses the topic number once and keeps the "topic\tQ0\t" prefix
+    private void startTopic(String queryNum) {
+        currentQuery = queryNum;
+        topic = stripPrefix(queryNum);
+        rowPrefix = (topic + "\tQ0\t").getBytes(UTF_8);
+    }
+
+    private static void flush(FileChannel out, ByteBuffer bytes) throws IOException {
+        bytes.flip();
+        while(bytes.hasRemaining()) {
+            out.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    // Writes a number in decimal, as String.valueOf(long) does
+    private void putLong(long value) {
+        if(value >= 0 && value < 10) {
+            buffer.put((byte) ('0' + value));
+            return;
+        }
+
+        // works on the negated value so Long.MIN_VALUE fits
+        if(value < 0) {
+            buffer.put((byte) '-');
+        } else {
+            value = -value;
+        }
+
+        int digits = 0;
+        for(long rest = value; rest < 0; rest /= 10) {
+            digits++;
+        }
+
+        int end = buffer.position() + digits;
+        for(int i = end - 1; i >= buffer.position(); i--) {
+            buffer.put(i, (byte) ('0' - value % 10));
+            value /= 10;
+        }
+        buffer.position(end);
+    }
+
+    // Same text as Float.toString, without creating a String
+    private void putScore(float score) {
+        scoreText.setLength(0);
+        scoreText.append(score);
+
+        for(int i = 0; i < scoreText.length(); i++) {
+            buffer.put((byte) scoreText.charAt(i));
+        }
     }
 
-    private static String stripPrefix(String input) {
+    private static int stripPrefix(String input) {
     	String output = input.substring(2);
-        return String.valueOf(Integer.parseInt(output));
+        return Integer.parseInt(output);
     }
-}
\ No newline at end of file
+}
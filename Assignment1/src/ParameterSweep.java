@@ -0,0 +1,240 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Tries every combination of the ranking models and the relevance feedback
+ * and hashtag scoring parameters against one index. The index is built and
+ * the queries parsed once, then each combination is a search pass over the
+ * shared searcher, evaluated in memory. The passes run concurrently and the
+ * results are written as a leaderboard, best MAP first.
+ *
+ * Grids are given as a comma separated list of values ("1,2.5,4") or as
+ * a range with a step ("1:4:0.5" is 1 to 4 in steps of 0.5).
+ */
+public class ParameterSweep {
+
+	// Parameters that are not swept keep the value of the base options
+	private double[] originalQueryCoefficients;
+	private double[] relevantQueryCoefficients;
+	private double[] irrelevantQueryCoefficients;
+	private double[] relevantDocuments;
+	private double[] hashtagScoreCoefficients;
+	private List<RankTool> rankTools;
+
+	public void setOriginalQueryCoefficients(double[] values) {
+		originalQueryCoefficients = values;
+	}
+
+	public void setRelevantQueryCoefficients(double[] values) {
+		relevantQueryCoefficients = values;
+	}
+
+	public void setIrrelevantQueryCoefficients(double[] values) {
+		irrelevantQueryCoefficients = values;
+	}
+
+	public void setRelevantDocuments(double[] values) {
+		relevantDocuments = values;
+	}
+
+	public void setHashtagScoreCoefficients(double[] values) {
+		hashtagScoreCoefficients = values;
+	}
+
+	public void setRankTools(List<RankTool> rankTools) {
+		this.rankTools = rankTools;
+	}
+
+	/* Every combination of the grids. Relevance feedback and hashtag
+	 * scoring are only swept when the base options use them.
+	 */
+	public List<ScoringOptions> combinations(ScoringOptions base) {
+		double[] oQ = base.useRelevanceFeedback ?
+			grid(originalQueryCoefficients, base.originalQueryCoefficient) :
+			single(base.originalQueryCoefficient);
+		double[] rQ = base.useRelevanceFeedback ?
+			grid(relevantQueryCoefficients, base.relevantQueryCoefficient) :
+			single(base.relevantQueryCoefficient);
+		double[] iQ = base.useRelevanceFeedback ?
+			grid(irrelevantQueryCoefficients, base.irrelevantQueryCoefficient) :
+			single(base.irrelevantQueryCoefficient);
+		double[] numR = base.useRelevanceFeedback ?
+			grid(relevantDocuments, base.relevantDocumentsConsidered) :
+			single(base.relevantDocumentsConsidered);
+		double[] ht = base.useHashtagScoring ?
+			grid(hashtagScoreCoefficients, base.hashtagScoreCoefficient) :
+			single(base.hashtagScoreCoefficient);
+
+		List<RankTool> tools = rankTools != null ? 
+			rankTools : Collections.singletonList(base.rankTool);
+
+		List<ScoringOptions> combinations = new ArrayList<ScoringOptions>();
+		for(RankTool tool : tools) {
+			for(double o : oQ) {
+				for(double r : rQ) {
+					for(double i : iQ) {
+						for(double n : numR) {
+							for(double h : ht) {
+								combinations.add(new ScoringOptions(
+									base.useRelevanceFeedback, o, r, i, (int) n,
+									base.useHashtagScoring, (float) h, tool));
+							}
+						}
+					}
+				}
+			}
+		}
+		return combinations;
+	}
+
+	/* Searches and evaluates every combination using the given number of
+	 * threads. The processor must already be open.
+	 */
+	public List<Entry> run(final QueryProcessor processor,
+						   final TrecEvaluator evaluator,
+						   ScoringOptions base,
+						   int threads) {
+		List<ScoringOptions> combinations = combinations(base);
+		System.out.println("Sweeping " + combinations.size() +
+			" parameter combinations on " + threads + " threads");
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads, 
+			Metrics.threadFactory("sweep"));
+		List<Future<Entry>> pending = new ArrayList<Future<Entry>>();
+
+		for(final ScoringOptions options : combinations) {
+			pending.add(pool.submit(new Callable<Entry>() {
+				public Entry call() {
+					long start = System.nanoTime();
+					TrecRun run = processor.search(options);
+					long searchNanos = System.nanoTime() - start;
+					return new Entry(options, evaluator.evaluate(run), searchNanos);
+				}
+			}));
+		}
+
+		List<Entry> entries = new ArrayList<Entry>();
+		for(Future<Entry> entry : pending) {
+			try {
+				entries.add(entry.get());
+			} catch (InterruptedException | ExecutionException e) {
+				System.out.println("Error running a sweep combination");
+				e.printStackTrace();
+			}
+		}
+		pool.shutdown();
+
+		// stable, so equal MAPs keep the grid order
+		Collections.sort(entries, new Comparator<Entry>() {
+			public int compare(Entry a, Entry b) {
+				return Float.compare(b.result.meanAveragePrecision(),
+									 a.result.meanAveragePrecision());
+			}
+		});
+		return entries;
+	}
+
+	// Writes the leaderboard table, one combination per line
+	public static void writeLeaderboard(String fileName, List<Entry> entries) {
+		BufferedWriter output = null;
+
+		try {
+			output = new BufferedWriter(
+				new OutputStreamWriter(
+				new FileOutputStream(fileName), "utf-8"));
+
+			output.write(String.format(Locale.ROOT,
+				"%4s  %6s  %6s  %6s  %6s  %6s  %6s  %8s  %s%n",
+				"Rank", "MAP", "P@10", "P@30", "R-prec", "bpref", "NDCG10",
+				"ms", "Options"));
+
+			for(int i = 0; i < entries.size(); i++) {
+				Entry entry = entries.get(i);
+				TrecEvaluator.Result result = entry.result;
+				output.write(String.format(Locale.ROOT,
+					"%4d  %6.4f  %6.4f  %6.4f  %6.4f  %6.4f  %6.4f  %8.1f  %s%n",
+					i + 1,
+					result.meanAveragePrecision(),
+					result.precisionAt(10),
+					result.precisionAt(30),
+					result.rPrecision(),
+					result.bpref(),
+					result.ndcgAtCutoff(),
+					entry.searchNanos / 1e6,
+					entry.options));
+			}
+		} catch (IOException e) {
+			System.out.println("Error while writing to file:" + fileName);
+			e.printStackTrace();
+		} finally {
+			try { if(output != null) output.close(); } catch (IOException e) {}
+		}
+	}
+
+	/* Parses a grid argument: "a,b,c" or "start:end:step". Throws a
+	 * NumberFormatException for anything else.
+	 */
+	public static double[] parseGrid(String text) {
+		String[] range = text.split(":");
+
+		if(range.length == 3) {
+			double start = Double.parseDouble(range[0]);
+			double end = Double.parseDouble(range[1]);
+			double step = Double.parseDouble(range[2]);
+			if(step <= 0 || end < start) {
+				throw new NumberFormatException("Bad range: " + text);
+			}
+
+			// counts the steps first so rounding cannot drop the end value
+			int count = (int) Math.floor((end - start) / step + 1e-9) + 1;
+			double[] values = new double[count];
+			for(int i = 0; i < count; i++) {
+				values[i] = Math.round((start + i * step) * 1e9) / 1e9;
+			}
+			return values;
+		}
+		if(range.length != 1) {
+			throw new NumberFormatException("Bad grid: " + text);
+		}
+
+		String[] list = text.split(",");
+		double[] values = new double[list.length];
+		for(int i = 0; i < list.length; i++) {
+			values[i] = Double.parseDouble(list[i].trim());
+		}
+		return values;
+	}
+
+	private static double[] grid(double[] values, double baseValue) {
+		return values != null ? values : single(baseValue);
+	}
+
+	private static double[] single(double value) {
+		return new double[] { value };
+	}
+
+	// One combination's evaluation and how long its search pass took
+	public static class Entry {
+		public final ScoringOptions options;
+		public final TrecEvaluator.Result result;
+		public final long searchNanos;
+
+		Entry(ScoringOptions options, TrecEvaluator.Result result, long searchNanos) {
+			this.options = options;
+			this.result = result;
+			this.searchNanos = searchNanos;
+		}
+	}
+}
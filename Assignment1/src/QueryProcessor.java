@@ -4,41 +4,53 @@ import java.io.FileReader;
 import java.io.IOException;
 
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.core.SimpleAnalyzer;
 import org.apache.lucene.analysis.en.EnglishAnalyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.FieldType;
-import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.Fields;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexReaderContext;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
 import org.apache.lucene.index.MultiFields;
-import org.apache.lucene.index.Term;
+import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
-import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.ReferenceManager.RefreshListener;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.store.*;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.Version;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
 /*
  * This is the powerhouse class of this assignment. It builds the index,
@@ -50,6 +62,8 @@ public class QueryProcessor {
 
 	// Set parameters
 	private final int NUM_HITS = 1000;
+	// Extra hits fetched per result kept when collapsing near-duplicates
+	private final int DUPLICATE_OVERFETCH = 2;
 	private final int NUM_WORDS_TO_PRINT = 100;
 
 	// Input/Output file names
@@ -57,16 +71,79 @@ public class QueryProcessor {
 	private String inputQueriesFile;
 	private String vocabFile;
 	private String resultsFile;
+	private String binaryResultsFile;
 
 	// Lucene constructs used throughout the three steps
-	private Directory index;
-	private Directory hashtagIndex;
+	// (the index is one directory per shard, or a single one)
+	private Directory[] indexes;
 	private Analyzer analyzer;
 	private HashMap<String, Query> queries;
+	private HashMap<String, Query> hashtagQueries;
+	// The last tweet id at each query's time, for time filtered searches
+	private HashMap<String, Long> queryTweetTimes;
+
+	// Hands out searchers over the index, set up in open()
+	private ReferenceManager<IndexSearcher> searcherManager;
+	// Numbers the searchers it makes, for the result cache
+	private final AtomicLong searcherGenerations = new AtomicLong();
+
+	// Top hits of recent searches, or null when they are not cached
+	private ResultCache resultCache;
+	private int resultCacheEntries = 10000;
+	private double resultCacheMB = 64;
+
+	// Shards the index is split into and how tweets are assigned to them
+	private int shards = 1;
+	private boolean shardByTime;
+	// Searches the other shards while a query's thread searches the first
+	private ExecutorService shardPool;
+
+	// Kept open after building for near-real-time ingestion, else null
+	private boolean nearRealTime;
+	private IndexWriter writer;
+	private TweetIngester ingester;
+	// Length of the tweets file when indexing started, where tailing begins
+	private long indexedLength;
+
+	// On-disk store for the indexes, or null to index into memory every run
+	private IndexStore indexStore;
+
+	// Indexing pipeline settings
+	private int indexingThreads = Runtime.getRuntime().availableProcessors();
+	private double ramBufferSizeMB = IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB;
+
+	// Number of queries run at once, 1 runs them one after another
+	private int queryThreads = 1;
+
+	// Whether queries only find tweets posted up to their query time
+	private boolean timeFiltered;
+
+	// Ranking model the searches use
+	private RankTool rankTool = new RankTool.TfIdf();
+
+	// Collapses near-duplicate results, or null to keep them all
+	private NearDuplicateFilter duplicateFilter;
+	private Map<String, Integer> collapsedDuplicates = 
+		Collections.synchronizedMap(new HashMap<String, Integer>());
+
+	// The rankings written by the last run, kept for evaluation
+	private TrecRun run = new TrecRun();
+
+	// Phase timings, query stage latencies and index statistics
+	private final Metrics metrics = new Metrics();
+
+	// Top hits collector reused by each query thread
+	private final ThreadLocal<TopKCollector> collectors = 
+		new ThreadLocal<TopKCollector>() {
+			@Override
+			protected TopKCollector initialValue() {
+				return new TopKCollector(hitsCollected());
+			}
+		};
 
 	// Analyzer to use
 	public static enum AnalyzerChoice {
-		STANDARD, ENGLISH
+		STANDARD, ENGLISH, TWEET
 	}
 	
 	// Whether or not to use the relevance feedback system
@@ -83,30 +160,31 @@ public class QueryProcessor {
 	private double relevantQueryCoefficient = 5.5;
 	private double irrelevantQueryCoefficient = 0;
 	
+	// Most terms kept in a relevance feedback query
+	private int feedbackTermLimit = 50;
+
+	// Term vectors of feedback documents, or null when they are not cached
+	private TermVectorCache termVectorCache;
+	private int termVectorCacheEntries = 100000;
+
 	// The coefficient used for hashtag-based scoring
 	private float hashtagScoreCoefficient = 0.1f;
 	
-	// Indexed, tokenized, stored, Term-Vectors
-	public static final FieldType TYPE_STORED = new FieldType();
+	// Indexed, tokenized, the tweet text (stored separately as bytes)
+	public static final FieldType TYPE_TEXT = new FieldType();
 	
-	/* Term-Vectors */
+	// Indexed, tokenized, searched only
 	public static final FieldType TYPE_HASHTAG = new FieldType();
 
     static {
-		 TYPE_STORED.setIndexed(true);
-		 TYPE_STORED.setTokenized(true);
-		 TYPE_STORED.setStored(true);
-		 TYPE_STORED.setStoreTermVectors(true);
-		 TYPE_STORED.setStoreTermVectorPositions(true);
-		 TYPE_STORED.freeze();
+		 TYPE_TEXT.setIndexed(true);
+		 TYPE_TEXT.setTokenized(true);
+		 TYPE_TEXT.freeze();
     }
     
     static {
 		TYPE_HASHTAG.setIndexed(true);
 		TYPE_HASHTAG.setTokenized(true);
-		TYPE_HASHTAG.setStored(true);
-		TYPE_HASHTAG.setStoreTermVectors(true);
-		TYPE_HASHTAG.setStoreTermVectorPositions(true);
 		TYPE_HASHTAG.freeze(); 
 		
 	}
@@ -132,6 +210,8 @@ public class QueryProcessor {
 
 		if (ac == AnalyzerChoice.ENGLISH) {
 			analyzer = new EnglishAnalyzer(Version.LUCENE_40);
+		} else if (ac == AnalyzerChoice.TWEET) {
+			analyzer = new TweetAnalyzer(Version.LUCENE_40);
 		} else {
 			analyzer = new StandardAnalyzer(Version.LUCENE_40);
 		}
@@ -161,88 +241,362 @@ public class QueryProcessor {
 		}
 	}
 
+	/* Keeps the indexes under the given folder and reuses them on later runs
+	 * as long as the tweets file and analyzer have not changed.
+	 */
+	public void usePersistentIndex(String indexFolder, AnalyzerChoice ac) {
+		try {
+			indexStore = new IndexStore(indexFolder, inputTweetsFile, ac);
+		} catch (IOException e) {
+			System.out.println("Error reading input tweets, " +
+				"the index will be kept in memory");
+			e.printStackTrace();
+			indexStore = null;
+		}
+	}
+
+	/* Sets the number of indexing worker threads and the RAM buffer each
+	 * IndexWriter fills before flushing a segment. Null keeps the default.
+	 */
+	public void setIndexingOptions(Integer threads, Double ramBufferMB) {
+		if(threads != null && threads > 0) {
+			indexingThreads = threads;
+		}
+
+		if(ramBufferMB != null && ramBufferMB > 0) {
+			ramBufferSizeMB = ramBufferMB;
+		}
+	}
+
+	// Sets the most terms a relevance feedback query may keep
+	public void setFeedbackTermLimit(Integer maxTerms) {
+		if(maxTerms != null && maxTerms > 0) {
+			feedbackTermLimit = maxTerms;
+		}
+	}
+
+	/* Turns on collapsing of near-duplicate tweets in the results. Tweets
+	 * whose SimHash signatures share at least the threshold fraction of
+	 * bits count as duplicates.
+	 */
+	public void setDuplicateThreshold(Double threshold) {
+		if(threshold != null) {
+			duplicateFilter = new NearDuplicateFilter(threshold);
+		}
+	}
+
+	// Also writes the results in the binary run format to this file
+	public void setBinaryResultsFile(String binaryResultsFile) {
+		this.binaryResultsFile = binaryResultsFile;
+	}
+
+	// Sets how many queries are run concurrently
+	public void setQueryThreads(Integer threads) {
+		if(threads != null && threads > 0) {
+			queryThreads = threads;
+		}
+	}
+
+	/* Bounds the result cache by entries and megabytes. Zero entries turns
+	 * it off, null keeps the default.
+	 */
+	public void setResultCache(Integer maxEntries, Double maxMB) {
+		if(maxEntries != null && maxEntries >= 0) {
+			resultCacheEntries = maxEntries;
+		}
+
+		if(maxMB != null && maxMB > 0) {
+			resultCacheMB = maxMB;
+		}
+	}
+
+	/* Bounds the cache of feedback document term vectors by entries. Zero
+	 * turns it off, null keeps the default.
+	 */
+	public void setTermVectorCache(Integer maxEntries) {
+		if(maxEntries != null && maxEntries >= 0) {
+			termVectorCacheEntries = maxEntries;
+		}
+	}
+
+	/* Splits the index into this many shards, indexed side by side and
+	 * searched concurrently, with the tweets assigned by a hash of their id
+	 * or by time ranges. Not used with near-real-time ingestion, which
+	 * writes to a single index. Null keeps one index.
+	 */
+	public void setShards(Integer shards, boolean byTime) {
+		if(shards != null && shards > 0) {
+			this.shards = shards;
+		}
+		shardByTime = byTime;
+	}
+
+	// Ranks with the given model, null keeps Lucene's TF-IDF
+	public void setRankTool(RankTool rankTool) {
+		if(rankTool != null) {
+			this.rankTool = rankTool;
+		}
+	}
+
+	/* Only returns tweets posted at or before each query's time, as given
+	 * by its querytweettime. Queries without one are not filtered.
+	 */
+	public void setTimeFiltered(boolean timeFiltered) {
+		this.timeFiltered = timeFiltered;
+	}
+
+	/* Keeps the index writer open after building so tweets can be added
+	 * with startIngestion() while the index is searched.
+	 */
+	public void setNearRealTime(boolean nearRealTime) {
+		this.nearRealTime = nearRealTime;
+	}
+
+	// The tweet ids and scores ranked for each query by go()
+	public TrecRun getRun() {
+		return run;
+	}
+
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
+	// The scoring settings given to the constructor
+	public ScoringOptions getScoringOptions() {
+		return new ScoringOptions(useRelevanceFeedback,
+								  originalQueryCoefficient,
+								  relevantQueryCoefficient,
+								  irrelevantQueryCoefficient,
+								  relevant_documents_considered,
+								  useHashtagScoring,
+								  hashtagScoreCoefficient,
+								  rankTool);
+	}
+
 	// Main method that calls methods in the correct order
 	public void go() {
-		index = buildIndex();
-		
-		if(useHashtagScoring){
-			hashtagIndex = buildHashtagIndex();
-		}
+		open();
+
+		Metrics.Phase phase = metrics.startPhase("analyzeIndex");
 		analyzeIndex();
+		phase.end();
+
+		phase = metrics.startPhase("getResults");
+		getResults(getScoringOptions());
+		phase.end();
+	}
+
+	/* Builds (or reuses) the index, parses the queries and opens a searcher.
+	 * After this, search() can be called any number of times from any
+	 * number of threads.
+	 */
+	public void open() {
+		Metrics.Phase phase = metrics.startPhase("buildIndex");
+		buildIndexes();
+		phase.end();
+
+		phase = metrics.startPhase("processQueries");
 		queries = processQueries();
-		getResults();
+		phase.end();
+
+		phase = metrics.startPhase("openSearcher");
+		openSearcher();
+		phase.end();
 	}
 
-	/* Processes the input documents and builds a hashtag-based index
+	/* Ranks every query with the given scoring settings and returns the
+	 * rankings without writing any files. The queries run one after another
+	 * on the calling thread.
 	 */
-	private Directory buildHashtagIndex() {
-		
-		Directory newHashtagIndex = new RAMDirectory();
-	
-		 //a wrapper replaced analyzer in the following
-		IndexWriterConfig indexConfig = 
-			new IndexWriterConfig(Version.LUCENE_40, analyzer);
-		
-		IndexWriter w = null;
-				
+	public TrecRun search(ScoringOptions options) {
+		RelevanceFeedback feedback = relevanceFeedback(options);
+		TrecRun ranked = new TrecRun();
+
+		for(String qId : sortedQueryIds()) {
+			RankedTweets ranking = rankQuery(qId, options, feedback);
+			ranked.add(TrecRun.topicNumber(qId), ranking.ids, ranking.scores);
+		}
+		return ranked;
+	}
+
+	/* Starts adding new tweets to the open index and refreshing the
+	 * searchers every refreshMillis. Tweets are pushed to the returned
+	 * ingester, and with tailTweetsFile any lines appended to the tweets
+	 * file are added as well. Needs setNearRealTime(true) before open().
+	 */
+	public TweetIngester startIngestion(long refreshMillis, boolean tailTweetsFile) {
+		ingester = new TweetIngester(writer, searcherManager, metrics);
+		ingester.start(refreshMillis);
+		if(tailTweetsFile) {
+			ingester.tail(inputTweetsFile, indexedLength, refreshMillis);
+		}
+		return ingester;
+	}
+
+	/* Stops ingestion and closes the index. Tweets ingested into a stored
+	 * index are not committed, so it still matches the tweets file it was
+	 * built from.
+	 */
+	public void close() {
+		try {
+			if(ingester != null) {
+				ingester.stop();
+			}
+			if(writer != null) {
+				writer.rollback();
+			}
+			if(shardPool != null) {
+				shardPool.shutdown();
+			}
+			searcherManager.close();
+		} catch (IOException e) {
+			System.out.println("Error closing the index");
+			e.printStackTrace();
+		}
+	}
+
+	/* Processes the input documents and builds the index. The hashtags of
+	 * each tweet go into their own field of the same document, so hashtag
+	 * scoring needs no second index. An index that is still current in the
+	 * store is reused rather than rebuilt. A sharded index is built by the
+	 * same indexing threads, each tweet going to its shard's writer.
+	 */
+	private void buildIndexes() {
+		if(nearRealTime) {
+			shards = 1;
+		}
+		IndexWriter[] writers = new IndexWriter[shards];
+
 		// initialize index
 		try {
-			w = new IndexWriter(newHashtagIndex, indexConfig);
-			
+			indexedLength = new File(inputTweetsFile).length();
+			indexes = new Directory[shards];
+			boolean current = true;
+			for(int i = 0; i < shards; i++) {
+				indexes[i] = openIndex(indexName(i));
+				current &= isIndexCurrent(indexes[i]);
+			}
+			if(current) {
+				if(nearRealTime) {
+					writer = createWriter(indexes[0], 
+						IndexWriterConfig.OpenMode.APPEND);
+				}
+				return;
+			}
+
+			for(int i = 0; i < shards; i++) {
+				writers[i] = createWriter(indexes[i], 
+					IndexWriterConfig.OpenMode.CREATE);
+			}
+
 			// add the tweets to the Lucene index 
-			parseHashtags(w, inputTweetsFile);
+			TweetIndexer indexer = new TweetIndexer(writers, sharding(), 
+				indexingThreads);
+			indexer.index(inputTweetsFile);
+			for(IndexWriter w : writers) {
+				markIndexCurrent(w);
+			}
+
+			// the built index is committed and the writer stays open
+			if(nearRealTime) {
+				writers[0].commit();
+				writer = writers[0];
+				writers[0] = null;
+			}
 
 		} catch (IOException e) {
 			System.out.println("Error building index");
 			e.printStackTrace();
 		} finally {
-			try { w.close(); } 
-			catch (IOException | NullPointerException e) { }
-		}Precision:
+			for(IndexWriter w : writers) {
+				try { w.close(); } 
+				catch (IOException | NullPointerException e) { }
+			}
+		}
+	}
 
+	// Name of the shard's index in the store
+	private String indexName(int shard) {
+		if(shards == 1) {
+			return "tweets";
+		}
+		return "tweets-" + (shardByTime ? "time" : "hash") + shards + "-" + shard;
+	}
 
-		return newHashtagIndex;
+	// Assigns the tweets to shards, null with a single index
+	private TweetSharding sharding() throws IOException {
+		if(shards == 1) {
+			return null;
+		}
+		if(shardByTime) {
+			return TweetSharding.byTime(inputTweetsFile, shards);
+		}
+		return TweetSharding.byHash(shards);
 	}
 
-	/* Processes the input documents and builds the index
-	 */
-	private Directory buildIndex() {
-		Directory tweetIndex = new RAMDirectory();
+	// Hits kept per search, with room for collapsing near-duplicates
+	private int hitsCollected() {
+		if(duplicateFilter != null) {
+			return NUM_HITS * DUPLICATE_OVERFETCH;
+		}
+		return NUM_HITS;
+	}
 
+	private IndexWriter createWriter(Directory directory, 
+									 IndexWriterConfig.OpenMode mode) 
+			throws IOException {
 		IndexWriterConfig indexConfig = 
 			new IndexWriterConfig(Version.LUCENE_40, analyzer);
-		
-		IndexWriter w = null;
-		
-		// initialize index
-		try {
-			w = new IndexWriter(tweetIndex, indexConfig);
+		indexConfig.setOpenMode(mode);
+		// merges only neighbouring segments, so each one keeps covering a
+		// single stretch of time that time filtered searches can skip
+		indexConfig.setMergePolicy(new LogByteSizeMergePolicy());
+		// the shards' writers share the buffer between them
+		indexConfig.setRAMBufferSizeMB(ramBufferSizeMB / shards);
+		indexConfig.setMaxThreadStates(indexingThreads);
 
-			// add the tweets to the Lucene index 
-			parseTweets(w, inputTweetsFile);
+		return new IndexWriter(directory, indexConfig);
+	}
 
-		} catch (IOException e) {
-			System.out.println("Error building index");
-			e.printStackTrace();
-		} finally {
-			try { w.close(); } 
-			catch (IOException | NullPointerException e) { }
+	// Opens the named index from the store, or a fresh in-memory one
+	private Directory openIndex(String name) throws IOException {
+		if(indexStore == null) {
+			return new RAMDirectory();
 		}
+		return indexStore.open(name);
+	}
 
-		return tweetIndex;
+	// Whether the directory already holds an index that can be reused as is
+	private boolean isIndexCurrent(Directory directory) {
+		if(indexStore == null || !indexStore.isCurrent(directory)) {
+			return false;
+		}
+
+		System.out.println("Reusing the stored index in " + directory);
+		return true;
+	}
+
+	// Records that the index being written matches the current corpus
+	private void markIndexCurrent(IndexWriter writer) {
+		if(indexStore != null) {
+			indexStore.markCurrent(writer);
+		}
 	}
 
 	/* Processes the queries from XML and places them in a map with their
-	 * ID's.
+	 * ID's. The same titles are also parsed against the hashtag field into
+	 * hashtagQueries, for the search passes that use hashtag scoring.
 	 */
 	private HashMap<String, Query> processQueries() {
 		
 		ArrayList<QueryXml> rawQueries = null;
-		//QueryParser parser = new QueryParser(Version.LUCENE_40, "tweet" , analyzer);
+		QueryParser parser = new QueryParser(Version.LUCENE_40, "tweet" , analyzer);
+		QueryParser hashtagParser = 
+			new QueryParser(Version.LUCENE_40, "Hashtags", analyzer);
 		
-		MultiFieldQueryParser parser = new MultiFieldQueryParser(
-				Version.LUCENE_4_8_0, new String[] {"tweet", "Hashtags"}, analyzer);
 		HashMap<String, Query> queryMap = new HashMap<String, Query>(); 
+		hashtagQueries = new HashMap<String, Query>();
+		queryTweetTimes = new HashMap<String, Long>();
 		
 		try {
 			rawQueries = retrieveQueriesFromTextFile(inputQueriesFile);
@@ -256,6 +610,9 @@ public class QueryProcessor {
 			try {
 				Query q = parser.parse(queryXml.title);
 				queryMap.put(queryXml.num, q);
+				hashtagQueries.put(queryXml.num, 
+					hashtagParser.parse(queryXml.title));
+				queryTweetTimes.put(queryXml.num, queryXml.querytweettime);
 			} catch (ParseException e) {
 				System.out.println("Error parsing input tweets");
 				e.printStackTrace();
@@ -266,239 +623,483 @@ public class QueryProcessor {
 	}
 
 	/**
-	 * Scores using TF-IDF, relevance feedback, and minimizes over 
-	 * Hashtag indexing + TF-IDF indexing. Then it finds the relevant
-	 * documents for each query.
+	 * Scores using TF-IDF, relevance feedback, and hashtag matches. Then it
+	 * finds the relevant documents for each query. With more than one query
+	 * thread the queries run concurrently against the shared searcher and
+	 * the rankings are written out in query order, so the results file is
+	 * the same whatever order the queries finish in.
 	 */
-	private void getResults() {
-		IndexReader reader = null;	
-		IndexReader hashtagReader = null;
+	private void getResults(final ScoringOptions options) {
+		run = new TrecRun();
+		final RelevanceFeedback feedback = relevanceFeedback(options);
+		
+ 		OutputBuilder outputBuilder = new OutputBuilder(resultsFile, 
+ 														binaryResultsFile);
+
+		List<String> queryIds = sortedQueryIds();
+
+		if(queryThreads > 1) {
+			ExecutorService pool = Executors.newFixedThreadPool(queryThreads, 
+				Metrics.threadFactory("query"));
+			List<Future<RankedTweets>> rankings = 
+				new ArrayList<Future<RankedTweets>>();
+
+			for(final String qId : queryIds) {
+				rankings.add(pool.submit(new Callable<RankedTweets>() {
+					public RankedTweets call() {
+						return rankQuery(qId, options, feedback);
+					}
+				}));
+			}
+
+			// merges the rankings back in query order
+			for(int i = 0; i < queryIds.size(); i++) {
+				try {
+					writeRanking(outputBuilder, queryIds.get(i), 
+						rankings.get(i).get());
+				} catch (InterruptedException | ExecutionException e) {
+					System.out.println("Error getting results");
+					e.printStackTrace();
+				}
+			}
+
+			pool.shutdown();
+		} else {
+			for(String qId : queryIds) {
+				writeRanking(outputBuilder, qId, 
+					rankQuery(qId, options, feedback));
+			}
+		}
+		
+		outputBuilder.close();
+
+		if(duplicateFilter != null) {
+			for(String qId : queryIds) {
+				System.out.println(qId + ": collapsed " 
+					+ collapsedDuplicates.get(qId) + " near-duplicate tweets");
+			}
+		}
+	}
+
+	/* Opens the searcher manager. Each searcher it makes loads the doc
+	 * values the rankings need. With near-real-time ingestion the searchers
+	 * read from the open writer, so refreshing them shows added tweets. A
+	 * refresh empties the result cache. A sharded index gets a pool of
+	 * threads to search its shards with.
+	 */
+	private void openSearcher() {
+		SearcherFactory factory = new SearcherFactory() {
+			@Override
+			public IndexSearcher newSearcher(IndexReader reader) 
+					throws IOException {
+				return new TweetSearcher(reader, duplicateFilter != null,
+					searcherGenerations.incrementAndGet());
+			}
+		};
+
+		if(resultCacheEntries > 0) {
+			resultCache = new ResultCache(resultCacheEntries, 
+				(long) (resultCacheMB * 1024 * 1024), metrics);
+		}
+
+		if(termVectorCacheEntries > 0) {
+			termVectorCache = new TermVectorCache(termVectorCacheEntries, metrics);
+		}
+
 		try {
-			reader = DirectoryReader.open(index);
-			if(useHashtagScoring){
-			hashtagReader = DirectoryReader.open(hashtagIndex);
+			if(writer != null) {
+				searcherManager = new SearcherManager(writer, true, factory);
+			} else if(indexes.length == 1) {
+				searcherManager = new SearcherManager(indexes[0], factory);
+			} else {
+				searcherManager = new ShardedSearcherManager(indexes, factory);
+				shardPool = Executors.newFixedThreadPool(indexes.length - 1,
+					daemon(Metrics.threadFactory("shard")));
+			}
+
+			if(resultCache != null || termVectorCache != null) {
+				searcherManager.addListener(new RefreshListener() {
+					public void beforeRefresh() {
+					}
+
+					public void afterRefresh(boolean didRefresh) {
+						if(!didRefresh) {
+							return;
+						}
+						if(resultCache != null) {
+							resultCache.clear();
+						}
+						if(termVectorCache != null) {
+							termVectorCache.clear();
+						}
+					}
+				});
+			}
+
+			IndexSearcher searcher = searcherManager.acquire();
+			try {
+				recordIndexStatistics(searcher.getIndexReader());
+			} finally {
+				searcherManager.release(searcher);
 			}
 		} catch (IOException e) {
 			System.out.println("Error getting results");
 			e.printStackTrace();
 		}
-		
-		IndexSearcher searcher = new IndexSearcher(reader);
-		
-		IndexSearcher hashtagSearcher = null;  // so compiler wont complain
-		if(useHashtagScoring){
-			hashtagSearcher = new IndexSearcher(hashtagReader);
+	}
+
+	// Sizes of the index for the metrics report
+	private void recordIndexStatistics(IndexReader reader) throws IOException {
+		metrics.setIndexStatistic("documents", reader.numDocs());
+		metrics.setIndexStatistic("maxDoc", reader.maxDoc());
+		metrics.setIndexStatistic("segments", reader.leaves().size());
+
+		for(String field : new String[] {"tweet", "Hashtags"}) {
+			Terms terms = MultiFields.getTerms(reader, field);
+			long uniqueTerms = 0;
+			if(terms != null) {
+				TermsEnum iterator = terms.iterator(null);
+				while(iterator.next() != null) {
+					uniqueTerms++;
+				}
+			}
+			metrics.setIndexStatistic(field + ".terms", uniqueTerms);
+			metrics.setIndexStatistic(field + ".postings", 
+				reader.getSumDocFreq(field));
+			metrics.setIndexStatistic(field + ".tokens", 
+				reader.getSumTotalTermFreq(field));
 		}
-		
- 		OutputBuilder outputBuilder = new OutputBuilder(resultsFile);
-		
-		for(String qId : queries.keySet()) {
-			TopScoreDocCollector collector = TopScoreDocCollector.create(NUM_HITS, true);
-			
+
+		long bytes = 0;
+		for(Directory index : indexes) {
+			for(String file : index.listAll()) {
+				bytes += index.fileLength(file);
+			}
+		}
+		metrics.setIndexStatistic("bytes", bytes);
+
+		if(indexes.length > 1) {
+			List<IndexReaderContext> shardContexts = reader.getContext().children();
+			for(int i = 0; i < shardContexts.size(); i++) {
+				metrics.setIndexStatistic("shard" + i + ".documents", 
+					shardContexts.get(i).reader().numDocs());
+			}
+		}
+	}
+
+	// The shard threads do not keep the program running once it is done
+	private static ThreadFactory daemon(final ThreadFactory factory) {
+		return new ThreadFactory() {
+			public Thread newThread(Runnable work) {
+				Thread thread = factory.newThread(work);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	// A reader over the committed index, every shard of it
+	private IndexReader openReader() throws IOException {
+		if(indexes.length == 1) {
+			return DirectoryReader.open(indexes[0]);
+		}
+
+		IndexReader[] shardReaders = new IndexReader[indexes.length];
+		try {
+			for(int i = 0; i < indexes.length; i++) {
+				shardReaders[i] = DirectoryReader.open(indexes[i]);
+			}
+		} catch (IOException e) {
+			IOUtils.closeWhileHandlingException(shardReaders);
+			throw e;
+		}
+		return new MultiReader(shardReaders);
+	}
+
+	private List<String> sortedQueryIds() {
+		List<String> queryIds = new ArrayList<String>(queries.keySet());
+		Collections.sort(queryIds);
+		return queryIds;
+	}
+
+	// Builds the relevance feedback for a search pass, null when it is off
+	private RelevanceFeedback relevanceFeedback(ScoringOptions options) {
+		if(!options.useRelevanceFeedback) {
+			return null;
+		}
+		return new RelevanceFeedback(analyzer,
+									 termVectorCache,
+									 options.originalQueryCoefficient,
+									 options.relevantQueryCoefficient,
+									 options.irrelevantQueryCoefficient,
+									 options.relevantDocumentsConsidered,
+									 feedbackTermLimit);
+	}
+
+	/* Runs one query (with relevance feedback when it is on) and returns the
+	 * ranked documents. Only reads shared state, so it is safe to call from
+	 * several threads at once.
+	 */
+	private RankedTweets rankQuery(String qId, ScoringOptions options, 
+								   RelevanceFeedback feedback) {
+		Query hashtagQuery = null;
+		if(options.useHashtagScoring) {
+			hashtagQuery = hashtagQueries.get(qId);
+		}
+		Long queryTweetId = queryTweetTimes.get(qId);
+		return rank(qId, queries.get(qId), hashtagQuery, queryTweetId, 
+			timeFiltered && queryTweetId != null, options, feedback);
+	}
+
+	/* Ranks query text that is not in the queries file, as the search
+	 * server does. It is parsed like the queries file titles. Only tweets
+	 * with ids up to lastTweetId are found, unless it is null. Safe to call
+	 * from several threads once the processor is open.
+	 */
+	public RankedTweets rankText(String text, Long lastTweetId, 
+								 ScoringOptions options) throws ParseException {
+		Query tweetQuery = 
+			new QueryParser(Version.LUCENE_40, "tweet", analyzer).parse(text);
+		Query hashtagQuery = null;
+		if(options.useHashtagScoring) {
+			hashtagQuery = new QueryParser(Version.LUCENE_40, "Hashtags", 
+				analyzer).parse(text);
+		}
+		return rank(null, tweetQuery, hashtagQuery, lastTweetId, 
+			lastTweetId != null, options, relevanceFeedback(options));
+	}
+
+	/* Ranks one query, qId is null for queries outside the queries file.
+	 * queryTweetId is the last tweet id at the query's time, or null if it
+	 * is not known, and with filterByTime later tweets are left out. The
+	 * whole query runs on one searcher, so a refresh in the meantime
+	 * neither blocks it nor changes the doc ids under it.
+	 */
+	private RankedTweets rank(String qId, Query tweetQuery, Query hashtagQuery,
+							  Long queryTweetId, boolean filterByTime, 
+							  ScoringOptions options, RelevanceFeedback feedback) {
+		TweetSearcher searcher;
+		try {
+			searcher = (TweetSearcher) searcherManager.acquire();
+		} catch (IOException e) {
+			System.out.println("Error getting results");
+			e.printStackTrace();
+			return RankedTweets.EMPTY;
+		}
+
+		try {
+			TweetTimeFilter filter = null;
+			if(filterByTime) {
+				filter = new TweetTimeFilter(queryTweetId);
+			}
+			// without a query time, recency is measured from the newest tweet
+			long referenceTweetId = queryTweetId != null ? 
+				queryTweetId : searcher.newestTweetId;
+			RankedTweets ranking = rank(searcher, qId, tweetQuery, hashtagQuery, 
+				filter, referenceTweetId, options, feedback);
+
+			if(filter != null) {
+				metrics.addIndexStatistic("time.segmentsSkipped", 
+					filter.skippedSegments());
+				metrics.addIndexStatistic("time.segmentsFiltered", 
+					filter.partialSegments());
+				metrics.addIndexStatistic("time.segmentsWhole", 
+					filter.wholeSegments());
+			}
+			return ranking;
+		} finally {
 			try {
-				searcher.search(queries.get(qId), collector);
+				searcherManager.release(searcher);
 			} catch (IOException e) {
-				System.out.println("Error getting results");
+				System.out.println("Error releasing the searcher");
 				e.printStackTrace();
-			} 
-			
-			ScoreDoc[] hits = collector.topDocs().scoreDocs;
-			
-			ScoreDoc[] hashtagHits = null; // so compiler wont complain
-			
-			if(useHashtagScoring){
-
-				TopScoreDocCollector hashtagCollector = TopScoreDocCollector.create(NUM_HITS, true);
-				
-				try {					
-					hashtagSearcher.search(queries.get(qId), hashtagCollector);
-				} catch (IOException e) {
-					System.out.println("Error getting results");
-					e.printStackTrace();
-				} 
-				hashtagHits = hashtagCollector.topDocs().scoreDocs;
 			}
-			
-			outputBuilder.resetRank();
+		}
+	}
+
+	private RankedTweets rank(TweetSearcher searcher, String qId, 
+							  Query tweetQuery, Query hashtagQuery, 
+							  Filter filter, long referenceTweetId, 
+							  ScoringOptions options, RelevanceFeedback feedback) {
+		Query query = withHashtags(tweetQuery, hashtagQuery, 
+			options.hashtagScoreCoefficient);
+
+		long queryStart = System.nanoTime();
+		ModelSearcher modelSearcher = searcher.searcherFor(options.rankTool);
+		RankedDocs hits = RankedDocs.EMPTY;
 		
-			//Re-scores hits using relevance feedback
-			if(useRelevanceFeedback) {
-				hits = evaluateQueryWithRelevanceFeedback(queries.get(qId), searcher, hits, collector);
-			}
-			
-			if(useHashtagScoring) {								
+		try {
+			hits = searchTop(searcher, modelSearcher, query, filter, 
+				options.rankTool, referenceTweetId);
+		} catch (IOException e) {
+			System.out.println("Error getting results");
+			e.printStackTrace();
+		} 
 		
-				// maps document id to a rank, this will later be used to create a list of IDandScore
-				Map<String, Float> scoreMapping = new HashMap<>(1500); // so we have enough size in our table
-							
-				for(ScoreDoc hit: hits) {
-					
-					Document d = null;
-					
-					try {
-						d = searcher.doc(hit.doc);
-					} catch (IOException e) {
-						System.out.println("Error getting results");
-						e.printStackTrace();
-					}
-					
-					String id = d.get("id");
-					scoreMapping.put(id, hit.score);
-				}
-			
-				for(ScoreDoc hashtagHit: hashtagHits) {
-					
-					Document d = null;
-					
-					try {
-						d = hashtagSearcher.doc(hashtagHit.doc);
-						
-					} catch (IOException e) {
-						System.out.println("Error getting results");
-						e.printStackTrace();
-					}
-					String id = d.get("id");
-					
-					if(scoreMapping.containsKey(id)){
-						Float hitScore = scoreMapping.get(id);
-						scoreMapping.put(id, hitScore + hashtagHit.score);
-						
-					}
-					else{
-						scoreMapping.put(id, hashtagHit.score);
-					}
-				}
-				
-				List<IDandScore> ranking = new ArrayList<>();
-				
-				for(String key : scoreMapping.keySet()){									
-					ranking.add(new IDandScore(key, scoreMapping.get(key)));					
-				}	
-				
-				Collections.sort(ranking);
-			
-				int limit = Math.min(ranking.size(), 1000);						
-				for(int i = 0; i < limit; i++){
-						
-					outputBuilder.add(qId, ranking.get(i).id, ranking.get(i).score);			
-				
-				}
-			} else { // if we are not using hashtag scoring
-			
-				for(ScoreDoc hit: hits) {
-					Document d = null;
-					
-					try {
-						d = searcher.doc(hit.doc);
-					} catch (IOException e) {
-						System.out.println("Error getting results");
-						e.printStackTrace();
-					}
-					
-					String id = d.get("id");
-					outputBuilder.add(qId, id, hit.score);
-				}
+		long stageEnd = System.nanoTime();
+		// the hashtag query is part of the same search when it is on
+		metrics.latency(hashtagQuery != null ? "search.hashtags" : "search")
+			.record(stageEnd - queryStart);
+	
+		//Re-scores hits using relevance feedback
+		if(feedback != null) {
+			long stageStart = stageEnd;
+			hits = evaluateQueryWithRelevanceFeedback(searcher, modelSearcher, 
+				tweetQuery, hashtagQuery, filter, referenceTweetId, options, 
+				feedback, hits);
+			stageEnd = System.nanoTime();
+			metrics.latency("feedback").record(stageEnd - stageStart);
+		}
+
+		if(duplicateFilter != null) {
+			long stageStart = stageEnd;
+			int found = hits.length();
+			hits = duplicateFilter.collapse(hits, searcher.signatures);
+			if(qId != null) {
+				collapsedDuplicates.put(qId, found - hits.length());
 			}
+			stageEnd = System.nanoTime();
+			metrics.latency("duplicates").record(stageEnd - stageStart);
 		}
-		
-		outputBuilder.close();
+
+		metrics.latency("query").record(stageEnd - queryStart);
+		hits = hits.truncate(NUM_HITS);
+
+		// tweet ids come from the id doc values, no stored documents are loaded
+		long[] ids = new long[hits.length()];
+		for(int i = 0; i < hits.length(); i++) {
+			ids[i] = searcher.tweetIds.get(hits.docs[i]);
+		}
+		metrics.latency("ids").record(System.nanoTime() - stageEnd);
+
+		return new RankedTweets(ids, hits.scores);
 	}
-	
-	/*
-	 * Parses the tweet documents from the tweet file
+
+	// The top hits of the query, from the result cache if they are in it
+	private RankedDocs searchTop(TweetSearcher searcher, 
+								 ModelSearcher modelSearcher, 
+								 Query query, Filter filter, 
+								 RankTool rankTool, 
+								 long referenceTweetId) throws IOException {
+		if(resultCache == null) {
+			return searchIndex(searcher, modelSearcher, query, filter, 
+				rankTool, referenceTweetId);
+		}
+
+		ResultCache.Key key = new ResultCache.Key(query, filter, rankTool, 
+			referenceTweetId, searcher.generation);
+		RankedDocs hits = resultCache.get(key);
+		if(hits == null) {
+			hits = searchIndex(searcher, modelSearcher, query, filter, 
+				rankTool, referenceTweetId);
+			resultCache.put(key, hits);
+		}
+		return hits;
+	}
+
+	/* Searches the index for the top hits of the query. A sharded index is
+	 * searched a shard per thread, the query's own thread taking the first
+	 * shard, and the top hits of the shards are merged. Every shard is
+	 * scored with the same Weight, made from the statistics of the whole
+	 * index, so their scores can be compared.
 	 */
-	private void parseTweets(IndexWriter writer, 
-							 String fileName) 
-							 throws IOException {
+	private RankedDocs searchIndex(TweetSearcher searcher, 
+								   final ModelSearcher modelSearcher, 
+								   Query query, Filter filter, 
+								   final RankTool rankTool, 
+								   final long referenceTweetId) 
+			throws IOException {
+		if(searcher.shards == null) {
+			TopKCollector collector = collectors.get();
+			collector.reset();
+			collector.setRankTool(rankTool, referenceTweetId);
+			modelSearcher.search(query, filter, collector);
+			return collector.toRankedDocs();
+		}
 
-		BufferedReader in = new BufferedReader(
-							new FileReader(
-							new File(fileName)));
-	    String tweet;
+		final Weight weight = modelSearcher.createWeight(query, filter);
+		final List<List<AtomicReaderContext>> shardLeaves = searcher.shards;
+		List<Future<RankedDocs>> pending = 
+			new ArrayList<Future<RankedDocs>>(shardLeaves.size() - 1);
 
-	    // continuously parse tweets
-		while((tweet = in.readLine()) != null){
-			
-			// add the tweet to the writer
-			Document doc = new Document();
-			try {
-				String[] idAndMessage = tweet.split("\t");
-				doc.add(new Field("tweet", idAndMessage[1], TYPE_STORED));
-				doc.add(new StringField("id", idAndMessage[0], Store.YES));
-			/*	
-				String hashtags = "";
-				
-				String[] tweetWords = idAndMessage[1].split(" ");
-				
-				for(int i = 0; i < tweetWords.length;i++){
-					if(tweetWords[i].contains("#")){
-						String tweetword = tweetWords[i];
-						tweetword = tweetWords[i].replace("#", "");
-						hashtags += tweetword + " ";
-					}
+		for(int i = 1; i < shardLeaves.size(); i++) {
+			final int shard = i;
+			pending.add(shardPool.submit(new Callable<RankedDocs>() {
+				public RankedDocs call() throws IOException {
+					return searchShard(modelSearcher, weight, shard, 
+						shardLeaves.get(shard), rankTool, referenceTweetId);
 				}
-				//Hashtags could be separated by a white space analyzer (standard instead though)
-				Field hashtagField = new Field("Hashtags", hashtags, TYPE_HASHTAG);
-				hashtagField.setBoost(hashtagScoreCoefficient);
-				doc.add(hashtagField);
-			*/
-				writer.addDocument(doc);
+			}));
+		}
 
-			} catch(Exception e) {
-				System.out.println(tweet);
+		RankedDocs[] shardHits = new RankedDocs[shardLeaves.size()];
+		shardHits[0] = searchShard(modelSearcher, weight, 0, shardLeaves.get(0), 
+			rankTool, referenceTweetId);
+		for(int i = 1; i < shardHits.length; i++) {
+			try {
+				shardHits[i] = pending.get(i - 1).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while searching the shards", e);
+			} catch (ExecutionException e) {
+				throw new IOException("Error searching shard " + i, e.getCause());
 			}
 		}
-		
-		in.close();
+
+		long mergeStart = System.nanoTime();
+		RankedDocs merged = RankedDocs.merge(shardHits, hitsCollected());
+		metrics.latency("merge").record(System.nanoTime() - mergeStart);
+		return merged;
 	}
-	
-	/**
-	 * Parses Hashtags from the input file
-	 * @param writer
-	 * @param fileName
-	 * @throws IOException
+
+	// The top hits of one shard, by top level doc id
+	private RankedDocs searchShard(ModelSearcher searcher, Weight weight, 
+								   int shard, List<AtomicReaderContext> leaves, 
+								   RankTool rankTool, long referenceTweetId) 
+			throws IOException {
+		long start = System.nanoTime();
+		TopKCollector collector = collectors.get();
+		collector.reset();
+		collector.setRankTool(rankTool, referenceTweetId);
+		searcher.searchLeaves(leaves, weight, collector);
+		RankedDocs hits = collector.toRankedDocs();
+		metrics.latency("search.shard" + shard).record(System.nanoTime() - start);
+		return hits;
+	}
+
+	/* Folds hashtag scoring into the tweet query: a document's score is its
+	 * tweet score plus the coefficient times its hashtag score, all from a
+	 * single search. Returns the tweet query as is when hashtag scoring is
+	 * off.
 	 */
-	private void parseHashtags(IndexWriter writer, 
-							 String fileName) 
-							 throws IOException {
+	private Query withHashtags(Query tweetQuery, Query hashtagQuery, 
+							   float coefficient) {
+		if(hashtagQuery == null) {
+			return tweetQuery;
+		}
 
-		BufferedReader in = new BufferedReader(
-							new FileReader(
-							new File(fileName)));
-	    String tweet;
+		Query boostedHashtags = hashtagQuery.clone();
+		boostedHashtags.setBoost(hashtagQuery.getBoost() * coefficient);
 
-	    // continuously parse tweets
-		while((tweet = in.readLine()) != null){
-			
-			// add the tweet to the writer
-			Document doc = new Document();
-			try {
-				String[] idAndMessage = tweet.split("\t");
-				
-				String hashtags = "";
-				
-				String[] tweetWords = idAndMessage[1].split(" ");
-				
-				for(int i = 0; i < tweetWords.length;i++){
-					if(tweetWords[i].contains("#")){
-						String tweetword = tweetWords[i];
-						tweetword = tweetWords[i].replace("#", "");
-						hashtags += tweetword + " ";
-					}
-				}
-				//Hashtags could be separated by a white space analyzer (standard instead though)
-				Field hashtagField = new Field("Hashtags", hashtags, TYPE_HASHTAG);
-				hashtagField.setBoost(hashtagScoreCoefficient);
-				doc.add(hashtagField);
-				doc.add(new StringField("id", idAndMessage[0], Store.YES));
-				writer.addDocument(doc);
+		// coord is disabled so matching only one part is not penalized
+		BooleanQuery fused = new BooleanQuery(true);
+		fused.add(tweetQuery, BooleanClause.Occur.SHOULD);
+		fused.add(boostedHashtags, BooleanClause.Occur.SHOULD);
+		return fused;
+	}
 
-			} catch(Exception e) {
-				System.out.println(tweet);
-			}
+	// Writes one query's ranking to the results file
+	private void writeRanking(OutputBuilder outputBuilder, 
+							  String qId, 
+							  RankedTweets ranking) {
+		long start = System.nanoTime();
+		outputBuilder.resetRank();
+
+		for(int i = 0; i < ranking.length(); i++) {
+			outputBuilder.add(qId, ranking.ids[i], ranking.scores[i]);
 		}
-		
-		in.close();
+		run.add(TrecRun.topicNumber(qId), ranking.ids, ranking.scores);
+		metrics.latency("output").record(System.nanoTime() - start);
 	}
 	
 	/*
@@ -544,6 +1145,23 @@ public class QueryProcessor {
 				line = line.replace(" </title>", "");
 				query.title = line;
 			}
+
+			else if(line.startsWith("<querytime>")){
+				line = line.replace("<querytime> ", "");
+				line = line.replace(" </querytime>", "");
+				query.querytime = line;
+			}
+
+			else if(line.startsWith("<querytweettime>")){
+				line = line.replace("<querytweettime> ", "");
+				line = line.replace(" </querytweettime>", "");
+				try {
+					query.querytweettime = Long.valueOf(line.trim());
+				} catch (NumberFormatException e) {
+					System.out.println("Error parsing the query tweet time " 
+						+ line);
+				}
+			}
 			
 		}
 		
@@ -556,32 +1174,25 @@ public class QueryProcessor {
 	 * the vocabulary output file.
 	 */
 	private void analyzeIndex() {
-		IndexReader reader = null;
-
-		try {
-			reader = IndexReader.open(index);
-		} catch (IOException e) {
-			System.out.println("Error during index analysis");
-			e.printStackTrace();
-		}
-
 		ArrayList<String> wordsArray = new ArrayList<String>();
 		
 		try {
-			Fields fields = MultiFields.getFields(reader);
-			Terms terms = fields.terms("tweet");
-			TermsEnum iterator =  terms.iterator(null);
-			BytesRef byteRef = null;
-	
-			
-			
-			while((byteRef = iterator.next()) != null) {
-				String term = new String(byteRef.bytes, 
-										 byteRef.offset, 
-										 byteRef.length);
-				wordsArray.add(term);
+			IndexReader reader = openReader();
+			try {
+				Fields fields = MultiFields.getFields(reader);
+				Terms terms = fields.terms("tweet");
+				TermsEnum iterator =  terms.iterator(null);
+				BytesRef byteRef = null;
+
+				while((byteRef = iterator.next()) != null) {
+					String term = new String(byteRef.bytes, 
+											 byteRef.offset, 
+											 byteRef.length);
+					wordsArray.add(term);
+				}
+			} finally {
+				reader.close();
 			}
-			
 		} catch (IOException e) {
 			System.out.println("Error during index analysis");
 			e.printStackTrace();
@@ -612,129 +1223,125 @@ public class QueryProcessor {
 		writer.close();
 	}
 
-	private ScoreDoc[] evaluateQueryWithRelevanceFeedback(Query q, 
-		IndexSearcher searcher, ScoreDoc[] firstResults, 
-		TopScoreDocCollector collector) {
-		
-		IndexReader reader = searcher.getIndexReader();
-		
-		QueryParser parser = new QueryParser(Version.LUCENE_40, 
-											 "tweet", 
-											 analyzer);
-		
-		// adds the query terms to our existing set of terms 
-		// (this helps us manage our vector lengths)
-		Set<Term> queryTerms = new HashSet<Term>();
-		q.extractTerms(queryTerms);	
-		
-		Map<String, Double> queryTermMap = new HashMap<String, Double>();
-		Map<String, Double> relevantVector = new HashMap<String, Double>();
-		Map<String, Double> notRelevantVector = new HashMap<String, Double>();
+	/* Expands the query from its first results with Rocchio feedback and
+	 * searches again. Falls back to the first results if the expanded
+	 * query finds nothing.
+	 */
+	private RankedDocs evaluateQueryWithRelevanceFeedback(TweetSearcher searcher,
+		ModelSearcher modelSearcher, Query q, Query hashtagQuery, Filter filter, 
+		long referenceTweetId, ScoringOptions options, 
+		RelevanceFeedback feedback, RankedDocs firstResults) {
+
+		RankedDocs newResults = RankedDocs.EMPTY;
+
+		try {
+			// the feedback reads the same NUM_HITS results whether or not
+			// more were collected to collapse near-duplicates
+			Query updatedQuery = feedback.expand(q, modelSearcher, 
+				searcher.termDictionary, searcher.generation, 
+				firstResults.truncate(NUM_HITS));
+			if(updatedQuery == null) {
+				return firstResults;
+			}
+
+			newResults = searchTop(searcher, modelSearcher, 
+				withHashtags(updatedQuery, hashtagQuery, 
+					options.hashtagScoreCoefficient), 
+				filter, options.rankTool, referenceTweetId);
+		} catch (IOException e) {
+			System.out.println("Error getting results for updated Query");
+			e.printStackTrace();
+		}
+
+		if(newResults.length() > 0){
+			return newResults;
+		}
+		return firstResults;
+	}
 	
-		for(Term t: queryTerms){
-			queryTermMap.put(t.toString(), originalQueryCoefficient*(1.00) );
+	/* A searcher that can also search some of its segments with a Weight
+	 * made beforehand, to search the shards of a sharded index on their own.
+	 */
+	private static class ModelSearcher extends IndexSearcher {
+
+		ModelSearcher(IndexReader reader) {
+			super(reader);
 		}
-		
-		int limit = Math.min(relevant_documents_considered, firstResults.length);
-		
-		for(int i = 0; i < limit; i++) {		
-			try {
-				ScoreDoc goodHit = firstResults[i];
-				ScoreDoc badHit = firstResults[firstResults.length - i - 1];
-				
-		        relevantVector = getTermFrequencies(reader, goodHit.doc);				
-				notRelevantVector = getTermFrequencies(reader, badHit.doc);		
-				
-				for(String key: relevantVector.keySet()){
-					if(!queryTermMap.containsKey(key)){
-						queryTermMap.put(key, 0.00);
-					}
-					queryTermMap.put(key, 
-						queryTermMap.get(key) + 
-						relevantQueryCoefficient *
-					  	(relevantVector.get(key) / 
-					  	((double) relevant_documents_considered)));
-				}
-				for(String key: notRelevantVector.keySet()){
-					if(!queryTermMap.containsKey(key)){
-						queryTermMap.put(key, 0.00);
-					}
-					queryTermMap.put(key, 
-						queryTermMap.get(key) - 
-						irrelevantQueryCoefficient *
-						(notRelevantVector.get(key) / 
-						((double) relevant_documents_considered)));
-				}
-				
-				
-			} catch (IOException e) {
-				System.out.println("Error getting results");
-				e.printStackTrace();
-			} 
-			
+
+		Weight createWeight(Query query, Filter filter) throws IOException {
+			return createNormalizedWeight(wrapFilter(query, filter));
+		}
+
+		void searchLeaves(List<AtomicReaderContext> leaves, Weight weight, 
+						  Collector collector) throws IOException {
+			search(leaves, weight, collector);
 		}
+	}
+
+	/* A searcher with the doc values its rankings read, one per reader. It
+	 * scores with TF-IDF; searcherFor() gives searchers over the same reader
+	 * for the other ranking models.
+	 */
+	private static class TweetSearcher extends ModelSearcher {
 
-		String queryString = "";
+		final DocValueLookup tweetIds;
+		// near-duplicate signatures, or null when they are not used
+		final DocValueLookup signatures;
+		final long newestTweetId;
+		// the segments of each shard, or null when the index is not sharded
+		final List<List<AtomicReaderContext>> shards;
+		// tells this searcher's cached results from those of older ones
+		final long generation;
+		// term ordinals of the relevance feedback over this searcher
+		final TermDictionary termDictionary = new TermDictionary();
 
-		for(String key: queryTermMap.keySet()){
-			int frequency = 0;
-			frequency = (int) Math.max(0, queryTermMap.get(key));
+		// similarity class -> searcher scoring with it
+		private final ConcurrentHashMap<Class<?>, ModelSearcher> modelSearchers =
+			new ConcurrentHashMap<Class<?>, ModelSearcher>();
 
-			for(int i = 0; i < frequency; i++){
-				queryString += key + " ";
-			}			
+		TweetSearcher(IndexReader reader, boolean loadSignatures, 
+					  long generation) throws IOException {
+			super(reader);
+			this.generation = generation;
+			tweetIds = DocValueLookup.load(reader, "id");
+			signatures = loadSignatures ? 
+				DocValueLookup.load(reader, "simhash") : null;
+
+			long newest = 0;
+			for(AtomicReaderContext leaf : reader.leaves()) {
+				newest = Math.max(newest, 
+					DocValueLookup.segmentBounds(leaf.reader(), "id")[1]);
+			}
+			newestTweetId = newest;
+
+			// a sharded index is read through a MultiReader of the shards
+			if(reader instanceof MultiReader) {
+				int count = reader.getContext().children().size();
+				shards = new ArrayList<List<AtomicReaderContext>>(count);
+				for(int i = 0; i < count; i++) {
+					shards.add(new ArrayList<AtomicReaderContext>());
+				}
+				for(AtomicReaderContext leaf : reader.leaves()) {
+					shards.get(leaf.parent.ordInParent).add(leaf);
+				}
+			} else {
+				shards = null;
+			}
 		}
 
-		TopScoreDocCollector newCollector = null;
+		ModelSearcher searcherFor(RankTool rankTool) {
+			Similarity similarity = rankTool.getSimilarity();
+			if(similarity.getClass() == getSimilarity().getClass()) {
+				return this;
+			}
 
-		try {
-			Query updatedQuery = parser.parse(queryString);
-			newCollector = TopScoreDocCollector.create(NUM_HITS, true);
-			searcher.search(updatedQuery, newCollector);
-		} catch (IOException e) {
-			System.out.println("Error getting results for updated Query");
-			e.printStackTrace();
-		} catch (ParseException e) {
-			System.out.println("Error parsing updated Query");
-			e.printStackTrace();
-		} 
-		if(newCollector.getTotalHits() > 0){
-			return newCollector.topDocs().scoreDocs;
+			ModelSearcher searcher = modelSearchers.get(similarity.getClass());
+			if(searcher == null) {
+				searcher = new ModelSearcher(getIndexReader());
+				searcher.setSimilarity(similarity);
+				modelSearchers.putIfAbsent(similarity.getClass(), searcher);
+			}
+			return searcher;
 		}
-		return collector.topDocs().scoreDocs;
 	}
-	
-	/**
-	 * Method used for alternative creation of new queries for relevance 
-	 * feedback
-	 */
-	 Directory createIndex(Document d1) throws IOException {
-
-	        Directory directory = new RAMDirectory();
-	        SimpleAnalyzer sa = new SimpleAnalyzer(Version.LUCENE_40);
-	        IndexWriterConfig iwc = new IndexWriterConfig(Version.LUCENE_40, sa);
-	        IndexWriter writer = new IndexWriter(directory, iwc);
-	        writer.addDocument(d1);
-	        writer.close();
-	        return directory;
-	    }
-	 
-	 Map<String, Double> getTermFrequencies(IndexReader reader, int docId)
-	            throws IOException {
-
-	        Terms vector = reader.getTermVector(docId, "tweet");
-	        TermsEnum termsEnum = null;
-	        termsEnum = vector.iterator(termsEnum);
-	        Map<String, Double> frequencies = new HashMap<>();
-	        BytesRef text = null;
-
-	        while ((text = termsEnum.next()) != null) {
-	            String term = text.utf8ToString();
-	            int freq = (int) termsEnum.totalTermFreq();
-	            frequencies.put(term, (double) freq);
-	        }
-	        
-	        return frequencies;
-	    }
-	
 }
@@ -4,4 +4,7 @@
 public class QueryXml {
     public String num;
     public String title;
+    // When the query was asked, and the id of the last tweet at that time
+    public String querytime;
+    public Long querytweettime;
 }
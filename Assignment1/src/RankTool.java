@@ -1,9 +1,183 @@
-/**
- * We are going to need to research alternative ranking schemes.
- * I dont think Diana wants Lucene only
- * @author Sean
+import java.io.IOException;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.DefaultSimilarity;
+import org.apache.lucene.search.similarities.LMDirichletSimilarity;
+import org.apache.lucene.search.similarities.Similarity;
+
+/*
+ * A ranking model: the Similarity the searcher scores the query text with,
+ * and optionally an adjustment applied to each document's score as the
+ * collector receives it, such as a recency boost. Both happen during the
+ * search, so the top hits are chosen on the final scores rather than
+ * reranked afterwards.
+ *
+ * Every model reads the same index; the norms Lucene writes are shared by
+ * all of these similarities, so switching model needs no re-indexing.
  *
+ *   tfidf       Lucene's default TF-IDF vector space scoring
+ *   bm25        Okapi BM25 (k1 = 1.2, b = 0.75)
+ *   lm          query likelihood with Dirichlet smoothing (mu = 2000)
+ *   recency     tfidf scores decayed by how far the tweet is from the
+ *               query's time, halving every half-life
+ *
+ * "bm25+recency" and "lm+recency" add the recency decay to those models.
  */
-public class RankTool {
+public abstract class RankTool {
+
+	public static final String[] NAMES = { "tfidf", "bm25", "lm", "recency" };
+
+	public static final double DEFAULT_HALF_LIFE_HOURS = 24;
+
+	/* Adjusts the scores of one segment's documents as they are collected.
+	 * Doc ids are the segment's own.
+	 */
+	public interface SegmentScores {
+		float score(int doc, float textScore);
+	}
+
+	public abstract String name();
+
+	// The similarity the searcher scores the query text with
+	public abstract Similarity getSimilarity();
+
+	/* The adjustment for one segment, or null to keep the text scores.
+	 * queryTweetId is the last tweet id at the query's time.
+	 */
+	public SegmentScores forSegment(AtomicReader segment, long queryTweetId)
+			throws IOException {
+		return null;
+	}
+
+	// The model and its parameters, telling apart results cached for each
+	public String key() {
+		return name();
+	}
+
+	@Override
+	public String toString() {
+		return name();
+	}
+
+	/* The model with the given name (see above). Throws an
+	 * IllegalArgumentException for an unknown name.
+	 */
+	public static RankTool forName(String name, double halfLifeHours) {
+		String base = name.trim().toLowerCase();
+		boolean recency = false;
+
+		if(base.equals("recency")) {
+			base = "tfidf";
+			recency = true;
+		} else if(base.endsWith("+recency")) {
+			base = base.substring(0, base.length() - "+recency".length());
+			recency = true;
+		}
+
+		RankTool tool;
+		if(base.equals("tfidf")) {
+			tool = new TfIdf();
+		} else if(base.equals("bm25")) {
+			tool = new Bm25();
+		} else if(base.equals("lm")) {
+			tool = new LanguageModel();
+		} else {
+			throw new IllegalArgumentException("Unknown ranking model " + name);
+		}
+
+		return recency ? new Recency(tool, halfLifeHours) : tool;
+	}
+
+	public static class TfIdf extends RankTool {
+		private final Similarity similarity = new DefaultSimilarity();
+
+		public String name() {
+			return "tfidf";
+		}
+
+		public Similarity getSimilarity() {
+			return similarity;
+		}
+	}
+
+	public static class Bm25 extends RankTool {
+		private final Similarity similarity = new BM25Similarity();
+
+		public String name() {
+			return "bm25";
+		}
+
+		public Similarity getSimilarity() {
+			return similarity;
+		}
+	}
+
+	public static class LanguageModel extends RankTool {
+		private final Similarity similarity = new LMDirichletSimilarity();
+
+		public String name() {
+			return "lm";
+		}
+
+		public Similarity getSimilarity() {
+			return similarity;
+		}
+	}
+
+	/* Multiplies the text score of another model by 2^(-age / half-life),
+	 * where age is the time between the tweet and the query. Tweet times
+	 * come from the ids, which hold their creation time in milliseconds
+	 * since Twitter's epoch above the lowest 22 bits.
+	 */
+	public static class Recency extends RankTool {
+
+		private static final long TWITTER_EPOCH = 1288834974657L;
+
+		private final RankTool base;
+		private final double halfLifeHours;
+		// decay exponent per millisecond of age
+		private final double decayPerMilli;
+
+		public Recency(RankTool base, double halfLifeHours) {
+			this.base = base;
+			this.halfLifeHours = halfLifeHours;
+			decayPerMilli = Math.log(2) / (halfLifeHours * 60 * 60 * 1000);
+		}
+
+		public String name() {
+			return base instanceof TfIdf ? "recency" : base.name() + "+recency";
+		}
+
+		public double halfLifeHours() {
+			return halfLifeHours;
+		}
+
+		@Override
+		public String key() {
+			return name() + "/" + halfLifeHours;
+		}
+
+		public Similarity getSimilarity() {
+			return base.getSimilarity();
+		}
+
+		@Override
+		public SegmentScores forSegment(AtomicReader segment, long queryTweetId)
+				throws IOException {
+			final long[] ids = DocValueLookup.segmentValues(segment, "id");
+			final long queryTime = timeOf(queryTweetId);
+
+			return new SegmentScores() {
+				public float score(int doc, float textScore) {
+					long age = Math.abs(queryTime - timeOf(ids[doc]));
+					return (float) (textScore * Math.exp(-age * decayPerMilli));
+				}
+			};
+		}
 
+		private static long timeOf(long tweetId) {
+			return (tweetId >> 22) + TWITTER_EPOCH;
+		}
+	}
 }
@@ -0,0 +1,73 @@
+import java.util.Arrays;
+
+/*
+ * The ranked result of one query: parallel arrays of doc ids and scores,
+ * best first.
+ */
+public class RankedDocs {
+
+	public static final RankedDocs EMPTY = new RankedDocs(new int[0], new float[0]);
+
+	public final int[] docs;
+	public final float[] scores;
+
+	public RankedDocs(int[] docs, float[] scores) {
+		this.docs = docs;
+		this.scores = scores;
+	}
+
+	public int length() {
+		return docs.length;
+	}
+
+	// The first n results (or all of them if there are fewer)
+	public RankedDocs truncate(int n) {
+		if(n >= docs.length) {
+			return this;
+		}
+		return new RankedDocs(Arrays.copyOf(docs, n), Arrays.copyOf(scores, n));
+	}
+
+	/* Merges lists ranked best first into the best k documents of them all,
+	 * in the order one search over all their documents would give: by
+	 * score, ties to the lower doc id. There are only as many lists as
+	 * shards, so the best head is found by scanning them rather than with
+	 * a heap.
+	 */
+	public static RankedDocs merge(RankedDocs[] lists, int k) {
+		int total = 0;
+		for(RankedDocs list : lists) {
+			total += list.length();
+		}
+
+		int length = Math.min(k, total);
+		int[] docs = new int[length];
+		float[] scores = new float[length];
+		// position of the next unmerged document in each list
+		int[] next = new int[lists.length];
+
+		for(int i = 0; i < length; i++) {
+			int best = -1;
+			for(int l = 0; l < lists.length; l++) {
+				if(next[l] == lists[l].length()) {
+					continue;
+				}
+				if(best == -1 || isBetter(lists[l], next[l], lists[best], next[best])) {
+					best = l;
+				}
+			}
+
+			docs[i] = lists[best].docs[next[best]];
+			scores[i] = lists[best].scores[next[best]];
+			next[best]++;
+		}
+
+		return new RankedDocs(docs, scores);
+	}
+
+	// Whether the a-th document of one list ranks above the b-th of another
+	private static boolean isBetter(RankedDocs one, int a, RankedDocs other, int b) {
+		return one.scores[a] > other.scores[b] || 
+			(one.scores[a] == other.scores[b] && one.docs[a] < other.docs[b]);
+	}
+}
@@ -0,0 +1,32 @@
+import java.util.Arrays;
+
+/*
+ * The ranked result of one query resolved to tweet ids: parallel arrays of
+ * tweet ids and scores, best first. Unlike doc ids these stay valid after
+ * the searcher that found them is refreshed.
+ */
+public class RankedTweets {
+
+	public static final RankedTweets EMPTY =
+		new RankedTweets(new long[0], new float[0]);
+
+	public final long[] ids;
+	public final float[] scores;
+
+	public RankedTweets(long[] ids, float[] scores) {
+		this.ids = ids;
+		this.scores = scores;
+	}
+
+	public int length() {
+		return ids.length;
+	}
+
+	// The first n results (or all of them if there are fewer)
+	public RankedTweets truncate(int n) {
+		if(n >= ids.length) {
+			return this;
+		}
+		return new RankedTweets(Arrays.copyOf(ids, n), Arrays.copyOf(scores, n));
+	}
+}
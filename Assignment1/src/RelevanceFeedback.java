@@ -0,0 +1,202 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
+
+/*
+ * Pseudo relevance feedback with Rocchio weighting. The top numR hits of the
+ * first search count as relevant and the bottom numR as irrelevant. Their
+ * terms are weighted into a primitive ordinal -> weight map, and the best
+ * weighted terms become a BooleanQuery of boosted TermQuerys, so the
+ * expanded query is never turned into a string and parsed again.
+ *
+ * A feedback document's terms come from analyzing its stored text, so the
+ * index needs no term vectors. The vectors are kept in a TermVectorCache
+ * shared by every search pass when one is given. Ordinals come from the
+ * TermDictionary of the searcher the first results came from.
+ */
+public class RelevanceFeedback {
+
+	private static final String FIELD = "tweet";
+	private static final Set<String> FIELDS_TO_LOAD = Collections.singleton(FIELD);
+
+	private final Analyzer analyzer;
+	// null when the vectors are not cached
+	private final TermVectorCache vectorCache;
+
+	private final double originalQueryCoefficient;
+	private final double relevantQueryCoefficient;
+	private final double irrelevantQueryCoefficient;
+	private final int documentsConsidered;
+	private final int maxTerms;
+
+	// Scratch space reused by each query thread
+	private final ThreadLocal<IntFloatHashMap> weights = newMaps();
+	private final ThreadLocal<IntFloatHashMap> frequencies = newMaps();
+
+	public RelevanceFeedback(Analyzer analyzer,
+							 TermVectorCache vectorCache,
+							 double originalQueryCoefficient,
+							 double relevantQueryCoefficient,
+							 double irrelevantQueryCoefficient,
+							 int documentsConsidered,
+							 int maxTerms) {
+		this.analyzer = analyzer;
+		this.vectorCache = vectorCache;
+		this.originalQueryCoefficient = originalQueryCoefficient;
+		this.relevantQueryCoefficient = relevantQueryCoefficient;
+		this.irrelevantQueryCoefficient = irrelevantQueryCoefficient;
+		this.documentsConsidered = documentsConsidered;
+		this.maxTerms = Math.min(maxTerms, BooleanQuery.getMaxClauseCount());
+	}
+
+	/* Builds the expanded query for the first results of the original
+	 * query, or returns null if no term ended up with a positive weight.
+	 * The dictionary and generation are those of the searcher the results
+	 * came from.
+	 */
+	public Query expand(Query original,
+						IndexSearcher searcher,
+						TermDictionary dictionary,
+						long generation,
+						RankedDocs firstResults) throws IOException {
+		IntFloatHashMap queryWeights = weights.get();
+		queryWeights.clear();
+
+		Set<Term> queryTerms = new HashSet<Term>();
+		original.extractTerms(queryTerms);
+
+		for(Term t : queryTerms) {
+			if(t.field().equals(FIELD)) {
+				queryWeights.add(dictionary.ordinal(t.bytes()),
+					(float) originalQueryCoefficient);
+			}
+		}
+
+		int limit = Math.min(documentsConsidered, firstResults.length());
+		float relevantWeight = (float) (relevantQueryCoefficient / documentsConsidered);
+		float irrelevantWeight = (float) (irrelevantQueryCoefficient / documentsConsidered);
+
+		for(int i = 0; i < limit; i++) {
+			int goodHit = firstResults.docs[i];
+			int badHit = firstResults.docs[firstResults.length() - i - 1];
+
+			accumulate(queryWeights, 
+				termVector(searcher, dictionary, generation, goodHit), 
+				relevantWeight);
+			if(irrelevantWeight != 0) {
+				accumulate(queryWeights, 
+					termVector(searcher, dictionary, generation, badHit), 
+					-irrelevantWeight);
+			}
+		}
+
+		return buildQuery(dictionary, queryWeights);
+	}
+
+	/* The term frequencies of a document's text as a sparse vector over
+	 * dictionary ordinals, from the cache when it is there.
+	 */
+	public SparseVector termVector(IndexSearcher searcher,
+								   TermDictionary dictionary,
+								   long generation,
+								   int doc) throws IOException {
+		if(vectorCache != null) {
+			SparseVector cached = vectorCache.get(generation, doc);
+			if(cached != null) {
+				return cached;
+			}
+		}
+
+		// the text is stored as UTF-8 bytes
+		BytesRef stored = searcher.doc(doc, FIELDS_TO_LOAD).getBinaryValue(FIELD);
+		String text = stored != null ? stored.utf8ToString() : "";
+
+		SparseVector vector =
+			dictionary.vectorize(analyzer, FIELD, text, frequencies.get());
+		if(vectorCache != null) {
+			vectorCache.put(generation, doc, vector);
+		}
+		return vector;
+	}
+
+	private static void accumulate(IntFloatHashMap queryWeights,
+								   SparseVector vector,
+								   float weight) {
+		for(int i = 0; i < vector.size(); i++) {
+			queryWeights.add(vector.ids[i], weight * vector.values[i]);
+		}
+	}
+
+	/* Keeps the maxTerms best positive terms as boosted TermQuerys. Terms
+	 * with equal weights are common (every term seen once in one feedback
+	 * document ties), so ties are broken on the term text rather than the
+	 * ordinal, which depends on the order queries happened to run in.
+	 */
+	private Query buildQuery(TermDictionary dictionary,
+							 IntFloatHashMap queryWeights) {
+		int positive = 0;
+		for(int i = 0; i < queryWeights.size(); i++) {
+			if(queryWeights.valueAt(i) > 0) {
+				positive++;
+			}
+		}
+
+		if(positive == 0) {
+			return null;
+		}
+
+		final BytesRef[] terms = new BytesRef[positive];
+		final float[] termWeights = new float[positive];
+		Integer[] order = new Integer[positive];
+		BytesRef scratch = new BytesRef();
+		int n = 0;
+
+		for(int i = 0; i < queryWeights.size(); i++) {
+			if(queryWeights.valueAt(i) > 0) {
+				dictionary.term(queryWeights.keyAt(i), scratch);
+				terms[n] = BytesRef.deepCopyOf(scratch);
+				termWeights[n] = queryWeights.valueAt(i);
+				order[n] = n;
+				n++;
+			}
+		}
+
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				int byWeight = Float.compare(termWeights[b], termWeights[a]);
+				return byWeight != 0 ? byWeight : terms[a].compareTo(terms[b]);
+			}
+		});
+
+		BooleanQuery expanded = new BooleanQuery();
+
+		for(int i = 0; i < Math.min(maxTerms, positive); i++) {
+			TermQuery clause = new TermQuery(new Term(FIELD, terms[order[i]]));
+			clause.setBoost(termWeights[order[i]]);
+			expanded.add(clause, BooleanClause.Occur.SHOULD);
+		}
+
+		return expanded;
+	}
+
+	private static ThreadLocal<IntFloatHashMap> newMaps() {
+		return new ThreadLocal<IntFloatHashMap>() {
+			@Override
+			protected IntFloatHashMap initialValue() {
+				return new IntFloatHashMap();
+			}
+		};
+	}
+}
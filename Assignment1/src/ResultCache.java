@@ -0,0 +1,181 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+/*
+ * Remembers the top hits of recent searches, so a query searched again -
+ * the same topic in a parameter sweep or on the server, or the same
+ * feedback-expanded query - skips the search. A search is identified by
+ * its query (already parsed, so by its analyzed terms, boosts and
+ * coefficients), its time filter, the ranking model and the searcher's
+ * generation, since the hits are doc ids of that searcher. Entries of
+ * older generations are dropped when the searchers are refreshed.
+ *
+ * The cache is bounded by entries and by an estimate of the bytes they
+ * hold, evicting the least recently used first. An entry's bytes are
+ * estimated from its query's terms, without formatting the query. It is
+ * shared by every query thread and locked for each lookup, which is short
+ * next to a search. Hits, misses, evictions and the cache's size are kept
+ * in counters the metrics read when they report, so counting takes no
+ * further lock.
+ */
+public class ResultCache {
+
+	// Rough bytes of a cached entry besides its hits and query
+	private static final int ENTRY_OVERHEAD = 200;
+	// Rough bytes of a term query besides its term, and of other queries
+	private static final int TERM_QUERY_OVERHEAD = 64;
+	private static final int QUERY_OVERHEAD = 200;
+
+	private final int maxEntries;
+	private final long maxBytes;
+
+	private final AtomicLong hitCount;
+	private final AtomicLong missCount;
+	private final AtomicLong evictionCount;
+	private final AtomicLong entryCount;
+	private final AtomicLong byteCount;
+
+	// Least recently used first
+	private final LinkedHashMap<Key, Entry> entries =
+		new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+	private long bytes;
+
+	public ResultCache(int maxEntries, long maxBytes, Metrics metrics) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		hitCount = metrics.counter("resultCache.hits");
+		missCount = metrics.counter("resultCache.misses");
+		evictionCount = metrics.counter("resultCache.evictions");
+		entryCount = metrics.counter("resultCache.entries");
+		byteCount = metrics.counter("resultCache.bytes");
+	}
+
+	// The cached hits of the search, or null if they are not cached
+	public RankedDocs get(Key key) {
+		Entry entry;
+		synchronized(this) {
+			entry = entries.get(key);
+		}
+		if(entry == null) {
+			missCount.incrementAndGet();
+			return null;
+		}
+		hitCount.incrementAndGet();
+		return entry.hits;
+	}
+
+	public void put(Key key, RankedDocs hits) {
+		Entry entry = new Entry(hits, ENTRY_OVERHEAD + querySize(key.query)
+			+ hits.length() * 8L);
+		if(entry.bytes > maxBytes) {
+			return;
+		}
+
+		int evicted = 0;
+		synchronized(this) {
+			Entry replaced = entries.put(key, entry);
+			bytes += entry.bytes - (replaced != null ? replaced.bytes : 0);
+
+			Iterator<Entry> oldest = entries.values().iterator();
+			while(entries.size() > maxEntries || bytes > maxBytes) {
+				bytes -= oldest.next().bytes;
+				oldest.remove();
+				evicted++;
+			}
+			recordSize();
+		}
+		evictionCount.addAndGet(evicted);
+	}
+
+	// Drops every entry, once the searchers they were found with are gone
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+		recordSize();
+	}
+
+	private void recordSize() {
+		entryCount.set(entries.size());
+		byteCount.set(bytes);
+	}
+
+	// Rough bytes of a query: its terms, and a fixed amount for the rest
+	static long querySize(Query query) {
+		if(query instanceof TermQuery) {
+			return TERM_QUERY_OVERHEAD +
+				((TermQuery) query).getTerm().bytes().length;
+		}
+		if(query instanceof BooleanQuery) {
+			long size = QUERY_OVERHEAD;
+			for(BooleanClause clause : ((BooleanQuery) query).clauses()) {
+				size += querySize(clause.getQuery());
+			}
+			return size;
+		}
+		return QUERY_OVERHEAD;
+	}
+
+	private static class Entry {
+		final RankedDocs hits;
+		final long bytes;
+
+		Entry(RankedDocs hits, long bytes) {
+			this.hits = hits;
+			this.bytes = bytes;
+		}
+	}
+
+	/* Identifies a search. Queries are compared with equals(), so a query
+	 * must not be changed once it has been searched.
+	 */
+	public static class Key {
+		final Query query;
+		// null when the search is not filtered
+		final Filter filter;
+		final String model;
+		final long referenceTweetId;
+		final long generation;
+		private final int hash;
+
+		public Key(Query query, Filter filter, RankTool rankTool,
+				   long referenceTweetId, long generation) {
+			this.query = query;
+			this.filter = filter;
+			this.model = rankTool.key();
+			this.referenceTweetId = referenceTweetId;
+			this.generation = generation;
+
+			int h = query.hashCode();
+			h = 31 * h + (filter != null ? filter.hashCode() : 0);
+			h = 31 * h + model.hashCode();
+			h = 31 * h + (int) (referenceTweetId ^ (referenceTweetId >>> 32));
+			hash = 31 * h + (int) (generation ^ (generation >>> 32));
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if(!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return hash == key.hash
+				&& generation == key.generation
+				&& referenceTweetId == key.referenceTweetId
+				&& model.equals(key.model)
+				&& (filter == null ? key.filter == null : filter.equals(key.filter))
+				&& query.equals(key.query);
+		}
+	}
+}
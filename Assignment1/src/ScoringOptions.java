@@ -0,0 +1,71 @@
+import java.util.Locale;
+
+/*
+ * The scoring settings of one search pass over the queries: the ranking
+ * model, relevance feedback and its coefficients, and hashtag scoring and
+ * its coefficient.
+ * They are kept apart from the index so a parameter sweep can run many
+ * of them against the same searcher.
+ */
+public class ScoringOptions {
+
+	public final boolean useRelevanceFeedback;
+	public final double originalQueryCoefficient;
+	public final double relevantQueryCoefficient;
+	public final double irrelevantQueryCoefficient;
+	public final int relevantDocumentsConsidered;
+
+	public final boolean useHashtagScoring;
+	public final float hashtagScoreCoefficient;
+
+	public final RankTool rankTool;
+
+	public ScoringOptions(boolean useRelevanceFeedback,
+						  double originalQueryCoefficient,
+						  double relevantQueryCoefficient,
+						  double irrelevantQueryCoefficient,
+						  int relevantDocumentsConsidered,
+						  boolean useHashtagScoring,
+						  float hashtagScoreCoefficient,
+						  RankTool rankTool) {
+		this.useRelevanceFeedback = useRelevanceFeedback;
+		this.originalQueryCoefficient = originalQueryCoefficient;
+		this.relevantQueryCoefficient = relevantQueryCoefficient;
+		this.irrelevantQueryCoefficient = irrelevantQueryCoefficient;
+		this.relevantDocumentsConsidered = relevantDocumentsConsidered;
+		this.useHashtagScoring = useHashtagScoring;
+		this.hashtagScoreCoefficient = hashtagScoreCoefficient;
+		this.rankTool = rankTool;
+	}
+
+	// The settings as command line arguments, "-" when all are the defaults
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+
+		if(useRelevanceFeedback) {
+			text.append(String.format(Locale.ROOT,
+				"-r -oQCoef %s -rQCoef %s -iQCoef %s -numR %d",
+				originalQueryCoefficient, relevantQueryCoefficient,
+				irrelevantQueryCoefficient, relevantDocumentsConsidered));
+		}
+		if(useHashtagScoring) {
+			if(text.length() > 0) {
+				text.append(' ');
+			}
+			text.append("-t -htCoef ").append(hashtagScoreCoefficient);
+		}
+		if(!(rankTool instanceof RankTool.TfIdf)) {
+			if(text.length() > 0) {
+				text.append(' ');
+			}
+			text.append("-rank ").append(rankTool.name());
+			if(rankTool instanceof RankTool.Recency) {
+				text.append(" -halfLife ")
+					.append(((RankTool.Recency) rankTool).halfLifeHours());
+			}
+		}
+
+		return text.length() > 0 ? text.toString() : "-";
+	}
+}
@@ -0,0 +1,374 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * Serves searches over HTTP from an open QueryProcessor, so the index is
+ * built and the JIT warmed up once for any number of queries. Requests are
+ * handled by a pool of threads sharing the searcher.
+ *
+ *   GET  /search?q=TEXT      ranks one query: rank, tweet id and score
+ *   POST /batch              ranks one query per line of the body, written
+ *                            as "NUM<tab>TEXT" or just TEXT, in the TREC
+ *                            results format
+ *   POST /ingest             adds the tweets in the body, one per line
+ *                            as in the tweets file, when the server was
+ *                            started with near-real-time ingestion. Only
+ *                            taken from the loopback address
+ *   GET  /metrics            the metrics report as JSON, including the
+ *                            request latency percentiles
+ *
+ * /search and /batch take the scoring options as parameters, defaulting to
+ * the ones the server was started with: r and t (1 or 0), oQCoef, rQCoef,
+ * iQCoef, numR, htCoef, rank and halfLife (the ranking model, see
+ * RankTool), and hits for the most results per query. With
+ * until=ID only tweets with ids up to ID (posted no later than it) are
+ * found. The analyzer is the one the index was built with.
+ *
+ * The server only listens on the loopback address unless it is given
+ * another one to bind to. Even then /ingest, which writes to the index and
+ * has no authentication, answers other addresses with a 403. Requests with
+ * a method other than the one shown for their path get a 405.
+ */
+public class SearchServer {
+
+	private static final int MAX_HITS = 1000;
+	private static final String RUN_TAG = "testRun";
+	private static final String TEXT = "text/plain; charset=utf-8";
+	private static final String JSON = "application/json; charset=utf-8";
+
+	private final QueryProcessor processor;
+	private final ScoringOptions defaults;
+	private final Metrics metrics;
+
+	private HttpServer server;
+	private ExecutorService pool;
+	// Takes pushed tweets, or null when ingestion is off
+	private TweetIngester ingester;
+
+	public SearchServer(QueryProcessor processor) {
+		this.processor = processor;
+		this.defaults = processor.getScoringOptions();
+		this.metrics = processor.getMetrics();
+	}
+
+	public void setIngester(TweetIngester ingester) {
+		this.ingester = ingester;
+	}
+
+	// Starts serving on the port of the loopback address
+	public void start(int port, int threads) throws IOException {
+		start(null, port, threads);
+	}
+
+	/* Starts serving on the port of the address, or of the loopback address
+	 * when it is null. The processor must already be open.
+	 */
+	public void start(String address, int port, int threads) 
+			throws IOException {
+		InetAddress bindAddress = address != null ? 
+			InetAddress.getByName(address) : InetAddress.getLoopbackAddress();
+		server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+		server.createContext("/search", new Handler("request.search", "GET", 
+				TEXT) {
+			String respond(Map<String, String> parameters, HttpExchange exchange)
+					throws ParseException {
+				return search(parameters);
+			}
+		});
+		server.createContext("/batch", new Handler("request.batch", "POST", 
+				TEXT) {
+			String respond(Map<String, String> parameters, HttpExchange exchange)
+					throws ParseException, IOException {
+				return batch(parameters, exchange);
+			}
+		});
+		server.createContext("/ingest", new Handler("request.ingest", "POST", 
+				TEXT) {
+			String respond(Map<String, String> parameters, HttpExchange exchange)
+					throws IOException {
+				return ingest(exchange);
+			}
+		});
+		server.createContext("/metrics", new Handler(null, "GET", JSON) {
+			String respond(Map<String, String> parameters, HttpExchange exchange) {
+				return metrics.getReportJson();
+			}
+		});
+
+		pool = Executors.newFixedThreadPool(threads,
+			Metrics.threadFactory("server"));
+		server.setExecutor(pool);
+		server.start();
+	}
+
+	// The address being served, with the port chosen when started on port 0
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	public void stop() {
+		server.stop(0);
+		pool.shutdown();
+	}
+
+	// Request counts and latency percentiles in milliseconds
+	public String latencySummary() {
+		StringBuilder summary = new StringBuilder();
+		for(String stage : new String[] {"request.search", "request.batch",
+				"request.ingest"}) {
+			LatencyHistogram latency = metrics.latency(stage);
+			summary.append(String.format(Locale.ROOT,
+				"%s: %d requests, p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+				stage.substring(stage.indexOf('.') + 1), latency.count(),
+				latency.percentile(0.5) / 1e6, latency.percentile(0.99) / 1e6,
+				latency.max() / 1e6));
+		}
+		return summary.toString();
+	}
+
+	private String search(Map<String, String> parameters) throws ParseException {
+		String text = parameters.get("q");
+		if(text == null || text.trim().isEmpty()) {
+			throw new IllegalArgumentException("Missing the q parameter");
+		}
+
+		RankedTweets ranking = processor.rankText(text, 
+			lastTweetId(parameters), options(parameters))
+			.truncate(hits(parameters));
+
+		StringBuilder response = new StringBuilder();
+		for(int i = 0; i < ranking.length(); i++) {
+			response.append(i + 1).append('\t').append(ranking.ids[i]).append('\t')
+				.append(ranking.scores[i]).append('\n');
+		}
+		return response.toString();
+	}
+
+	private String batch(Map<String, String> parameters, HttpExchange exchange)
+			throws ParseException, IOException {
+		ScoringOptions options = options(parameters);
+		Long lastTweetId = lastTweetId(parameters);
+		int hits = hits(parameters);
+		BufferedReader body = new BufferedReader(new InputStreamReader(
+			exchange.getRequestBody(), "utf-8"));
+
+		StringBuilder response = new StringBuilder();
+		String line;
+		int lineNumber = 0;
+		while((line = body.readLine()) != null) {
+			lineNumber++;
+			if(line.trim().isEmpty()) {
+				continue;
+			}
+
+			String num = Integer.toString(lineNumber);
+			String text = line;
+			int tab = line.indexOf('\t');
+			if(tab != -1) {
+				num = line.substring(0, tab).trim();
+				text = line.substring(tab + 1);
+			}
+
+			RankedTweets ranking = processor.rankText(text, lastTweetId, options)
+				.truncate(hits);
+			for(int i = 0; i < ranking.length(); i++) {
+				response.append(num).append("\tQ0\t").append(ranking.ids[i])
+					.append('\t').append(i + 1).append('\t')
+					.append(ranking.scores[i]).append('\t').append(RUN_TAG)
+					.append('\n');
+			}
+		}
+		return response.toString();
+	}
+
+	private String ingest(HttpExchange exchange) throws IOException {
+		if(ingester == null) {
+			throw new IllegalArgumentException("Ingestion is off, start the " +
+				"server with -nrt to add tweets");
+		}
+		if(!exchange.getRemoteAddress().getAddress().isLoopbackAddress()) {
+			throw new SecurityException("Tweets can only be added from " +
+				"the loopback address");
+		}
+
+		BufferedReader body = new BufferedReader(new InputStreamReader(
+			exchange.getRequestBody(), "utf-8"));
+		List<String> tweets = new ArrayList<String>();
+		String line;
+		while((line = body.readLine()) != null) {
+			tweets.add(line);
+		}
+		return "Added " + ingester.add(tweets) + " tweets\n";
+	}
+
+	// The server's scoring options with any given in the request applied
+	private ScoringOptions options(Map<String, String> parameters) {
+		return new ScoringOptions(
+			flag(parameters, "r", defaults.useRelevanceFeedback),
+			number(parameters, "oQCoef", defaults.originalQueryCoefficient),
+			number(parameters, "rQCoef", defaults.relevantQueryCoefficient),
+			number(parameters, "iQCoef", defaults.irrelevantQueryCoefficient),
+			(int) number(parameters, "numR", defaults.relevantDocumentsConsidered),
+			flag(parameters, "t", defaults.useHashtagScoring),
+			(float) number(parameters, "htCoef", defaults.hashtagScoreCoefficient),
+			rankTool(parameters));
+	}
+
+	// Throws an IllegalArgumentException, reported as a bad request
+	private RankTool rankTool(Map<String, String> parameters) {
+		String name = parameters.get("rank");
+		if(name == null && parameters.get("halfLife") == null) {
+			return defaults.rankTool;
+		}
+		if(name == null) {
+			name = defaults.rankTool.name();
+		}
+
+		double halfLife = RankTool.DEFAULT_HALF_LIFE_HOURS;
+		if(defaults.rankTool instanceof RankTool.Recency) {
+			halfLife = ((RankTool.Recency) defaults.rankTool).halfLifeHours();
+		}
+		return RankTool.forName(name, number(parameters, "halfLife", halfLife));
+	}
+
+	// Throws a NumberFormatException, reported as a bad request
+	private static Long lastTweetId(Map<String, String> parameters) {
+		String value = parameters.get("until");
+		return value != null ? Long.valueOf(value) : null;
+	}
+
+	private static int hits(Map<String, String> parameters) {
+		int hits = (int) number(parameters, "hits", MAX_HITS);
+		return Math.max(0, Math.min(hits, MAX_HITS));
+	}
+
+	private static boolean flag(Map<String, String> parameters, String name,
+								boolean defaultValue) {
+		String value = parameters.get(name);
+		if(value == null) {
+			return defaultValue;
+		}
+		return value.isEmpty() || value.equals("1") || value.equals("true");
+	}
+
+	// Throws a NumberFormatException, reported as a bad request
+	private static double number(Map<String, String> parameters, String name,
+								 double defaultValue) {
+		String value = parameters.get(name);
+		return value != null ? Double.parseDouble(value) : defaultValue;
+	}
+
+	private static Map<String, String> parse(String query)
+			throws UnsupportedEncodingException {
+		Map<String, String> parameters = new HashMap<String, String>();
+		if(query == null) {
+			return parameters;
+		}
+
+		for(String pair : query.split("&")) {
+			if(pair.isEmpty()) {
+				continue;
+			}
+			int equals = pair.indexOf('=');
+			if(equals == -1) {
+				parameters.put(URLDecoder.decode(pair, "utf-8"), "");
+			} else {
+				parameters.put(URLDecoder.decode(pair.substring(0, equals), "utf-8"),
+					URLDecoder.decode(pair.substring(equals + 1), "utf-8"));
+			}
+		}
+		return parameters;
+	}
+
+	/* Times each request into the stage's histogram (when there is one)
+	 * and turns bad parameters or queries into a 400 response, refused
+	 * requests into a 403, anything else into a 500. Requests with another
+	 * method than the handler's get a 405.
+	 */
+	private abstract class Handler implements HttpHandler {
+
+		private final String stage;
+		private final String method;
+		private final String contentType;
+
+		Handler(String stage, String method, String contentType) {
+			this.stage = stage;
+			this.method = method;
+			this.contentType = contentType;
+		}
+
+		abstract String respond(Map<String, String> parameters,
+								HttpExchange exchange)
+			throws ParseException, IOException;
+
+		public void handle(HttpExchange exchange) throws IOException {
+			long start = System.nanoTime();
+			int status = 200;
+			String type = contentType;
+			String response;
+
+			if(!exchange.getRequestMethod().equals(method)) {
+				exchange.getResponseHeaders().set("Allow", method);
+				send(exchange, 405, TEXT, "Method not allowed, use " + 
+					method + "\n");
+				return;
+			}
+
+			try {
+				response = respond(parse(exchange.getRequestURI().getRawQuery()),
+					exchange);
+			} catch (ParseException | IllegalArgumentException e) {
+				status = 400;
+				type = TEXT;
+				response = "Bad request: " + e.getMessage() + "\n";
+			} catch (SecurityException e) {
+				status = 403;
+				type = TEXT;
+				response = "Forbidden: " + e.getMessage() + "\n";
+			} catch (Exception e) {
+				System.out.println("Error handling " + exchange.getRequestURI());
+				e.printStackTrace();
+				status = 500;
+				type = TEXT;
+				response = "Error: " + e + "\n";
+			}
+
+			send(exchange, status, type, response);
+			if(stage != null) {
+				metrics.latency(stage).record(System.nanoTime() - start);
+			}
+		}
+
+		private void send(HttpExchange exchange, int status, String type, 
+						  String response) throws IOException {
+			byte[] bytes = response.getBytes("utf-8");
+			exchange.getResponseHeaders().set("Content-Type", type);
+			exchange.sendResponseHeaders(status, bytes.length);
+			OutputStream out = exchange.getResponseBody();
+			try {
+				out.write(bytes);
+			} finally {
+				out.close();
+			}
+		}
+	}
+}
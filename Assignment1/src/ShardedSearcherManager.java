@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+
+/*
+ * Hands out searchers over the shards of a sharded index, like a
+ * SearcherManager does for one index. Each searcher reads a MultiReader with
+ * one sub-reader per shard, in shard order, so the term statistics and
+ * norms used for scoring are those of the whole corpus whichever shard a
+ * tweet is in. A refresh only reopens the shards that changed.
+ */
+public class ShardedSearcherManager extends ReferenceManager<IndexSearcher> {
+
+	private final SearcherFactory factory;
+
+	public ShardedSearcherManager(Directory[] shards, SearcherFactory factory)
+			throws IOException {
+		this.factory = factory;
+
+		IndexReader[] readers = new IndexReader[shards.length];
+		try {
+			for(int i = 0; i < shards.length; i++) {
+				readers[i] = DirectoryReader.open(shards[i]);
+			}
+		} catch (IOException e) {
+			// the shards opened so far are not handed to a searcher
+			IOUtils.closeWhileHandlingException(readers);
+			throw e;
+		}
+		current = newSearcher(readers, readers);
+	}
+
+	@Override
+	protected IndexSearcher refreshIfNeeded(IndexSearcher reference)
+			throws IOException {
+		List<IndexReaderContext> shards =
+			reference.getIndexReader().getContext().children();
+		IndexReader[] readers = new IndexReader[shards.size()];
+		List<IndexReader> opened = new ArrayList<IndexReader>();
+
+		for(int i = 0; i < readers.length; i++) {
+			DirectoryReader shard = (DirectoryReader) shards.get(i).reader();
+			DirectoryReader reopened = DirectoryReader.openIfChanged(shard);
+			if(reopened == null) {
+				readers[i] = shard;
+			} else {
+				readers[i] = reopened;
+				opened.add(reopened);
+			}
+		}
+
+		if(opened.isEmpty()) {
+			return null;
+		}
+		return newSearcher(readers, opened.toArray(new IndexReader[0]));
+	}
+
+	@Override
+	protected boolean tryIncRef(IndexSearcher reference) {
+		return reference.getIndexReader().tryIncRef();
+	}
+
+	@Override
+	protected void decRef(IndexSearcher reference) throws IOException {
+		reference.getIndexReader().decRef();
+	}
+
+	@Override
+	protected int getRefCount(IndexSearcher reference) {
+		return reference.getIndexReader().getRefCount();
+	}
+
+	/* A searcher over the shard readers. The MultiReader takes its own
+	 * reference to each of them and drops it when it closes, so the readers
+	 * just opened are handed over to it and shards that did not change are
+	 * shared with the previous searcher. If no searcher is made, the
+	 * MultiReader is closed so it gives back its references.
+	 */
+	private IndexSearcher newSearcher(IndexReader[] readers, IndexReader[] opened)
+			throws IOException {
+		MultiReader multiReader = new MultiReader(readers, false);
+		try {
+			return SearcherManager.getSearcher(factory, multiReader);
+		} catch (IOException | RuntimeException e) {
+			// getSearcher may already have dropped the reader's only reference
+			if(multiReader.getRefCount() > 0) {
+				IOUtils.closeWhileHandlingException(multiReader);
+			}
+			throw e;
+		} finally {
+			for(IndexReader reader : opened) {
+				reader.decRef();
+			}
+		}
+	}
+}
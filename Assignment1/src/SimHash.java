@@ -0,0 +1,94 @@
+/*
+ * 64 bit SimHash signatures of tweet text. Tweets whose words mostly match
+ * get signatures that differ in only a few bits, so near-duplicates and
+ * retweets can be spotted by Hamming distance. Retweet markers, mentions and
+ * links are left out so "RT @someone: text" matches "text".
+ */
+public class SimHash {
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	public static long compute(CharSequence text) {
+		return compute(text.toString().toCharArray(), text.length());
+	}
+
+	// The signature of the first length chars of the array
+	public static long compute(char[] text, int length) {
+		int[] counts = new int[64];
+		int i = 0;
+
+		while(i < length) {
+			// skips to the start of the next word
+			while(i < length && Character.isWhitespace(text[i])) {
+				i++;
+			}
+			int start = i;
+			while(i < length && !Character.isWhitespace(text[i])) {
+				i++;
+			}
+
+			if(i > start && !isIgnored(text, start, i)) {
+				long hash = wordHash(text, start, i);
+				if(hash != FNV_OFFSET) {
+					for(int bit = 0; bit < 64; bit++) {
+						counts[bit] += ((hash >>> bit) & 1) == 1 ? 1 : -1;
+					}
+				}
+			}
+		}
+
+		long signature = 0;
+		for(int bit = 0; bit < 64; bit++) {
+			if(counts[bit] > 0) {
+				signature |= 1L << bit;
+			}
+		}
+		return signature;
+	}
+
+	public static int distance(long a, long b) {
+		return Long.bitCount(a ^ b);
+	}
+
+	// Retweet markers, mentions and links
+	private static boolean isIgnored(char[] text, int start, int end) {
+		char first = text[start];
+
+		if(first == '@') {
+			return true;
+		}
+		if(end - start == 2 && (first == 'R' || first == 'r')
+				&& Character.toLowerCase(text[start + 1]) == 't') {
+			return true;
+		}
+		return end - start > 4 && first == 'h' && text[start + 1] == 't'
+			&& text[start + 2] == 't' && text[start + 3] == 'p';
+	}
+
+	/* FNV-1a over the lower cased letters and digits of the word, finished
+	 * with a mixing step so nearby words spread over all bits.
+	 */
+	private static long wordHash(char[] text, int start, int end) {
+		long hash = FNV_OFFSET;
+
+		for(int i = start; i < end; i++) {
+			char c = text[i];
+			if(Character.isLetterOrDigit(c)) {
+				hash ^= Character.toLowerCase(c);
+				hash *= FNV_PRIME;
+			}
+		}
+
+		if(hash == FNV_OFFSET) {
+			return hash;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
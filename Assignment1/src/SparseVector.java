@@ -0,0 +1,68 @@
+import java.util.Arrays;
+
+/*
+ * Immutable sparse vector over term ordinals: sorted ids with their values
+ * in parallel primitive arrays.
+ */
+public class SparseVector {
+
+	public final int[] ids;
+	public final float[] values;
+
+	public SparseVector(int[] ids, float[] values) {
+		this.ids = ids;
+		this.values = values;
+	}
+
+	// Copies the entries of the map into a vector sorted by id
+	public static SparseVector fromMap(IntFloatHashMap map) {
+		int size = map.size();
+		long[] packed = new long[size];
+
+		// sorts ids and values together by packing them into longs
+		for(int i = 0; i < size; i++) {
+			packed[i] = ((long) map.keyAt(i) << 32)
+				| (Float.floatToRawIntBits(map.valueAt(i)) & 0xFFFFFFFFL);
+		}
+		Arrays.sort(packed);
+
+		int[] ids = new int[size];
+		float[] values = new float[size];
+		for(int i = 0; i < size; i++) {
+			ids[i] = (int) (packed[i] >>> 32);
+			values[i] = Float.intBitsToFloat((int) packed[i]);
+		}
+
+		return new SparseVector(ids, values);
+	}
+
+	public int size() {
+		return ids.length;
+	}
+
+	public double dot(SparseVector other) {
+		double sum = 0;
+		int i = 0;
+		int j = 0;
+
+		while(i < ids.length && j < other.ids.length) {
+			if(ids[i] == other.ids[j]) {
+				sum += values[i++] * (double) other.values[j++];
+			} else if(ids[i] < other.ids[j]) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+
+		return sum;
+	}
+
+	public double norm() {
+		double sum = 0;
+		for(float value : values) {
+			sum += value * (double) value;
+		}
+		return Math.sqrt(sum);
+	}
+}
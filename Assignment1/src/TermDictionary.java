@@ -0,0 +1,90 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.util.BytesRef;
+
+/*
+ * Gives every distinct term a dense int ordinal so term weights can live
+ * in primitive maps and arrays. Ordinals are only ever added, never
+ * reassigned. Safe to share between threads: looking up a known term takes
+ * no lock, only adding a new term does, and the vocabulary of the tweets
+ * is soon seen. Each searcher has its own dictionary, so it is dropped
+ * with the searcher rather than growing for as long as the program runs.
+ */
+public class TermDictionary {
+
+	// term -> ordinal
+	private final ConcurrentHashMap<BytesRef, Integer> ordinals =
+		new ConcurrentHashMap<BytesRef, Integer>();
+	// ordinal -> term, replaced by a bigger copy when it is full
+	private volatile BytesRef[] terms = new BytesRef[1024];
+	private int size;
+
+	// The term's ordinal, assigning the next free one to a new term
+	public int ordinal(BytesRef term) {
+		Integer ord = ordinals.get(term);
+		return ord != null ? ord : add(term);
+	}
+
+	private synchronized int add(BytesRef term) {
+		Integer ord = ordinals.get(term);
+		if(ord != null) {
+			return ord;
+		}
+
+		if(size == terms.length) {
+			terms = Arrays.copyOf(terms, size * 2);
+		}
+		// the term is set before its ordinal is published in the map
+		BytesRef copy = BytesRef.deepCopyOf(term);
+		terms[size] = copy;
+		ordinals.put(copy, size);
+		return size++;
+	}
+
+	// Fills the given BytesRef with the term of an ordinal and returns it
+	public BytesRef term(int ordinal, BytesRef result) {
+		BytesRef term = terms[ordinal];
+		result.bytes = term.bytes;
+		result.offset = term.offset;
+		result.length = term.length;
+		return result;
+	}
+
+	public int size() {
+		return ordinals.size();
+	}
+
+	/* Runs the text through the analyzer and returns its term frequencies
+	 * as a sparse vector over this dictionary's ordinals. The counts map is
+	 * scratch space and is cleared first.
+	 */
+	public SparseVector vectorize(Analyzer analyzer,
+								  String field,
+								  String text,
+								  IntFloatHashMap counts) throws IOException {
+		counts.clear();
+
+		TokenStream stream = analyzer.tokenStream(field, text);
+		TermToBytesRefAttribute termAtt =
+			stream.addAttribute(TermToBytesRefAttribute.class);
+		BytesRef bytes = termAtt.getBytesRef();
+
+		try {
+			stream.reset();
+			while(stream.incrementToken()) {
+				termAtt.fillBytesRef();
+				counts.add(ordinal(bytes), 1);
+			}
+			stream.end();
+		} finally {
+			stream.close();
+		}
+
+		return SparseVector.fromMap(counts);
+	}
+}
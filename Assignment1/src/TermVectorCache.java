@@ -0,0 +1,72 @@
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Remembers the term vectors of feedback documents, so a tweet that comes
+ * back as a feedback document - for several topics, or for the same topic
+ * in every pass of a parameter sweep - is loaded and analyzed only once.
+ * The vectors are immutable, over the ordinals of the searcher's
+ * TermDictionary, and looked up by doc id and the searcher's generation,
+ * since doc ids and ordinals only mean something to that searcher.
+ * Entries of older generations are dropped when the searchers are
+ * refreshed.
+ *
+ * Lookups take no lock. Past maxEntries, a tenth of the entries are
+ * evicted in the map's own order, which is cheap and close enough to
+ * random. Hits, misses and evictions are counted in metrics counters,
+ * which take no lock either.
+ */
+public class TermVectorCache {
+
+	private final int maxEntries;
+	private final AtomicLong hitCount;
+	private final AtomicLong missCount;
+	private final AtomicLong evictionCount;
+
+	private final ConcurrentHashMap<Long, SparseVector> vectors =
+		new ConcurrentHashMap<Long, SparseVector>();
+
+	public TermVectorCache(int maxEntries, Metrics metrics) {
+		this.maxEntries = maxEntries;
+		hitCount = metrics.counter("termVectorCache.hits");
+		missCount = metrics.counter("termVectorCache.misses");
+		evictionCount = metrics.counter("termVectorCache.evictions");
+	}
+
+	// The cached vector of the document, or null if it is not cached
+	public SparseVector get(long generation, int doc) {
+		SparseVector vector = vectors.get(key(generation, doc));
+		(vector != null ? hitCount : missCount).incrementAndGet();
+		return vector;
+	}
+
+	public void put(long generation, int doc, SparseVector vector) {
+		vectors.put(key(generation, doc), vector);
+
+		if(vectors.size() > maxEntries) {
+			evict();
+		}
+	}
+
+	// Drops every entry, once the searchers they were loaded with are gone
+	public void clear() {
+		vectors.clear();
+	}
+
+	private void evict() {
+		int evicted = 0;
+		int keep = maxEntries - maxEntries / 10;
+		Iterator<Long> keys = vectors.keySet().iterator();
+		while(vectors.size() > keep && keys.hasNext()) {
+			keys.next();
+			keys.remove();
+			evicted++;
+		}
+		evictionCount.addAndGet(evicted);
+	}
+
+	private static Long key(long generation, int doc) {
+		return Long.valueOf(generation << 32 | (doc & 0xFFFFFFFFL));
+	}
+}
@@ -0,0 +1,170 @@
+import java.io.IOException;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+
+/*
+ * Keeps the k best scoring documents of a search in a bounded min-heap made
+ * of two parallel primitive arrays (doc ids and scores). Unlike
+ * TopScoreDocCollector nothing is allocated per hit and the collector can be
+ * reset and reused for the next query. Ties on score go to the lower doc id,
+ * the same order Lucene uses.
+ */
+public class TopKCollector extends Collector {
+
+	private final int k;
+	private final int[] docs;
+	private final float[] scores;
+	private int size;
+	private int totalHits;
+
+	private Scorer scorer;
+	private int docBase;
+
+	// Ranking model adjusting the scores as they are collected, or null
+	private RankTool rankTool;
+	private long queryTweetId;
+	private RankTool.SegmentScores segmentScores;
+
+	public TopKCollector(int k) {
+		this.k = k;
+		docs = new int[k];
+		scores = new float[k];
+	}
+
+	/* Empties the heap so the collector can be used for another search.
+	 * The ranking model is kept.
+	 */
+	public void reset() {
+		size = 0;
+		totalHits = 0;
+		docBase = 0;
+		scorer = null;
+		segmentScores = null;
+	}
+
+	/* Lets the model adjust each score before it is ranked. queryTweetId
+	 * is the last tweet id at the query's time.
+	 */
+	public void setRankTool(RankTool rankTool, long queryTweetId) {
+		this.rankTool = rankTool;
+		this.queryTweetId = queryTweetId;
+	}
+
+	public int getTotalHits() {
+		return totalHits;
+	}
+
+	/* Offers a document to the heap. Searches go through collect(), this is
+	 * for merging already scored lists.
+	 */
+	public void insert(int doc, float score) {
+		if(size < k) {
+			docs[size] = doc;
+			scores[size] = score;
+			upHeap(size++);
+		} else if(k > 0 && isWorse(docs[0], scores[0], doc, score)) {
+			docs[0] = doc;
+			scores[0] = score;
+			downHeap(0);
+		}
+	}
+
+	/* Copies the collected documents out, best first. The heap is emptied
+	 * by this call.
+	 */
+	public RankedDocs toRankedDocs() {
+		int length = size;
+		int[] rankedDocs = new int[length];
+		float[] rankedScores = new float[length];
+
+		// pops the worst remaining document into the last free slot
+		for(int i = length - 1; i >= 0; i--) {
+			rankedDocs[i] = docs[0];
+			rankedScores[i] = scores[0];
+
+			size--;
+			docs[0] = docs[size];
+			scores[0] = scores[size];
+			downHeap(0);
+		}
+
+		return new RankedDocs(rankedDocs, rankedScores);
+	}
+
+	@Override
+	public void setScorer(Scorer scorer) throws IOException {
+		this.scorer = scorer;
+	}
+
+	@Override
+	public void collect(int doc) throws IOException {
+		totalHits++;
+		float score = scorer.score();
+		if(segmentScores != null) {
+			score = segmentScores.score(doc, score);
+		}
+		insert(docBase + doc, score);
+	}
+
+	@Override
+	public void setNextReader(AtomicReaderContext context) throws IOException {
+		docBase = context.docBase;
+		segmentScores = rankTool == null ? null : 
+			rankTool.forSegment(context.reader(), queryTweetId);
+	}
+
+	@Override
+	public boolean acceptsDocsOutOfOrder() {
+		return false;
+	}
+
+	// Whether doc a ranks below doc b
+	private static boolean isWorse(int docA, float scoreA, int docB, float scoreB) {
+		return scoreA < scoreB || (scoreA == scoreB && docA > docB);
+	}
+
+	private void upHeap(int i) {
+		int doc = docs[i];
+		float score = scores[i];
+
+		while(i > 0) {
+			int parent = (i - 1) >>> 1;
+			if(!isWorse(doc, score, docs[parent], scores[parent])) {
+				break;
+			}
+			docs[i] = docs[parent];
+			scores[i] = scores[parent];
+			i = parent;
+		}
+
+		docs[i] = doc;
+		scores[i] = score;
+	}
+
+	private void downHeap(int i) {
+		int doc = docs[i];
+		float score = scores[i];
+
+		while(true) {
+			int child = 2 * i + 1;
+			if(child >= size) {
+				break;
+			}
+			if(child + 1 < size && isWorse(docs[child + 1], scores[child + 1],
+										   docs[child], scores[child])) {
+				child++;
+			}
+			if(!isWorse(docs[child], scores[child], doc, score)) {
+				break;
+			}
+			docs[i] = docs[child];
+			scores[i] = scores[child];
+			i = child;
+		}
+
+		docs[i] = doc;
+		scores[i] = score;
+	}
+}
@@ -0,0 +1,481 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/*
+ * Evaluates search runs against the relevance judgments without running
+ * trec_eval. The qrels are loaded once into sorted arrays per topic, after
+ * which any number of in-memory runs can be evaluated, from any thread.
+ *
+ * The measures follow trec_eval 8.1: results are ordered by score and then
+ * by tweet id as text, a tweet is relevant with a judgment of 1 or more,
+ * per-query values are kept as floats and summed in run order, and the
+ * report has the same layout as "trec_eval -o". Bpref and NDCG are added
+ * after the trec_eval section.
+ *
+ * Running the class compares against trec_eval on any results file:
+ * java TrecEvaluator res/Trec_microblog11-qrels.txt res/results.txt
+ */
+public class TrecEvaluator {
+
+	// Precision cutoffs reported by trec_eval
+	public static final int[] CUTOFFS = {5, 10, 15, 20, 30, 100, 200, 500, 1000};
+	public static final int NDCG_CUTOFF = 10;
+
+	private static final int RECALL_POINTS = 11;
+	private static final int RELEVANCE_LEVEL = 1;
+	// Judgment of a retrieved tweet that is not in the qrels
+	private static final int NOT_JUDGED = -1;
+
+	// Judgments indexed by topic number, null for topics without any
+	private Judgments[] judgments = new Judgments[0];
+
+	public TrecEvaluator(String qrelsFile) throws IOException {
+		load(qrelsFile);
+	}
+
+	// Evaluates every topic of the run that has judgments
+	public Result evaluate(TrecRun run) {
+		Result total = new Result();
+
+		for(int i = 0; i < run.size(); i++) {
+			int topic = run.topic(i);
+			if(topic < 0 || topic >= judgments.length || judgments[topic] == null
+					|| run.ids(i).length == 0) {
+				continue;
+			}
+			total.add(evaluateTopic(judgments[topic], run.ids(i), run.scores(i)));
+		}
+		return total;
+	}
+
+	public static void main(String[] args) {
+		if(args.length < 2) {
+			System.out.println("Usage: java TrecEvaluator QRELS_FILE RESULTS_FILE");
+			System.exit(1);
+		}
+
+		try {
+			TrecEvaluator evaluator = new TrecEvaluator(args[0]);
+			System.out.print(evaluator.evaluate(TrecRun.read(args[1])));
+		} catch (IOException e) {
+			System.out.println("Error while evaluating " + args[1]);
+			e.printStackTrace();
+		}
+	}
+
+	private Result evaluateTopic(Judgments judged, long[] ids, float[] scores) {
+		int numRet = ids.length;
+		int[] order = rankOrder(ids, scores);
+		int[] rel = new int[numRet];
+		int numRelRet = 0;
+
+		for(int i = 0; i < numRet; i++) {
+			rel[i] = judged.relevance(ids[order[i]]);
+			if(rel[i] >= RELEVANCE_LEVEL) {
+				numRelRet++;
+			}
+		}
+
+		Result result = new Result();
+		result.numQueries = 1;
+		result.numRet = numRet;
+		result.numRel = judged.numRel;
+		result.numRelRet = numRelRet;
+
+		precisionMeasures(result, rel, judged.numRel, numRelRet);
+		result.averagePrecision = averagePrecision(rel, judged.numRel, numRelRet);
+		result.bpref = bpref(rel, judged.numRel, judged.numJudged - judged.numRel);
+		result.ndcg = ndcg(rel, judged.idealGains, numRet);
+		result.ndcgAtCutoff = ndcg(rel, judged.idealGains, NDCG_CUTOFF);
+		return result;
+	}
+
+	/* Interpolated recall-precision, precision at the cutoffs and R-precision,
+	 * walking the ranking from the bottom up as trec_eval does.
+	 */
+	private static void precisionMeasures(Result result, int[] rel,
+										  int numRel, int numRelRet) {
+		int numRet = rel.length;
+		long relSoFar = numRelRet;
+		double intPrecis = (float) relSoFar / (float) numRet;
+
+		// relevant tweets needed for each recall point
+		long[] recallCut = new long[RECALL_POINTS];
+		for(int i = 0; i < RECALL_POINTS; i++) {
+			recallCut[i] = ((long) numRel * i + RECALL_POINTS - 2) / (RECALL_POINTS - 1);
+		}
+		int currentRecall = RECALL_POINTS - 1;
+		while(currentRecall > 0 && recallCut[currentRecall] > numRelRet) {
+			currentRecall--;
+		}
+		int currentCutoff = CUTOFFS.length - 1;
+		while(currentCutoff > 0 && CUTOFFS[currentCutoff] > numRet) {
+			currentCutoff--;
+		}
+
+		for(int j = numRet; j > 0; j--) {
+			double precis = relSoFar > 0 ? (float) relSoFar / (float) j : 0.0;
+			if(intPrecis < precis) {
+				intPrecis = precis;
+			}
+
+			while(currentCutoff >= 0 && j == CUTOFFS[currentCutoff]) {
+				result.precision[currentCutoff] = (float) precis;
+				currentCutoff--;
+			}
+			if(j == numRel) {
+				result.rPrecision = (float) precis;
+			}
+
+			if(rel[j - 1] >= RELEVANCE_LEVEL) {
+				while(currentRecall >= 0 && relSoFar == recallCut[currentRecall]) {
+					result.interpolated[currentRecall] = (float) intPrecis;
+					currentRecall--;
+				}
+				relSoFar--;
+			}
+		}
+		result.interpolated[0] = (float) intPrecis;
+
+		// cutoffs past the end of the ranking
+		for(int i = 0; i < CUTOFFS.length; i++) {
+			if(numRet < CUTOFFS[i] && numRelRet > 0) {
+				result.precision[i] = (float) numRelRet / (float) CUTOFFS[i];
+			}
+		}
+		if(numRel > numRet) {
+			result.rPrecision = (float) numRelRet / (float) numRel;
+		}
+	}
+
+	private static float averagePrecision(int[] rel, int numRel, int numRelRet) {
+		long relSoFar = numRelRet;
+		float sum = 0;
+
+		for(int j = rel.length; j > 0; j--) {
+			if(rel[j - 1] >= RELEVANCE_LEVEL) {
+				sum = sum + (float) relSoFar / (float) j;
+				relSoFar--;
+			}
+		}
+		return numRelRet > 0 ? sum / numRel : 0;
+	}
+
+	/* Bpref over judged tweets only: each relevant tweet scores the fraction
+	 * of the first R judged non-relevant tweets ranked below it.
+	 */
+	private static float bpref(int[] rel, int numRel, int numNonrel) {
+		long nonrelSoFar = 0;
+		float sum = 0;
+
+		for(int j = 0; j < rel.length; j++) {
+			if(rel[j] < 0) {
+				continue;
+			}
+			if(rel[j] < RELEVANCE_LEVEL) {
+				nonrelSoFar++;
+			} else if(nonrelSoFar > 0) {
+				sum = (float) (sum + (1.0 - ((float) Math.min(nonrelSoFar, numRel)
+					/ (float) Math.min(numNonrel, numRel))));
+			} else {
+				sum = (float) (sum + 1.0);
+			}
+		}
+		return numRel > 0 ? sum / numRel : 0;
+	}
+
+	// NDCG of the first depth results, gains are the judgment levels
+	private static float ndcg(int[] rel, int[] idealGains, int depth) {
+		double dcg = 0;
+		double idealDcg = 0;
+
+		for(int i = 0; i < depth && i < rel.length; i++) {
+			if(rel[i] >= RELEVANCE_LEVEL) {
+				dcg += rel[i] / log2(i + 2);
+			}
+		}
+		for(int i = 0; i < depth && i < idealGains.length; i++) {
+			idealDcg += idealGains[i] / log2(i + 2);
+		}
+		return idealDcg > 0 ? (float) (dcg / idealDcg) : 0;
+	}
+
+	private static double log2(int x) {
+		return Math.log(x) / Math.log(2);
+	}
+
+	/* Positions of the results best first. Rankings usually arrive sorted
+	 * already, so an insertion sort only has ties to fix up.
+	 */
+	private static int[] rankOrder(long[] ids, float[] scores) {
+		int[] order = new int[ids.length];
+		for(int i = 0; i < order.length; i++) {
+			int current = i;
+			int j = i - 1;
+			while(j >= 0 && ranksBefore(ids[current], scores[current],
+										ids[order[j]], scores[order[j]])) {
+				order[j + 1] = order[j];
+				j--;
+			}
+			order[j + 1] = current;
+		}
+		return order;
+	}
+
+	// trec_eval breaks score ties on the tweet id as text, larger first
+	private static boolean ranksBefore(long id, float score,
+									   long otherId, float otherScore) {
+		if(score != otherScore) {
+			return score > otherScore;
+		}
+		return Long.toString(id).compareTo(Long.toString(otherId)) > 0;
+	}
+
+	// Reads lines of "topic iteration tweetId judgment"
+	private void load(String qrelsFile) throws IOException {
+		int[] topics = new int[1 << 16];
+		long[] docs = new long[1 << 16];
+		int[] levels = new int[1 << 16];
+		int size = 0;
+		int maxTopic = -1;
+
+		BufferedReader in = new BufferedReader(new FileReader(new File(qrelsFile)));
+		try {
+			String line;
+			while((line = in.readLine()) != null) {
+				String[] fields = line.trim().split("\\s+");
+				if(fields.length < 4) {
+					continue;
+				}
+
+				if(size == docs.length) {
+					topics = Arrays.copyOf(topics, size * 2);
+					docs = Arrays.copyOf(docs, size * 2);
+					levels = Arrays.copyOf(levels, size * 2);
+				}
+				topics[size] = Integer.parseInt(fields[0]);
+				docs[size] = Long.parseLong(fields[2]);
+				levels[size] = Integer.parseInt(fields[3]);
+				maxTopic = Math.max(maxTopic, topics[size]);
+				size++;
+			}
+		} finally {
+			in.close();
+		}
+
+		final int[] sortTopics = topics;
+		final long[] sortDocs = docs;
+		Integer[] byTopicAndDoc = new Integer[size];
+		for(int i = 0; i < size; i++) {
+			byTopicAndDoc[i] = i;
+		}
+		Arrays.sort(byTopicAndDoc, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				if(sortTopics[a] != sortTopics[b]) {
+					return sortTopics[a] < sortTopics[b] ? -1 : 1;
+				}
+				return Long.compare(sortDocs[a], sortDocs[b]);
+			}
+		});
+
+		judgments = new Judgments[maxTopic + 1];
+		int start = 0;
+		while(start < size) {
+			int topic = topics[byTopicAndDoc[start]];
+			int end = start;
+			while(end < size && topics[byTopicAndDoc[end]] == topic) {
+				end++;
+			}
+
+			long[] topicDocs = new long[end - start];
+			int[] topicLevels = new int[end - start];
+			for(int i = start; i < end; i++) {
+				topicDocs[i - start] = docs[byTopicAndDoc[i]];
+				topicLevels[i - start] = levels[byTopicAndDoc[i]];
+			}
+			judgments[topic] = new Judgments(topicDocs, topicLevels);
+			start = end;
+		}
+	}
+
+	// The judged tweets of one topic, sorted by tweet id
+	private static class Judgments {
+		final long[] docs;
+		final int[] levels;
+		final int numJudged;
+		final int numRel;
+		// judgment levels of the relevant tweets, highest first
+		final int[] idealGains;
+
+		Judgments(long[] docs, int[] levels) {
+			this.docs = docs;
+			this.levels = levels;
+			numJudged = docs.length;
+
+			int relevant = 0;
+			for(int level : levels) {
+				if(level >= RELEVANCE_LEVEL) {
+					relevant++;
+				}
+			}
+			numRel = relevant;
+
+			idealGains = new int[relevant];
+			int g = 0;
+			for(int level : levels) {
+				if(level >= RELEVANCE_LEVEL) {
+					idealGains[g++] = level;
+				}
+			}
+			Arrays.sort(idealGains);
+			for(int i = 0; i < g / 2; i++) {
+				int swap = idealGains[i];
+				idealGains[i] = idealGains[g - 1 - i];
+				idealGains[g - 1 - i] = swap;
+			}
+		}
+
+		int relevance(long doc) {
+			int i = Arrays.binarySearch(docs, doc);
+			return i >= 0 ? levels[i] : NOT_JUDGED;
+		}
+	}
+
+	/*
+	 * Measures summed over the evaluated queries. The accessors return the
+	 * means, and toString gives the report written to eval_results.txt.
+	 */
+	public static class Result {
+		int numQueries;
+		long numRet;
+		long numRel;
+		long numRelRet;
+		final float[] interpolated = new float[RECALL_POINTS];
+		float averagePrecision;
+		final float[] precision = new float[CUTOFFS.length];
+		float rPrecision;
+		float bpref;
+		float ndcg;
+		float ndcgAtCutoff;
+
+		void add(Result topic) {
+			numQueries += topic.numQueries;
+			numRet += topic.numRet;
+			numRel += topic.numRel;
+			numRelRet += topic.numRelRet;
+			for(int i = 0; i < RECALL_POINTS; i++) {
+				interpolated[i] += topic.interpolated[i];
+			}
+			averagePrecision += topic.averagePrecision;
+			for(int i = 0; i < CUTOFFS.length; i++) {
+				precision[i] += topic.precision[i];
+			}
+			rPrecision += topic.rPrecision;
+			bpref += topic.bpref;
+			ndcg += topic.ndcg;
+			ndcgAtCutoff += topic.ndcgAtCutoff;
+		}
+
+		public int numQueries() {
+			return numQueries;
+		}
+
+		public float meanAveragePrecision() {
+			return mean(averagePrecision);
+		}
+
+		// Precision at one of the CUTOFFS
+		public float precisionAt(int docs) {
+			int i = Arrays.binarySearch(CUTOFFS, docs);
+			if(i < 0) {
+				throw new IllegalArgumentException("No precision cutoff at " + docs);
+			}
+			return mean(precision[i]);
+		}
+
+		public float rPrecision() {
+			return mean(rPrecision);
+		}
+
+		public float bpref() {
+			return mean(bpref);
+		}
+
+		public float ndcg() {
+			return mean(ndcg);
+		}
+
+		public float ndcgAtCutoff() {
+			return mean(ndcgAtCutoff);
+		}
+
+		private float mean(float sum) {
+			return numQueries > 0 ? sum / numQueries : 0;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder out = new StringBuilder(2048);
+
+			out.append("\nQueryid (Num):\tAll");
+			out.append("\nTotal number of documents over all queries");
+			out.append("\n    Retrieved:").append(format("    %5d", numRet));
+			out.append("\n    Relevant: ").append(format("    %5d", numRel));
+			out.append("\n    Rel_ret:  ").append(format("    %5d", numRelRet));
+
+			out.append("\nInterpolated Recall - Precision Averages:");
+			for(int i = 0; i < RECALL_POINTS; i++) {
+				out.append(format("\n    at %4.2f     ", (float) i / (RECALL_POINTS - 1)));
+				out.append("  ").append(decimal(mean(interpolated[i]))).append(' ');
+			}
+
+			out.append("\nAverage precision (non-interpolated) for all rel docs" +
+				"(averaged over queries)\n                ");
+			out.append("  ").append(decimal(meanAveragePrecision())).append(' ');
+
+			out.append("\nPrecision:");
+			for(int i = 0; i < CUTOFFS.length; i++) {
+				out.append(format("\n  At %4d docs:", CUTOFFS[i]));
+				out.append("   ").append(decimal(mean(precision[i])));
+			}
+
+			out.append("\nR-Precision (precision after R (= num_rel for a query) " +
+				"docs retrieved):\n    Exact:     ");
+			out.append("   ").append(decimal(rPrecision()));
+
+			out.append("\nBpref (preference of judged relevant over judged " +
+				"non-relevant docs):\n    Exact:     ");
+			out.append("   ").append(decimal(bpref()));
+
+			out.append("\nNDCG (judgment levels as gains):");
+			out.append(format("\n  At %4d docs:", NDCG_CUTOFF));
+			out.append("   ").append(decimal(ndcgAtCutoff()));
+			out.append("\n  All docs:    ");
+			out.append("   ").append(decimal(ndcg()));
+			out.append('\n');
+
+			return out.toString();
+		}
+
+		private static String format(String pattern, Object value) {
+			return String.format(Locale.ROOT, pattern, value);
+		}
+
+		/* Like printf's %6.4f, which rounds the exact binary value. The
+		 * shortest decimal Java would otherwise round can differ in the
+		 * last digit.
+		 */
+		private static String decimal(float value) {
+			String digits = new BigDecimal(value).setScale(4, RoundingMode.HALF_EVEN)
+				.toPlainString();
+			return String.format(Locale.ROOT, "%6s", digits);
+		}
+	}
+}
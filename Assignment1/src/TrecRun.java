@@ -0,0 +1,108 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * The rankings of a search run held in memory: the tweet ids and scores
+ * returned for each topic, in the order the topics were added. A run can
+ * also be read back from a results file in the TREC format, which is how
+ * archived runs are evaluated.
+ */
+public class TrecRun {
+
+	private int[] topics = new int[64];
+	private long[][] ids = new long[64][];
+	private float[][] scores = new float[64][];
+	private int size;
+
+	public synchronized void add(int topic, long[] topicIds, float[] topicScores) {
+		if(size == topics.length) {
+			topics = Arrays.copyOf(topics, size * 2);
+			ids = Arrays.copyOf(ids, size * 2);
+			scores = Arrays.copyOf(scores, size * 2);
+		}
+		topics[size] = topic;
+		ids[size] = topicIds;
+		scores[size] = topicScores;
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int topic(int i) {
+		return topics[i];
+	}
+
+	public long[] ids(int i) {
+		return ids[i];
+	}
+
+	public float[] scores(int i) {
+		return scores[i];
+	}
+
+	// The topic number of a query id such as "MB012"
+	public static int topicNumber(String queryNum) {
+		return Integer.parseInt(queryNum.substring(2));
+	}
+
+	/* Reads a results file with lines of "topic Q0 tweetId rank score tag".
+	 * Lines of a topic do not need to be next to each other, topics keep the
+	 * order they first appear in.
+	 */
+	public static TrecRun read(String fileName) throws IOException {
+		Map<Integer, TopicRows> rows = new LinkedHashMap<Integer, TopicRows>();
+		BufferedReader in = new BufferedReader(new FileReader(new File(fileName)));
+
+		try {
+			String line;
+			while((line = in.readLine()) != null) {
+				String[] fields = line.trim().split("\\s+");
+				if(fields.length < 5) {
+					continue;
+				}
+
+				int topic = Integer.parseInt(fields[0]);
+				TopicRows topicRows = rows.get(topic);
+				if(topicRows == null) {
+					topicRows = new TopicRows();
+					rows.put(topic, topicRows);
+				}
+				topicRows.add(Long.parseLong(fields[2]), Float.parseFloat(fields[4]));
+			}
+		} finally {
+			in.close();
+		}
+
+		TrecRun run = new TrecRun();
+		for(Map.Entry<Integer, TopicRows> entry : rows.entrySet()) {
+			TopicRows topicRows = entry.getValue();
+			run.add(entry.getKey(),
+					Arrays.copyOf(topicRows.ids, topicRows.size),
+					Arrays.copyOf(topicRows.scores, topicRows.size));
+		}
+		return run;
+	}
+
+	private static class TopicRows {
+		long[] ids = new long[1024];
+		float[] scores = new float[1024];
+		int size;
+
+		void add(long id, float score) {
+			if(size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+				scores = Arrays.copyOf(scores, size * 2);
+			}
+			ids[size] = id;
+			scores[size] = score;
+			size++;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+import org.apache.lucene.analysis.core.StopFilter;
+import org.apache.lucene.analysis.core.TypeTokenFilter;
+import org.apache.lucene.analysis.en.EnglishPossessiveFilter;
+import org.apache.lucene.analysis.pattern.PatternReplaceCharFilter;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.standard.StandardFilter;
+import org.apache.lucene.analysis.standard.UAX29URLEmailTokenizer;
+import org.apache.lucene.analysis.util.CharArraySet;
+import org.apache.lucene.analysis.util.StopwordAnalyzerBase;
+import org.apache.lucene.util.Version;
+
+/*
+ * Analyzes tweet text for the TWEET analyzer choice. It is the chain of
+ * EnglishAnalyzer with the parts of tweets it handles badly normalized so
+ * they stop adding terms to the vocabulary:
+ *   - emoticons are mapped to words (:) to emosmile) before tokenizing,
+ *     where they used to be dropped or left as stray letters. Only an
+ *     emoticon standing alone is mapped, so <300 and :pizza keep their text
+ *   - links and email addresses are tokenized whole and dropped, rather
+ *     than split into http, t.co and a one-off term for the link's path
+ *   - letters repeated three or more times are cut to two, so sooooo and
+ *     sooo are the same term
+ *   - rt is a stop word
+ *   - stems are cached per thread, since the same words recur all the time
+ * Hashtags and mentions keep their words, without the # or @, as before.
+ * Like every Analyzer, the chain is built once per thread and reused.
+ */
+@SuppressWarnings("deprecation")
+public final class TweetAnalyzer extends StopwordAnalyzerBase {
+
+	// Each word and the emoticons mapped to it
+	private static final String[][] EMOTICONS = {
+		{ "emosmile", ":)", ":-)", ":]", "=)" },
+		{ "emofrown", ":(", ":-(", ":[" },
+		{ "emocry", ":'(" },
+		{ "emowink", ";)", ";-)" },
+		{ "emolaugh", ":D", ":-D" },
+		{ "emotongue", ":P", ":p", ":-P" },
+		{ "emoheart", "<3" }
+	};
+
+	// For each word, its emoticons where whitespace or the text's ends are
+	// on both sides
+	private static final Pattern[] EMOTICON_PATTERNS =
+		new Pattern[EMOTICONS.length];
+
+	static {
+		for(int i = 0; i < EMOTICONS.length; i++) {
+			StringBuilder emoticons = new StringBuilder();
+			for(int e = 1; e < EMOTICONS[i].length; e++) {
+				if(e > 1) {
+					emoticons.append('|');
+				}
+				emoticons.append(Pattern.quote(EMOTICONS[i][e]));
+			}
+			EMOTICON_PATTERNS[i] =
+				Pattern.compile("(?<!\\S)(?:" + emoticons + ")(?!\\S)");
+		}
+	}
+
+	// Token types of the tokenizer that are dropped
+	private static final Set<String> DROPPED_TYPES = new HashSet<String>(
+		Arrays.asList(UAX29URLEmailTokenizer.TOKEN_TYPES[UAX29URLEmailTokenizer.URL],
+			UAX29URLEmailTokenizer.TOKEN_TYPES[UAX29URLEmailTokenizer.EMAIL]));
+
+	public TweetAnalyzer(Version version) {
+		super(version, stopWords(version));
+	}
+
+	@Override
+	protected TokenStreamComponents createComponents(String fieldName,
+													 Reader reader) {
+		UAX29URLEmailTokenizer source =
+			new UAX29URLEmailTokenizer(getVersion(), reader);
+		TokenStream result = new StandardFilter(getVersion(), source);
+		result = new TypeTokenFilter(getVersion(), result, DROPPED_TYPES);
+		result = new EnglishPossessiveFilter(getVersion(), result);
+		result = new LowerCaseFilter(getVersion(), result);
+		result = new ElongationFilter(result);
+		result = new StopFilter(getVersion(), result, stopwords);
+		result = new CachedStemFilter(result);
+		return new TokenStreamComponents(source, result);
+	}
+
+	@Override
+	protected Reader initReader(String fieldName, Reader reader) {
+		for(int i = 0; i < EMOTICONS.length; i++) {
+			reader = new PatternReplaceCharFilter(EMOTICON_PATTERNS[i],
+				EMOTICONS[i][0], reader);
+		}
+		return reader;
+	}
+
+	// The English stop words and rt
+	private static CharArraySet stopWords(Version version) {
+		CharArraySet stopWords =
+			new CharArraySet(version, StandardAnalyzer.STOP_WORDS_SET, false);
+		stopWords.add("rt");
+		return CharArraySet.unmodifiableSet(stopWords);
+	}
+}
@@ -0,0 +1,260 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.lucene.util.UnicodeUtil;
+
+/*
+ * Builds the index document of a tweet. One Document and its fields are
+ * reused for every tweet, as Lucene suggests for indexing speed: the id is
+ * set as a long, the text is decoded into a reusable char buffer that the
+ * analyzer reads through a reusable Reader, and nothing is allocated per
+ * tweet once the buffers have grown to the longest tweet. The document is
+ * only valid until the next tweet is set, and has to be indexed before then
+ * since it holds the analyzer's token stream for the text, so each indexing
+ * thread has its own builder.
+ *
+ * The document holds:
+ *   id        the tweet id, indexed as a numeric field for updates and range
+ *             queries, and as doc values for the rankings
+ *   tweet     the text, indexed, and stored as UTF-8 bytes for relevance
+ *             feedback
+ *   simhash   the near-duplicate signature of the text, as doc values
+ *   Hashtags  the terms of the text's hashtags, picked out of its analysis
+ *             by a HashtagFilter
+ */
+public class TweetDocument {
+
+	private final Document doc = new Document();
+	// with the default trie terms, so NumericRangeQuery works on ids
+	private final LongField idField = new LongField("id", 0L, Field.Store.NO);
+	private final NumericDocValuesField idValue =
+		new NumericDocValuesField("id", 0L);
+	private final NumericDocValuesField simhashValue =
+		new NumericDocValuesField("simhash", 0L);
+	private final CharsReader textReader = new CharsReader();
+	private final Field textField =
+		new Field("tweet", textReader, QueryProcessor.TYPE_TEXT);
+	private final BytesRef storedBytes = new BytesRef(64);
+	private final StoredField storedField = new StoredField("tweet", storedBytes);
+	private final Field hashtagField =
+		new Field("Hashtags", "", QueryProcessor.TYPE_HASHTAG);
+
+	// Analyzes the text, keeping its hashtags for the Hashtags field
+	private final Analyzer analyzer;
+	private HashtagFilter hashtagFilter;
+
+	// Decodes the text of tweets read as bytes
+	private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+		.onMalformedInput(CodingErrorAction.REPLACE)
+		.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private ByteBuffer source;
+	private ByteBuffer view;
+	private CharBuffer text = CharBuffer.allocate(256);
+	private long id;
+
+	// Builds documents for a writer analyzing with the given analyzer
+	public TweetDocument(Analyzer analyzer) {
+		this.analyzer = analyzer;
+		doc.add(idField);
+		doc.add(idValue);
+		doc.add(textField);
+		doc.add(storedField);
+		doc.add(simhashValue);
+		doc.add(hashtagField);
+	}
+
+	/* The document for a line of the tweets file, or null if the line is
+	 * not a tweet id and text separated by a tab. Text after a second tab
+	 * is left out.
+	 */
+	public Document set(String tweet) {
+		int tab = tweet.indexOf('\t');
+		if(tab <= 0 || tab == tweet.length() - 1) {
+			return null;
+		}
+
+		try {
+			id = Long.parseLong(tweet.substring(0, tab));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+
+		int end = tweet.indexOf('\t', tab + 1);
+		if(end == -1) {
+			end = tweet.length();
+		}
+
+		int length = end - tab - 1;
+		ensureText(length);
+		tweet.getChars(tab + 1, end, text.array(), 0);
+		text.limit(length);
+		return build();
+	}
+
+	/* The same for a line of UTF-8 bytes from start up to end (the
+	 * newline or end of file), read without making a String.
+	 */
+	public Document set(ByteBuffer bytes, int start, int end) {
+		if(end > start && bytes.get(end - 1) == '\r') {
+			end--;
+		}
+
+		int tab = start;
+		while(tab < end && bytes.get(tab) != '\t') {
+			tab++;
+		}
+		if(tab == start || tab >= end - 1 || !parseId(bytes, start, tab)) {
+			return null;
+		}
+
+		int textEnd = tab + 1;
+		while(textEnd < end && bytes.get(textEnd) != '\t') {
+			textEnd++;
+		}
+
+		// a view of the bytes whose bounds can be moved for each tweet
+		if(source != bytes) {
+			source = bytes;
+			view = bytes.duplicate();
+		}
+		view.limit(textEnd).position(tab + 1);
+		// a UTF-8 byte never decodes to more than one char
+		ensureText(textEnd - tab - 1);
+		decoder.reset();
+		decoder.decode(view, text, true);
+		decoder.flush(text);
+		text.flip();
+		return build();
+	}
+
+	// The id of the tweet last set
+	public long id() {
+		return id;
+	}
+
+	// The full precision term of a tweet's id, to replace or delete it by
+	public static Term idTerm(long id) {
+		BytesRefBuilder bytes = new BytesRefBuilder();
+		NumericUtils.longToPrefixCoded(id, 0, bytes);
+		return new Term("id", bytes.toBytesRef());
+	}
+
+	private Document build() {
+		char[] chars = text.array();
+		int length = text.limit();
+
+		idField.setLongValue(id);
+		idValue.setLongValue(id);
+		simhashValue.setLongValue(SimHash.compute(chars, length));
+		textReader.reset(chars, length);
+		analyzeText(chars, length);
+
+		if(storedBytes.bytes.length < length * 3) {
+			storedBytes.bytes = new byte[length * 3];
+		}
+		storedBytes.length = UnicodeUtil.UTF16toUTF8(chars, 0, length,
+			storedBytes.bytes);
+
+		return doc;
+	}
+
+	/* Sets the text field to the analyzer's token stream over the text,
+	 * ended by the filter that keeps its hashtags. The analyzer hands out
+	 * the same stream to a thread each time, so the filter is only made
+	 * again if it does not.
+	 */
+	private void analyzeText(char[] chars, int length) {
+		TokenStream analyzed;
+		try {
+			analyzed = analyzer.tokenStream("tweet", textReader);
+		} catch (IOException e) {
+			// the text is read from memory
+			throw new IllegalStateException(e);
+		}
+
+		if(hashtagFilter == null || !hashtagFilter.wraps(analyzed)) {
+			hashtagFilter = new HashtagFilter(analyzed);
+			textField.setTokenStream(hashtagFilter);
+			hashtagField.setTokenStream(hashtagFilter.hashtags());
+		}
+		hashtagFilter.setText(chars, length);
+	}
+
+	// Parses the id like Long.parseLong would, from the bytes
+	private boolean parseId(ByteBuffer bytes, int start, int end) {
+		boolean negative = bytes.get(start) == '-';
+		int i = negative || bytes.get(start) == '+' ? start + 1 : start;
+		if(i == end) {
+			return false;
+		}
+
+		// accumulates negatively so Long.MIN_VALUE fits
+		long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long value = 0;
+		for(; i < end; i++) {
+			int digit = bytes.get(i) - '0';
+			if(digit < 0 || digit > 9 || value < limit / 10) {
+				return false;
+			}
+			value *= 10;
+			if(value < limit + digit) {
+				return false;
+			}
+			value -= digit;
+		}
+
+		id = negative ? value : -value;
+		return true;
+	}
+
+	private void ensureText(int length) {
+		if(text.capacity() < length) {
+			text = CharBuffer.allocate(Math.max(length, text.capacity() * 2));
+		}
+		text.clear();
+	}
+
+	// A Reader over a char array that can be pointed at new text
+	private static class CharsReader extends Reader {
+		private char[] chars;
+		private int length;
+		private int position;
+
+		void reset(char[] chars, int length) {
+			this.chars = chars;
+			this.length = length;
+			position = 0;
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int count) {
+			if(position >= length) {
+				return -1;
+			}
+			int read = Math.min(count, length - position);
+			System.arraycopy(chars, position, buffer, offset, read);
+			position += read;
+			return read;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,185 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+
+/*
+ * Indexes the tweets file with a producer/consumer pipeline. One reader
+ * thread scans the memory mapped file for lines and queues batches of them
+ * in a bounded queue, and a pool of worker threads turns them into
+ * documents holding both the tweet text and its hashtags, each worker
+ * reusing its own TweetDocument. IndexWriter is thread safe, so the workers
+ * share the writer. A sharded index has a writer per shard and each tweet
+ * goes to the writer of its shard.
+ */
+public class TweetIndexer {
+
+	// Lines handed to a worker at a time and batches allowed in flight
+	private static final int BATCH_SIZE = 256;
+	private static final int QUEUE_BATCHES = 64;
+
+	// Marks the end of the input for the workers
+	private static final MappedTweetFile.Lines END_OF_INPUT = 
+		new MappedTweetFile.Lines(null, 0);
+
+	private IndexWriter[] writers;
+	// Picks the writer of each tweet, null with a single writer
+	private TweetSharding sharding;
+	private int numThreads;
+
+	private BlockingQueue<MappedTweetFile.Lines> queue;
+	private volatile IOException failure;
+	// Tweets added to the index, leaving out lines that are not tweets
+	private final AtomicLong added = new AtomicLong();
+
+	public TweetIndexer(IndexWriter writer, int numThreads) {
+		this(new IndexWriter[] { writer }, null, numThreads);
+	}
+
+	// Indexes into one writer per shard of the sharding
+	public TweetIndexer(IndexWriter[] writers, TweetSharding sharding, 
+						int numThreads) {
+		this.writers = writers;
+		this.sharding = sharding;
+		this.numThreads = Math.max(1, numThreads);
+		queue = new ArrayBlockingQueue<MappedTweetFile.Lines>(QUEUE_BATCHES);
+	}
+
+	/* Indexes every tweet in the file and reports the throughput, counting
+	 * only the tweets added. Returns the number of tweets added.
+	 */
+	public long index(String fileName) throws IOException {
+		long start = System.nanoTime();
+		added.set(0);
+
+		List<Thread> workers = new ArrayList<Thread>();
+		for(int i = 0; i < numThreads; i++) {
+			Thread worker = new Thread(new Runnable() {
+				public void run() {
+					try {
+						consume();
+					} finally {
+						Metrics.threadFinished();
+					}
+				}
+			}, "indexer-" + i);
+			worker.start();
+			workers.add(worker);
+		}
+
+		long lines = 0;
+		try {
+			lines = produce(fileName);
+		} finally {
+			try {
+				for(int i = 0; i < numThreads; i++) {
+					queue.put(END_OF_INPUT);
+				}
+				for(Thread worker : workers) {
+					worker.join();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while indexing", e);
+			}
+		}
+
+		if(failure != null) {
+			throw failure;
+		}
+
+		long tweets = added.get();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format(
+			"Indexed %d tweets in %.2f s (%.0f docs/sec, %d threads)",
+			tweets, seconds, tweets / seconds, numThreads));
+		if(lines > tweets) {
+			System.out.println(String.format("Skipped %d lines that are not " +
+				"tweets", lines - tweets));
+		}
+
+		return tweets;
+	}
+
+	// Reader side of the pipeline
+	private long produce(String fileName) throws IOException {
+		MappedTweetFile in = new MappedTweetFile(fileName);
+		long lines = 0;
+
+		try {
+			MappedTweetFile.Lines batch;
+
+			while((batch = in.nextLines(BATCH_SIZE)) != null && failure == null) {
+				queue.put(batch);
+				lines += batch.count;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading tweets", e);
+		} finally {
+			in.close();
+		}
+
+		return lines;
+	}
+
+	/* Worker side of the pipeline. After a failure the workers keep draining
+	 * the queue so the reader never blocks on a full queue.
+	 */
+	private void consume() {
+		TweetDocument tweet = new TweetDocument(writers[0].getAnalyzer());
+
+		try {
+			MappedTweetFile.Lines batch;
+
+			while((batch = queue.take()) != END_OF_INPUT) {
+				for(int i = 0; i < batch.count; i++) {
+					if(failure != null) {
+						break;
+					}
+
+					try {
+						addTweet(tweet, batch, i);
+					} catch (IOException e) {
+						failure = e;
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void addTweet(TweetDocument tweet, MappedTweetFile.Lines batch, 
+						  int line) throws IOException {
+		Document doc = tweet.set(batch.bytes, batch.starts[line], 
+			batch.ends[line]);
+
+		if(doc == null) {
+			System.out.println(lineText(batch, line));
+			return;
+		}
+
+		if(sharding == null) {
+			writers[0].addDocument(doc);
+		} else {
+			writers[sharding.shardOf(tweet.id())].addDocument(doc);
+		}
+		added.incrementAndGet();
+	}
+
+	// The line as text, for reporting lines that are not tweets
+	private static String lineText(MappedTweetFile.Lines batch, int line) {
+		byte[] bytes = new byte[batch.ends[line] - batch.starts[line]];
+		for(int i = 0; i < bytes.length; i++) {
+			bytes[i] = batch.bytes.get(batch.starts[line] + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,214 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+
+/*
+ * Adds tweets to the index while it is being searched. Tweets are pushed
+ * with add() or read from lines appended to the tweets file, and go
+ * straight into the live IndexWriter. A background thread refreshes the
+ * SearcherManager every interval so they become searchable; queries in
+ * flight keep the searcher they started with, so a refresh never waits
+ * for them or they for it.
+ *
+ * Tweets replace any earlier tweet with the same id, so a line read twice
+ * (such as one appended while the index was first being built) is only
+ * indexed once.
+ */
+public class TweetIngester {
+
+	// Most bytes of the tailed file read in one poll
+	private static final int MAX_READ = 1 << 20;
+
+	private final IndexWriter writer;
+	private final ReferenceManager<IndexSearcher> searcherManager;
+	private final Metrics metrics;
+	private final ScheduledExecutorService scheduler =
+		Executors.newScheduledThreadPool(2, Metrics.threadFactory("ingest"));
+
+	private final long startTime = System.nanoTime();
+	private final AtomicLong added = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	// When the oldest tweet not yet searchable was added, 0 if there is none
+	private final AtomicLong oldestPending = new AtomicLong();
+
+	// The tailed file and how far into it has been read
+	private File tailedFile;
+	private long tailOffset;
+
+	public TweetIngester(IndexWriter writer,
+						 ReferenceManager<IndexSearcher> searcherManager,
+						 Metrics metrics) {
+		this.writer = writer;
+		this.searcherManager = searcherManager;
+		this.metrics = metrics;
+	}
+
+	// Refreshes the searchers every refreshMillis
+	public void start(long refreshMillis) {
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				refresh();
+			}
+		}, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/* Adds the lines appended to the file after offset, checking for more
+	 * every pollMillis. Only whole lines are read; a line still being
+	 * written is picked up by a later poll.
+	 */
+	public void tail(String fileName, long offset, long pollMillis) {
+		tailedFile = new File(fileName);
+		tailOffset = offset;
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					readAppended();
+				} catch (IOException e) {
+					System.out.println("Error reading new tweets from " + tailedFile);
+					e.printStackTrace();
+				}
+			}
+		}, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public void stop() {
+		scheduler.shutdownNow();
+		try {
+			scheduler.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/* Adds lines of the tweets file format ("id<tab>text") and returns how
+	 * many were tweets. They are searchable after the next refresh.
+	 */
+	public int add(Iterable<String> tweets) throws IOException {
+		long start = System.nanoTime();
+		TweetDocument builder = new TweetDocument(writer.getAnalyzer());
+		int count = 0;
+
+		for(String tweet : tweets) {
+			Document doc = builder.set(tweet);
+			if(doc == null) {
+				if(!tweet.trim().isEmpty()) {
+					rejected.incrementAndGet();
+				}
+				continue;
+			}
+
+			writer.updateDocument(TweetDocument.idTerm(builder.id()), doc);
+			count++;
+		}
+
+		if(count > 0) {
+			oldestPending.compareAndSet(0, start);
+			added.addAndGet(count);
+			metrics.latency("ingest").record(System.nanoTime() - start);
+		}
+		recordStatistics();
+		return count;
+	}
+
+	/* Reopens the searchers if tweets were added since the last refresh,
+	 * timing the reopen and how long the oldest added tweet waited to be
+	 * searchable.
+	 */
+	public void refresh() {
+		long pending = oldestPending.getAndSet(0);
+		long start = System.nanoTime();
+
+		try {
+			searcherManager.maybeRefresh();
+		} catch (IOException e) {
+			System.out.println("Error refreshing the searcher");
+			e.printStackTrace();
+			return;
+		}
+
+		long end = System.nanoTime();
+		metrics.latency("refresh").record(end - start);
+		if(pending != 0) {
+			metrics.latency("visibility").record(end - pending);
+		}
+
+		try {
+			IndexSearcher searcher = searcherManager.acquire();
+			try {
+				IndexReader reader = searcher.getIndexReader();
+				metrics.setIndexStatistic("documents", reader.numDocs());
+				metrics.setIndexStatistic("maxDoc", reader.maxDoc());
+				metrics.setIndexStatistic("segments", reader.leaves().size());
+			} finally {
+				searcherManager.release(searcher);
+			}
+		} catch (IOException e) {
+			System.out.println("Error reading the index statistics");
+			e.printStackTrace();
+		}
+	}
+
+	// Tweets added so far and the rate since ingestion started
+	public String summary() {
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		LatencyHistogram visibility = metrics.latency("visibility");
+		return String.format(Locale.ROOT,
+			"ingested %d tweets (%.1f tweets/sec, %d rejected), " +
+			"searchable after p50 %.1f ms, p99 %.1f ms%n",
+			added.get(), added.get() / seconds, rejected.get(),
+			visibility.percentile(0.5) / 1e6, visibility.percentile(0.99) / 1e6);
+	}
+
+	private void readAppended() throws IOException {
+		RandomAccessFile in = new RandomAccessFile(tailedFile, "r");
+
+		try {
+			long length = in.length();
+			if(length < tailOffset) {
+				System.out.println(tailedFile + " got shorter, reading it " +
+					"again from the start");
+				tailOffset = 0;
+			}
+
+			while(tailOffset < length) {
+				byte[] bytes = new byte[(int) Math.min(length - tailOffset, MAX_READ)];
+				in.seek(tailOffset);
+				in.readFully(bytes);
+
+				int end = bytes.length;
+				while(end > 0 && bytes[end - 1] != '\n') {
+					end--;
+				}
+				if(end == 0) {
+					return;
+				}
+
+				String text = new String(bytes, 0, end, "utf-8");
+				add(Arrays.asList(text.split("\r?\n")));
+				tailOffset += end;
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private void recordStatistics() {
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		metrics.setIndexStatistic("ingest.tweets", added.get());
+		metrics.setIndexStatistic("ingest.rejected", rejected.get());
+		metrics.setIndexStatistic("ingest.tweetsPerSecond",
+			(long) (added.get() / seconds));
+	}
+}
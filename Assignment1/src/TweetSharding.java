@@ -0,0 +1,123 @@
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * Decides which shard of a sharded index a tweet goes into, from its id.
+ *
+ *   hash   spreads the tweets evenly and at random over the shards, so a
+ *          query does about the same work on each of them
+ *   time   gives each shard one stretch of time holding about the same
+ *          number of tweets, so time filtered searches skip the shards
+ *          made only of later tweets
+ */
+public abstract class TweetSharding {
+
+	// Tweet ids sampled from the corpus to place the time boundaries
+	private static final int TIME_SAMPLE = 10000;
+
+	private final int shards;
+
+	protected TweetSharding(int shards) {
+		this.shards = shards;
+	}
+
+	public int shards() {
+		return shards;
+	}
+
+	// The shard, from 0 up to shards() - 1, the tweet goes into
+	public abstract int shardOf(long tweetId);
+
+	public static TweetSharding byHash(int shards) {
+		return new TweetSharding(shards) {
+			public int shardOf(long tweetId) {
+				// the low bits of tweet ids are a per-millisecond sequence
+				// that is mostly 0, so they are mixed before taking the shard
+				long mixed = tweetId * 0x9E3779B97F4A7C15L;
+				return (int) ((mixed >>> 1) % shards());
+			}
+
+			public String toString() {
+				return "hash";
+			}
+		};
+	}
+
+	/* Splits the tweets file's ids into ranges of about the same number of
+	 * tweets, from a sample of the ids.
+	 */
+	public static TweetSharding byTime(String tweetsFile, int shards)
+			throws IOException {
+		final long[] boundaries = boundaries(sampleIds(tweetsFile), shards);
+
+		return new TweetSharding(shards) {
+			public int shardOf(long tweetId) {
+				int index = Arrays.binarySearch(boundaries, tweetId);
+				return index >= 0 ? index + 1 : -index - 1;
+			}
+
+			public String toString() {
+				return "time";
+			}
+		};
+	}
+
+	/* The first tweet id of every shard after the first, the sample's
+	 * quantiles.
+	 */
+	private static long[] boundaries(long[] sample, int shards) {
+		Arrays.sort(sample);
+		if(sample.length == 0) {
+			return new long[0];
+		}
+
+		long[] boundaries = new long[shards - 1];
+		for(int i = 0; i < boundaries.length; i++) {
+			boundaries[i] = sample[(int) ((i + 1L) * sample.length / shards)];
+		}
+		return boundaries;
+	}
+
+	// A uniform sample of the ids in the tweets file (reservoir sampling)
+	private static long[] sampleIds(String tweetsFile) throws IOException {
+		long[] sample = new long[TIME_SAMPLE];
+		Random random = new Random(TIME_SAMPLE);
+		long seen = 0;
+
+		BufferedReader in = new BufferedReader(
+							new InputStreamReader(
+							new FileInputStream(tweetsFile), 
+							StandardCharsets.UTF_8));
+		try {
+			String tweet;
+			while((tweet = in.readLine()) != null) {
+				int tab = tweet.indexOf('\t');
+				long id;
+				try {
+					id = Long.parseLong(tab == -1 ? tweet : tweet.substring(0, tab));
+				} catch (NumberFormatException e) {
+					continue;
+				}
+
+				if(seen < sample.length) {
+					sample[(int) seen] = id;
+				} else {
+					long slot = (long) (random.nextDouble() * (seen + 1));
+					if(slot < sample.length) {
+						sample[(int) slot] = id;
+					}
+				}
+				seen++;
+			}
+		} finally {
+			in.close();
+		}
+
+		return Arrays.copyOf(sample, (int) Math.min(seen, sample.length));
+	}
+}
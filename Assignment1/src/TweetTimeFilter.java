@@ -0,0 +1,92 @@
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.FieldCacheDocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.Bits;
+
+/*
+ * Keeps only the tweets posted at or before a query's time. Tweet ids grow
+ * with time, so this is a range check on the id doc values. The id range
+ * of each segment is cached, so a segment made only of later tweets is
+ * skipped without scoring any of its postings, and a segment made only of
+ * earlier tweets needs no per-document check.
+ */
+public class TweetTimeFilter extends Filter {
+
+	private final long lastTweetId;
+
+	// Segments skipped, searched in part and searched whole so far. The
+	// shards of a sharded index are filtered by several threads at once.
+	private final AtomicInteger skippedSegments = new AtomicInteger();
+	private final AtomicInteger partialSegments = new AtomicInteger();
+	private final AtomicInteger wholeSegments = new AtomicInteger();
+
+	// Accepts tweets with ids up to and including lastTweetId
+	public TweetTimeFilter(long lastTweetId) {
+		this.lastTweetId = lastTweetId;
+	}
+
+	@Override
+	public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs)
+			throws IOException {
+		AtomicReader segment = context.reader();
+		long[] bounds = DocValueLookup.segmentBounds(segment, "id");
+
+		if(bounds[0] > lastTweetId) {
+			skippedSegments.incrementAndGet();
+			return null;
+		}
+
+		if(bounds[1] <= lastTweetId) {
+			wholeSegments.incrementAndGet();
+			return new FieldCacheDocIdSet(segment.maxDoc(), acceptDocs) {
+				@Override
+				protected boolean matchDoc(int doc) {
+					return true;
+				}
+			};
+		}
+
+		partialSegments.incrementAndGet();
+		final long[] ids = DocValueLookup.segmentValues(segment, "id");
+		return new FieldCacheDocIdSet(segment.maxDoc(), acceptDocs) {
+			@Override
+			protected boolean matchDoc(int doc) {
+				return ids[doc] <= lastTweetId;
+			}
+		};
+	}
+
+	public int skippedSegments() {
+		return skippedSegments.get();
+	}
+
+	public int partialSegments() {
+		return partialSegments.get();
+	}
+
+	public int wholeSegments() {
+		return wholeSegments.get();
+	}
+
+	// Filters are equal when they accept the same tweets
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof TweetTimeFilter
+			&& ((TweetTimeFilter) other).lastTweetId == lastTweetId;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (lastTweetId ^ (lastTweetId >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return "id <= " + lastTweetId;
+	}
+}
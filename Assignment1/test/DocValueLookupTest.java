@@ -0,0 +1,157 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+
+/*
+ * The ids read through doc values against the same ids stored with each
+ * document, which is how they used to be read.
+ */
+@SuppressWarnings("deprecation")
+public class DocValueLookupTest {
+
+	private final Random random = new Random(5);
+
+	@Test
+	public void readsTheStoredIds() throws IOException {
+		RAMDirectory directory = new RAMDirectory();
+		IndexWriter writer = writer(directory);
+		addTweets(writer, 1000);
+		// deleted tweets leave gaps in the segments
+		for(int i = 0; i < 50; i++) {
+			writer.deleteDocuments(new Term("key", "" + random.nextInt(1000)));
+		}
+		writer.commit();
+
+		DirectoryReader reader = DirectoryReader.open(directory);
+		assertEquals(5, reader.leaves().size());
+		assertStoredIds(reader);
+
+		// merged segments are new segments, loaded again
+		writer.forceMerge(2);
+		writer.commit();
+		DirectoryReader merged = DirectoryReader.openIfChanged(reader);
+		assertNotNull(merged);
+		assertStoredIds(merged);
+
+		reader.close();
+		merged.close();
+		writer.close();
+	}
+
+	@Test
+	public void aReopenedReaderSharesTheUnchangedSegments() throws IOException {
+		RAMDirectory directory = new RAMDirectory();
+		IndexWriter writer = writer(directory);
+		addTweets(writer, 400);
+		DirectoryReader reader = DirectoryReader.open(directory);
+
+		addTweets(writer, 200);
+		DirectoryReader reopened = DirectoryReader.openIfChanged(reader);
+		int shared = 0;
+		for(AtomicReaderContext leaf : reader.leaves()) {
+			for(AtomicReaderContext reopenedLeaf : reopened.leaves()) {
+				if(leaf.reader().getCoreCacheKey() == 
+						reopenedLeaf.reader().getCoreCacheKey()) {
+					assertSame(values(leaf), values(reopenedLeaf));
+					shared++;
+				}
+			}
+		}
+		assertTrue(shared > 0);
+		assertStoredIds(reopened);
+
+		reader.close();
+		reopened.close();
+		writer.close();
+	}
+
+	@Test
+	public void segmentBoundsAreTheSmallestAndLargestIds() throws IOException {
+		RAMDirectory directory = new RAMDirectory();
+		IndexWriter writer = writer(directory);
+		addTweets(writer, 600);
+		DirectoryReader reader = DirectoryReader.open(directory);
+
+		for(AtomicReaderContext leaf : reader.leaves()) {
+			long min = Long.MAX_VALUE;
+			long max = Long.MIN_VALUE;
+			for(int doc = 0; doc < leaf.reader().maxDoc(); doc++) {
+				long id = storedId(leaf.reader().document(doc));
+				min = Math.min(min, id);
+				max = Math.max(max, id);
+			}
+			assertArrayEquals(new long[] {min, max},
+				DocValueLookup.segmentBounds(leaf.reader(), "id"));
+		}
+
+		reader.close();
+		writer.close();
+	}
+
+	private static void assertStoredIds(DirectoryReader reader)
+			throws IOException {
+		DocValueLookup ids = DocValueLookup.load(reader, "id");
+		Bits live = MultiFields.getLiveDocs(reader);
+		for(int doc = 0; doc < reader.maxDoc(); doc++) {
+			if(live == null || live.get(doc)) {
+				assertEquals("doc " + doc, storedId(reader.document(doc)),
+					ids.get(doc));
+			}
+		}
+	}
+
+	private static long[] values(AtomicReaderContext leaf) throws IOException {
+		return DocValueLookup.segmentValues(leaf.reader(), "id");
+	}
+
+	private static long storedId(Document doc) {
+		return doc.getField("storedId").numericValue().longValue();
+	}
+
+	// Adds tweets of random ids (some negative) in segments of 200
+	private void addTweets(IndexWriter writer, int count) throws IOException {
+		int existing = writer.numDocs();
+		for(int i = 0; i < count; i++) {
+			long id = random.nextLong();
+			Document doc = new Document();
+			doc.add(new StringField("key", "" + (existing + i), Field.Store.NO));
+			doc.add(new NumericDocValuesField("id", id));
+			doc.add(new StoredField("storedId", id));
+			writer.addDocument(doc);
+			if(i % 200 == 199) {
+				writer.commit();
+			}
+		}
+		writer.commit();
+	}
+
+	private static IndexWriter writer(RAMDirectory directory)
+			throws IOException {
+		IndexWriterConfig config =
+			new IndexWriterConfig(Version.LUCENE_40, new KeywordAnalyzer());
+		config.setMaxBufferedDocs(1000);
+		return new IndexWriter(directory, config);
+	}
+}
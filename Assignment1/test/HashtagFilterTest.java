@@ -0,0 +1,91 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+
+@SuppressWarnings("deprecation")
+public class HashtagFilterTest {
+
+	private final Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_40);
+	private HashtagFilter filter;
+
+	@Test
+	public void keepsTheTermsAfterAHash() throws IOException {
+		assertEquals(Arrays.asList("superbowl", "packers"),
+			hashtags("Watching the #SuperBowl go #packers!"));
+		assertEquals(Arrays.asList(), hashtags("no hashtags here"));
+	}
+
+	@Test
+	public void aHashInsideAWordStartsAHashtag() throws IOException {
+		// the tokenizer splits a#b, b follows the # in the same word
+		assertEquals(Arrays.asList("b"), hashtags("a#b"));
+		assertEquals(Arrays.asList(), hashtags("word# next"));
+	}
+
+	@Test
+	public void keepsEveryTermOfAHyphenatedHashtag() throws IOException {
+		assertEquals(Arrays.asList("half", "term"), hashtags("#half-term break"));
+	}
+
+	@Test
+	public void hashtagsAreAnalyzedLikeTheText() throws IOException {
+		// stop words are gone from both
+		assertEquals(Arrays.asList("bowl"), hashtags("#the #bowl"));
+	}
+
+	@Test
+	public void passesEveryTokenThrough() throws IOException {
+		assertEquals(Arrays.asList("x", "b", "half", "term", "tweet"),
+			terms("x#b #half-term tweet"));
+	}
+
+	@Test
+	public void startsOverForTheNextText() throws IOException {
+		assertEquals(Arrays.asList("one", "two"), hashtags("#one #two"));
+		assertEquals(Arrays.asList("three"), hashtags("#three"));
+		assertTrue(hashtags("none").isEmpty());
+	}
+
+	// Analyzes the text and returns its hashtag terms
+	private List<String> hashtags(String text) throws IOException {
+		terms(text);
+		return consume(filter.hashtags());
+	}
+
+	// Analyzes the text through the filter and returns its terms
+	private List<String> terms(String text) throws IOException {
+		TokenStream analyzed = analyzer.tokenStream("tweet", text);
+		// the analyzer reuses its chain, so the filter is only made once
+		if(filter == null || !filter.wraps(analyzed)) {
+			filter = new HashtagFilter(analyzed);
+		}
+		filter.setText(text.toCharArray(), text.length());
+		return consume(filter);
+	}
+
+	private static List<String> consume(TokenStream stream) throws IOException {
+		CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+		List<String> terms = new ArrayList<String>();
+		try {
+			stream.reset();
+			while(stream.incrementToken()) {
+				terms.add(termAtt.toString());
+			}
+			stream.end();
+		} finally {
+			stream.close();
+		}
+		return terms;
+	}
+}
@@ -0,0 +1,144 @@
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Version;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+@SuppressWarnings("deprecation")
+public class IndexStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void anIndexIsCurrentOnceMarked() throws IOException {
+		File tweets = tweets("1\tfirst tweet\n2\tsecond tweet\n");
+		String indexFolder = folder.newFolder().getPath();
+		IndexStore store = store(indexFolder, tweets,
+			QueryProcessor.AnalyzerChoice.STANDARD);
+
+		Directory directory = store.open("tweets");
+		assertFalse(store.isCurrent(directory));
+
+		IndexWriter writer = writer(directory);
+		store.markCurrent(writer);
+		writer.close();
+		assertTrue(store.isCurrent(directory));
+
+		// a later run over the same file
+		IndexStore later = store(indexFolder, tweets, 
+			QueryProcessor.AnalyzerChoice.STANDARD);
+		assertTrue(later.isCurrent(later.open("tweets")));
+	}
+
+	@Test
+	public void anIndexWithoutTheKeyIsNotCurrent() throws IOException {
+		IndexStore store = store(folder.newFolder().getPath(), 
+			tweets("1\ttweet\n"), QueryProcessor.AnalyzerChoice.STANDARD);
+		Directory directory = store.open("tweets");
+		writer(directory).close();
+
+		assertFalse(store.isCurrent(directory));
+	}
+
+	@Test
+	public void changingTheTweetsFileInvalidatesTheIndex() throws IOException {
+		File tweets = tweets("1\tfirst tweet\n2\tsecond tweet\n");
+		String indexFolder = folder.newFolder().getPath();
+		IndexStore store = store(indexFolder, tweets, 
+			QueryProcessor.AnalyzerChoice.STANDARD);
+		IndexWriter writer = writer(store.open("tweets"));
+		store.markCurrent(writer);
+		writer.close();
+
+		// the same length, other text
+		TestCorpus.write(tweets, "1\tfirst tweet\n2\tsecond tweat\n");
+		IndexStore changed = store(indexFolder, tweets, 
+			QueryProcessor.AnalyzerChoice.STANDARD);
+		assertFalse(changed.isCurrent(changed.open("tweets")));
+
+		FileOutputStream out = new FileOutputStream(tweets, true);
+		out.write("3\tthird tweet\n".getBytes("UTF-8"));
+		out.close();
+		IndexStore appended = store(indexFolder, tweets, 
+			QueryProcessor.AnalyzerChoice.STANDARD);
+		assertFalse(appended.isCurrent(appended.open("tweets")));
+	}
+
+	@Test
+	public void eachAnalyzerHasItsOwnIndex() throws IOException {
+		File tweets = tweets("1\ttweet\n");
+		String indexFolder = folder.newFolder().getPath();
+		IndexStore standard = store(indexFolder, tweets, 
+			QueryProcessor.AnalyzerChoice.STANDARD);
+		IndexWriter writer = writer(standard.open("tweets"));
+		standard.markCurrent(writer);
+		writer.close();
+
+		IndexStore english = store(indexFolder, tweets, 
+			QueryProcessor.AnalyzerChoice.ENGLISH);
+		assertFalse(english.isCurrent(english.open("tweets")));
+		// nor would the standard key match in the english folder
+		assertFalse(standard.isCurrent(english.open("tweets")));
+	}
+
+	@Test
+	public void aReusedIndexRanksLikeANewOne() throws IOException {
+		TestCorpus corpus = new TestCorpus(folder, 2000, 10, 1);
+		String indexFolder = folder.newFolder().getPath();
+		ScoringOptions options = TestCorpus.options(false, true, 
+			new RankTool.TfIdf());
+
+		QueryProcessor built = corpus.processor(
+			QueryProcessor.AnalyzerChoice.STANDARD);
+		built.usePersistentIndex(indexFolder, 
+			QueryProcessor.AnalyzerChoice.STANDARD);
+		built.open();
+		TrecRun expected = built.search(options);
+		built.close();
+		assertTrue(expected.ids(0).length > 0);
+
+		// the next run finds the index current and does not rebuild it
+		IndexStore store = store(indexFolder, corpus.tweetsFile, 
+			QueryProcessor.AnalyzerChoice.STANDARD);
+		assertTrue(store.isCurrent(store.open("tweets")));
+
+		QueryProcessor reused = corpus.processor(
+			QueryProcessor.AnalyzerChoice.STANDARD);
+		reused.usePersistentIndex(indexFolder, 
+			QueryProcessor.AnalyzerChoice.STANDARD);
+		reused.open();
+		try {
+			TestCorpus.assertSameRun(expected, reused.search(options));
+		} finally {
+			reused.close();
+		}
+	}
+
+	private File tweets(String text) throws IOException {
+		File file = folder.newFile();
+		TestCorpus.write(file, text);
+		return file;
+	}
+
+	private static IndexStore store(String indexFolder, File tweets,
+									QueryProcessor.AnalyzerChoice ac) 
+			throws IOException {
+		return new IndexStore(indexFolder, tweets.getPath(), ac);
+	}
+
+	private static IndexWriter writer(Directory directory) throws IOException {
+		return new IndexWriter(directory, new IndexWriterConfig(
+			Version.LUCENE_40, new StandardAnalyzer(Version.LUCENE_40)));
+	}
+}
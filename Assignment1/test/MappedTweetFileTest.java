@@ -0,0 +1,104 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * Reads files through regions a few bytes long, so lines end at, just
+ * before and just after the region boundaries.
+ */
+public class MappedTweetFileTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void readsEveryLineWhateverTheRegionSize() throws IOException {
+		List<String> expected = Arrays.asList("1\tfirst tweet", "", 
+			"22\tsecond", "333\tthe third tweet é", "4\tx", "55\tlast one");
+		File file = write(join(expected) + "\n");
+
+		for(int regionSize = 24; regionSize <= 64; regionSize++) {
+			for(int batch : new int[] {1, 2, 100}) {
+				assertEquals("region " + regionSize + ", batch " + batch,
+					expected, lines(file, regionSize, batch));
+			}
+		}
+	}
+
+	@Test
+	public void readsALastLineWithoutANewline() throws IOException {
+		List<String> expected = Arrays.asList("1\tone", "2\ttwo", "3\tthree");
+		File file = write(join(expected));
+
+		for(int regionSize = 8; regionSize <= 24; regionSize++) {
+			assertEquals(expected, lines(file, regionSize, 2));
+		}
+	}
+
+	@Test
+	public void readsAnEmptyFile() throws IOException {
+		assertEquals(Arrays.asList(), lines(write(""), 16, 10));
+	}
+
+	@Test
+	public void refusesALineLongerThanARegion() throws IOException {
+		File file = write("1\tshort\n2\tthis line does not fit\n3\tshort\n");
+		try {
+			lines(file, 16, 10);
+			fail("Read a line longer than the region");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	private static List<String> lines(File file, int regionSize, int batch)
+			throws IOException {
+		List<String> lines = new ArrayList<String>();
+		MappedTweetFile in = new MappedTweetFile(file.getPath(), regionSize);
+		try {
+			MappedTweetFile.Lines next;
+			while((next = in.nextLines(batch)) != null) {
+				for(int i = 0; i < next.count; i++) {
+					byte[] bytes = new byte[next.ends[i] - next.starts[i]];
+					for(int b = 0; b < bytes.length; b++) {
+						bytes[b] = next.bytes.get(next.starts[i] + b);
+					}
+					lines.add(new String(bytes, StandardCharsets.UTF_8));
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return lines;
+	}
+
+	private File write(String text) throws IOException {
+		File file = folder.newFile();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(text.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private static String join(List<String> lines) {
+		StringBuilder text = new StringBuilder();
+		for(int i = 0; i < lines.size(); i++) {
+			text.append(i > 0 ? "\n" : "").append(lines.get(i));
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,120 @@
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+
+/*
+ * The banded lookup of NearDuplicateFilter against comparing every pair of
+ * signatures, which the band scheme must agree with at every threshold.
+ */
+@SuppressWarnings("deprecation")
+public class NearDuplicateFilterTest {
+
+	@Test
+	public void findsTheSameDuplicatesAsComparingEveryPair() throws IOException {
+		Random random = new Random(11);
+		long[] signatures = new long[2000];
+		for(int i = 0; i < signatures.length; i++) {
+			// a third are copies of an earlier signature with a few bits flipped
+			if(i > 0 && random.nextInt(3) == 0) {
+				signatures[i] = signatures[random.nextInt(i)];
+				for(int flips = random.nextInt(12); flips > 0; flips--) {
+					signatures[i] ^= 1L << random.nextInt(64);
+				}
+			} else {
+				signatures[i] = random.nextLong();
+			}
+		}
+
+		DocValueLookup lookup = index(signatures);
+		RankedDocs ranking = ranking(signatures.length, random);
+
+		for(double threshold : new double[] {1, 0.95, 0.9, 0.8, 0.6, 0.5, 0.2, 0}) {
+			assertArrayEquals("threshold " + threshold, 
+				everyPair(ranking, signatures, maxDistance(threshold)),
+				new NearDuplicateFilter(threshold).collapse(ranking, lookup).docs);
+		}
+	}
+
+	@Test
+	public void thresholdZeroKeepsOnlyOppositeSignatures() throws IOException {
+		long signature = 0x0123456789ABCDEFL;
+		long[] signatures = { signature, ~signature, signature ^ (-1L >>> 1),
+			signature ^ 1 };
+
+		RankedDocs collapsed = new NearDuplicateFilter(0).collapse(
+			new RankedDocs(new int[] {0, 1, 2, 3}, new float[4]), 
+			index(signatures));
+		// 64 bits apart is not a duplicate, 63 bits apart is
+		assertArrayEquals(new int[] {0, 1}, collapsed.docs);
+	}
+
+	private static int maxDistance(double threshold) {
+		return Math.min(63, (int) Math.round((1 - threshold) * 64));
+	}
+
+	// The ranking without the results close to a better ranked kept one
+	private static int[] everyPair(RankedDocs ranking, long[] signatures,
+								   int maxDistance) {
+		int[] kept = new int[ranking.length()];
+		int count = 0;
+		for(int doc : ranking.docs) {
+			boolean duplicate = false;
+			for(int k = 0; k < count && !duplicate; k++) {
+				duplicate = SimHash.distance(signatures[doc], 
+					signatures[kept[k]]) <= maxDistance;
+			}
+			if(!duplicate) {
+				kept[count++] = doc;
+			}
+		}
+		return Arrays.copyOf(kept, count);
+	}
+
+	private static RankedDocs ranking(int length, Random random) {
+		int[] docs = new int[length];
+		float[] scores = new float[length];
+		for(int i = 0; i < length; i++) {
+			docs[i] = i;
+			scores[i] = length - i;
+		}
+		for(int i = length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = docs[i];
+			docs[i] = docs[j];
+			docs[j] = swap;
+		}
+		return new RankedDocs(docs, scores);
+	}
+
+	// The signatures as simhash doc values, doc i holding signatures[i]
+	private static DocValueLookup index(long[] signatures) throws IOException {
+		RAMDirectory directory = new RAMDirectory();
+		IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(
+			Version.LUCENE_40, new KeywordAnalyzer()));
+		for(long signature : signatures) {
+			Document doc = new Document();
+			doc.add(new NumericDocValuesField("simhash", signature));
+			writer.addDocument(doc);
+		}
+		writer.close();
+
+		DirectoryReader reader = DirectoryReader.open(directory);
+		try {
+			return DocValueLookup.load(reader, "simhash");
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,98 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * The bytes OutputBuilder formats itself against the rows the text writer
+ * used to build from Strings.
+ */
+public class OutputBuilderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final Random random = new Random(10);
+
+	@Test
+	public void writesTheRowsOfTheTextWriter() throws IOException {
+		File results = folder.newFile();
+		File binary = folder.newFile();
+		OutputBuilder output = new OutputBuilder(results.getPath(),
+			binary.getPath());
+		StringBuilder expected = new StringBuilder();
+		ByteBuffer records = ByteBuffer.allocate(1 << 22)
+			.order(ByteOrder.LITTLE_ENDIAN);
+		records.put("TRUN".getBytes("UTF-8")).putInt(OutputBuilder.BINARY_VERSION);
+
+		long[] edges = { 0, 1, 9, 10, 99, 100, -1, -9, -10, -11,
+			Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1 };
+		// enough rows to fill the buffers several times
+		for(int topic = 1; topic <= 60; topic++) {
+			String queryNum = TestCorpus.queryId(topic - 1);
+			for(int rank = 1; rank <= 1000; rank++) {
+				long id = rank <= edges.length ? edges[rank - 1] : id();
+				float score = score();
+				output.add(queryNum, id, score);
+				expected.append(topic + "\tQ0\t" + id + "\t" + rank + "\t"
+					+ score + "\ttestRun\n");
+				records.putInt(topic).putLong(id).putInt(rank).putFloat(score);
+			}
+			output.resetRank();
+		}
+		output.addRaw("word\t17\n");
+		expected.append("word\t17\n");
+		output.close();
+
+		assertEquals(expected.toString(),
+			new String(Files.readAllBytes(results.toPath()), "UTF-8"));
+		byte[] expectedRecords = new byte[records.position()];
+		records.flip();
+		records.get(expectedRecords);
+		assertArrayEquals(expectedRecords, Files.readAllBytes(binary.toPath()));
+	}
+
+	@Test
+	public void writesRawTextLongerThanTheBuffer() throws IOException {
+		File vocabulary = folder.newFile();
+		StringBuilder text = new StringBuilder();
+		while(text.length() < 200000) {
+			text.append("café\t").append(random.nextInt()).append('\n');
+		}
+		OutputBuilder output = new OutputBuilder(vocabulary.getPath());
+		output.addRaw(text.toString());
+		output.close();
+
+		assertEquals(text.toString(),
+			new String(Files.readAllBytes(vocabulary.toPath()), "UTF-8"));
+	}
+
+	// Ids of every length, some negative
+	private long id() {
+		long id = random.nextLong() >> random.nextInt(64);
+		return random.nextInt(4) == 0 ? id : Math.abs(id);
+	}
+
+	// Scores of every size, some with exponents
+	private float score() {
+		switch(random.nextInt(4)) {
+		case 0:
+			return random.nextInt(100);
+		case 1:
+			return random.nextFloat() * 1e-5f;
+		case 2:
+			return random.nextFloat() * 1e9f;
+		default:
+			return random.nextFloat() * 20;
+		}
+	}
+}
@@ -0,0 +1,138 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * Whole runs of the query processor over a generated corpus.
+ */
+@SuppressWarnings("deprecation")
+public class QueryProcessorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void concurrentTopicsWriteTheSameResults() throws IOException {
+		TestCorpus corpus = new TestCorpus(folder, 3000, 20, 3);
+		byte[] expected = results(corpus, 1);
+
+		assertTrue(new String(expected, "UTF-8").startsWith("1\tQ0\t"));
+		for(int threads : new int[] {2, 4, 8}) {
+			assertArrayEquals(threads + " threads", expected,
+				results(corpus, threads));
+		}
+	}
+
+	/* Hashtag scoring used to search a second index of the hashtags and
+	 * add the two scores of each tweet, the hashtag one weighted by htCoef.
+	 * The single fused search must give every tweet that same score. BM25
+	 * is used because its query norm is 1, so the two halves of the fused
+	 * query are scored exactly as they would be on their own.
+	 */
+	@Test
+	public void hashtagScoresAddToTweetScores() throws Exception {
+		TestCorpus corpus = new TestCorpus(folder, 3000, 20, 4);
+		QueryProcessor processor = 
+			corpus.processor(QueryProcessor.AnalyzerChoice.STANDARD);
+		processor.open();
+		TrecRun run;
+		try {
+			run = processor.search(TestCorpus.options(false, true, 
+				new RankTool.Bm25()));
+		} finally {
+			processor.close();
+		}
+
+		Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_40);
+		Directory directory = new RAMDirectory();
+		IndexWriter writer = new IndexWriter(directory, 
+			new IndexWriterConfig(Version.LUCENE_40, analyzer));
+		new TweetIndexer(writer, 1).index(corpus.tweetsFile.getPath());
+		writer.close();
+		DirectoryReader reader = DirectoryReader.open(directory);
+		IndexSearcher searcher = new IndexSearcher(reader);
+		searcher.setSimilarity(new BM25Similarity());
+		DocValueLookup ids = DocValueLookup.load(reader, "id");
+
+		int withHashtags = 0;
+		for(int i = 0; i < run.size(); i++) {
+			String title = corpus.titles.get(run.topic(i) - 1);
+			Map<Long, Float> merged = new HashMap<Long, Float>();
+			addScores(merged, searcher, ids, parse("tweet", title, analyzer), 1);
+			Map<Long, Float> tweetScores = new HashMap<Long, Float>(merged);
+			addScores(merged, searcher, ids, 
+				parse("Hashtags", title, analyzer), 0.1f);
+			if(!merged.equals(tweetScores)) {
+				withHashtags++;
+			}
+
+			assertEquals(Math.min(1000, merged.size()), run.ids(i).length);
+			for(int rank = 0; rank < run.ids(i).length; rank++) {
+				Float expected = merged.get(run.ids(i)[rank]);
+				assertNotNull(expected);
+				assertEquals(expected, run.scores(i)[rank], 1e-5f * expected);
+			}
+		}
+		// the hashtags change the scores of some topics
+		assertTrue(withHashtags > 0);
+		reader.close();
+	}
+
+	private static void addScores(Map<Long, Float> scores, 
+								  IndexSearcher searcher, DocValueLookup ids, 
+								  Query query, float coefficient) 
+			throws IOException {
+		// every hit, so no tweet misses either half of its score
+		int all = searcher.getIndexReader().maxDoc();
+		for(ScoreDoc hit : searcher.search(query, all).scoreDocs) {
+			Float score = scores.get(ids.get(hit.doc));
+			scores.put(ids.get(hit.doc), (score != null ? score : 0) 
+				+ coefficient * hit.score);
+		}
+	}
+
+	private static Query parse(String field, String title, Analyzer analyzer) 
+			throws ParseException {
+		return new QueryParser(Version.LUCENE_40, field, analyzer).parse(title);
+	}
+
+	// The results file of a run with feedback and hashtag scoring
+	private byte[] results(TestCorpus corpus, int queryThreads)
+			throws IOException {
+		File resultsFile = folder.newFile();
+		QueryProcessor processor = new QueryProcessor(
+			corpus.tweetsFile.getPath(), corpus.queriesFile.getPath(),
+			folder.newFile().getPath(), resultsFile.getPath(),
+			true, new Double[3], null, true, null,
+			QueryProcessor.AnalyzerChoice.STANDARD);
+		processor.setQueryThreads(queryThreads);
+		processor.go();
+		processor.close();
+		return Files.readAllBytes(resultsFile.toPath());
+	}
+}
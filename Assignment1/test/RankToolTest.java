@@ -0,0 +1,118 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.DefaultSimilarity;
+import org.apache.lucene.search.similarities.LMDirichletSimilarity;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+
+/*
+ * Ranking models chosen by name, and the recency decay they can add.
+ */
+@SuppressWarnings("deprecation")
+public class RankToolTest {
+
+	private static final long HOUR = 60 * 60 * 1000;
+
+	@Test
+	public void namesGiveTheirModels() {
+		assertTrue(RankTool.forName("tfidf", 24).getSimilarity()
+			instanceof DefaultSimilarity);
+		assertTrue(RankTool.forName("bm25", 24).getSimilarity()
+			instanceof BM25Similarity);
+		assertTrue(RankTool.forName("lm", 24).getSimilarity()
+			instanceof LMDirichletSimilarity);
+
+		// recency alone decays tfidf
+		RankTool recency = RankTool.forName("recency", 24);
+		assertTrue(recency instanceof RankTool.Recency);
+		assertTrue(recency.getSimilarity() instanceof DefaultSimilarity);
+		RankTool bm25Recency = RankTool.forName(" BM25+Recency ", 6);
+		assertTrue(bm25Recency instanceof RankTool.Recency);
+		assertTrue(bm25Recency.getSimilarity() instanceof BM25Similarity);
+		assertEquals(6, ((RankTool.Recency) bm25Recency).halfLifeHours(), 0);
+	}
+
+	@Test
+	public void namesRoundTrip() {
+		for(String name : RankTool.NAMES) {
+			assertEquals(name, RankTool.forName(name, 24).name());
+		}
+		for(String name : new String[] {"bm25+recency", "lm+recency"}) {
+			assertEquals(name, RankTool.forName(name, 24).name());
+			assertEquals(name, RankTool.forName(name, 24).toString());
+		}
+	}
+
+	@Test
+	public void unknownNamesAreRejected() {
+		for(String name : new String[] {"okapi", "", "+recency",
+				"recency+recency", "tfidf+lm"}) {
+			try {
+				RankTool.forName(name, 24);
+				fail(name);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void keysTellHalfLivesApart() {
+		assertEquals("bm25", RankTool.forName("bm25", 24).key());
+		assertEquals(RankTool.forName("bm25", 24).key(),
+			RankTool.forName("bm25", 6).key());
+		assertNotEquals(RankTool.forName("recency", 24).key(),
+			RankTool.forName("recency", 6).key());
+		assertNotEquals(RankTool.forName("recency", 24).key(),
+			RankTool.forName("bm25+recency", 24).key());
+	}
+
+	@Test
+	public void recencyHalvesScoresEveryHalfLife() throws IOException {
+		long queryTime = 20 * 24 * HOUR;
+		// tweets 0, 6, 12 and 48 hours before the query, one 6 hours after
+		long[] ages = { 0, 6 * HOUR, 12 * HOUR, 48 * HOUR, -6 * HOUR };
+
+		RAMDirectory directory = new RAMDirectory();
+		IndexWriter writer = new IndexWriter(directory,
+			new IndexWriterConfig(Version.LUCENE_40, new KeywordAnalyzer()));
+		for(long age : ages) {
+			Document doc = new Document();
+			doc.add(new NumericDocValuesField("id", tweetId(queryTime - age)));
+			writer.addDocument(doc);
+		}
+		writer.close();
+		DirectoryReader reader = DirectoryReader.open(directory);
+		AtomicReader segment = reader.leaves().get(0).reader();
+
+		assertNull(RankTool.forName("bm25", 6).forSegment(segment,
+			tweetId(queryTime)));
+		RankTool.SegmentScores scores = RankTool.forName("bm25+recency", 6)
+			.forSegment(segment, tweetId(queryTime));
+		float[] expected = { 2, 1, 0.5f, 2f / 256, 1 };
+		for(int doc = 0; doc < ages.length; doc++) {
+			assertEquals(expected[doc], scores.score(doc, 2), 1e-6f);
+		}
+		reader.close();
+	}
+
+	// An id made at the given milliseconds after Twitter's epoch
+	private static long tweetId(long millis) {
+		return millis << 22 | 12345;
+	}
+}
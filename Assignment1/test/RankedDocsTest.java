@@ -0,0 +1,76 @@
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/*
+ * Merging the rankings of the shards against sorting all their documents
+ * together: by score, ties to the lower doc id.
+ */
+public class RankedDocsTest {
+
+	private final Random random = new Random(20);
+
+	@Test
+	public void mergesLikeSortingEveryDocument() {
+		for(int round = 0; round < 200; round++) {
+			// few distinct scores, so many ties within and across lists
+			RankedDocs[] lists = new RankedDocs[1 + random.nextInt(5)];
+			List<float[]> all = new ArrayList<float[]>();
+			int base = 0;
+			for(int l = 0; l < lists.length; l++) {
+				int length = random.nextInt(30);
+				List<float[]> list = new ArrayList<float[]>();
+				for(int i = 0; i < length; i++) {
+					list.add(new float[] {base + i, random.nextInt(8)});
+				}
+				base += length;
+				Collections.sort(list, BEST_FIRST);
+				lists[l] = ranked(list);
+				all.addAll(list);
+			}
+			Collections.sort(all, BEST_FIRST);
+
+			for(int k : new int[] {0, 1, 5, 20, all.size(), all.size() + 10}) {
+				RankedDocs expected = ranked(all).truncate(k);
+				RankedDocs merged = RankedDocs.merge(lists, k);
+				assertArrayEquals(expected.docs, merged.docs);
+				assertArrayEquals(expected.scores, merged.scores, 0f);
+			}
+		}
+	}
+
+	@Test
+	public void mergesEmptyLists() {
+		RankedDocs merged = RankedDocs.merge(new RankedDocs[] {
+			RankedDocs.EMPTY, new RankedDocs(new int[] {3}, new float[] {1}),
+			RankedDocs.EMPTY }, 10);
+		assertArrayEquals(new int[] {3}, merged.docs);
+		assertArrayEquals(new int[0],
+			RankedDocs.merge(new RankedDocs[0], 10).docs);
+	}
+
+	// Doc ids (held as floats) and scores, by score and then doc id
+	private static final Comparator<float[]> BEST_FIRST =
+		new Comparator<float[]>() {
+			public int compare(float[] a, float[] b) {
+				int byScore = Float.compare(b[1], a[1]);
+				return byScore != 0 ? byScore : Float.compare(a[0], b[0]);
+			}
+		};
+
+	private static RankedDocs ranked(List<float[]> docs) {
+		int[] ids = new int[docs.size()];
+		float[] scores = new float[docs.size()];
+		for(int i = 0; i < ids.length; i++) {
+			ids[i] = (int) docs.get(i)[0];
+			scores[i] = docs.get(i)[1];
+		}
+		return new RankedDocs(ids, scores);
+	}
+}
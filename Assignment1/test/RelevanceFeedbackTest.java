@@ -0,0 +1,268 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * The expanded queries of RelevanceFeedback against Rocchio weighting
+ * done the plain way, with a map from term text to weight: the same terms
+ * must be kept, with the same boosts, in the same order.
+ */
+@SuppressWarnings("deprecation")
+public class RelevanceFeedbackTest {
+
+	private final Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_40);
+	private DirectoryReader reader;
+	private IndexSearcher searcher;
+	private List<String> texts;
+
+	@After
+	public void close() throws IOException {
+		if(reader != null) {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void weighsTermsLikeRocchio() throws IOException {
+		index("1\tsuper bowl party tonight",
+			  "2\tsuper bowl ads",
+			  "3\tpackers win the super bowl",
+			  "4\tpackers fans party",
+			  "5\tweather tonight");
+		RankedDocs first = ranking(0, 1, 2, 3, 4);
+
+		for(int maxTerms : new int[] {1, 3, 5, 50}) {
+			assertEquals(rocchio(query("super bowl"), first, 1, 5.5, 0, 2, maxTerms),
+				clauses(feedback(1, 5.5, 0, 2, maxTerms).expand(query("super bowl"),
+					searcher, new TermDictionary(), 0, first)));
+		}
+		// the irrelevant documents take weight away
+		assertEquals(rocchio(query("super bowl"), first, 1, 5.5, 2, 2, 50),
+			clauses(feedback(1, 5.5, 2, 2, 50).expand(query("super bowl"),
+				searcher, new TermDictionary(), 0, first)));
+	}
+
+	@Test
+	public void weighsGeneratedTweetsLikeRocchio() throws IOException {
+		Random random = new Random(9);
+		String[] lines = new String[500];
+		for(int i = 0; i < lines.length; i++) {
+			StringBuilder text = new StringBuilder();
+			for(int w = 0; w < 4 + random.nextInt(8); w++) {
+				text.append(TestCorpus.WORDS[random.nextInt(12)]).append(' ');
+			}
+			lines[i] = (i + 1) + "\t" + text;
+		}
+		index(lines);
+
+		for(int round = 0; round < 20; round++) {
+			int[] docs = new int[50];
+			for(int i = 0; i < docs.length; i++) {
+				docs[i] = random.nextInt(lines.length);
+			}
+			RankedDocs first = ranking(docs);
+			Query original = query(TestCorpus.WORDS[random.nextInt(12)] + " "
+				+ TestCorpus.WORDS[random.nextInt(12)]);
+			int numR = 1 + random.nextInt(10);
+			int maxTerms = 1 + random.nextInt(10);
+			double irrelevant = random.nextBoolean() ? 0 : 1.5;
+
+			assertEquals(rocchio(original, first, 1, 5.5, irrelevant, numR, maxTerms),
+				clauses(feedback(1, 5.5, irrelevant, numR, maxTerms).expand(
+					original, searcher, new TermDictionary(), 0, first)));
+		}
+	}
+
+	@Test
+	public void tiesAreCutByTermTextWhateverTheOrdinals() throws IOException {
+		index("1\tdelta alpha charlie bravo echo");
+		RankedDocs first = ranking(0);
+		RelevanceFeedback feedback = feedback(0, 1, 0, 1, 3);
+
+		// every term ties, so the first three in text order are kept
+		List<String> expected = new ArrayList<String>();
+		for(String term : new String[] {"alpha", "bravo", "charlie"}) {
+			expected.add(term + "^1.0");
+		}
+		assertEquals(expected, clauses(feedback.expand(query("nothing"),
+			searcher, new TermDictionary(), 0, first)));
+
+		// a dictionary that has seen the terms in another order
+		TermDictionary seeded = new TermDictionary();
+		for(String term : new String[] {"echo", "delta", "charlie", "bravo"}) {
+			seeded.ordinal(new BytesRef(term));
+		}
+		assertEquals(expected, clauses(feedback.expand(query("nothing"),
+			searcher, seeded, 0, first)));
+	}
+
+	@Test
+	public void noPositiveTermGivesNoQuery() throws IOException {
+		index("1\tsuper bowl");
+		assertNull(feedback(0, 0, 0, 1, 50).expand(query("super"), searcher,
+			new TermDictionary(), 0, ranking(0)));
+	}
+
+	private void index(String... lines) throws IOException {
+		RAMDirectory directory = new RAMDirectory();
+		IndexWriter writer = new IndexWriter(directory,
+			new IndexWriterConfig(Version.LUCENE_40, analyzer));
+		TweetDocument tweet = new TweetDocument(analyzer);
+		texts = new ArrayList<String>();
+		for(String line : lines) {
+			writer.addDocument(tweet.set(line));
+			texts.add(line.substring(line.indexOf('\t') + 1));
+		}
+		writer.close();
+		reader = DirectoryReader.open(directory);
+		searcher = new IndexSearcher(reader);
+	}
+
+	private RelevanceFeedback feedback(double original, double relevant,
+									   double irrelevant, int numR, int maxTerms) {
+		return new RelevanceFeedback(analyzer, null, original, relevant,
+			irrelevant, numR, maxTerms);
+	}
+
+	private Query query(String text) throws IOException {
+		BooleanQuery query = new BooleanQuery();
+		for(String term : analyze(text)) {
+			query.add(new TermQuery(new Term("tweet", term)),
+				BooleanClause.Occur.SHOULD);
+		}
+		return query;
+	}
+
+	private static RankedDocs ranking(int... docs) {
+		float[] scores = new float[docs.length];
+		for(int i = 0; i < docs.length; i++) {
+			scores[i] = docs.length - i;
+		}
+		return new RankedDocs(docs, scores);
+	}
+
+	// The clauses of an expanded query as "term^boost", in order
+	private static List<String> clauses(Query expanded) {
+		List<String> clauses = new ArrayList<String>();
+		for(BooleanClause clause : ((BooleanQuery) expanded).clauses()) {
+			TermQuery query = (TermQuery) clause.getQuery();
+			clauses.add(query.getTerm().text() + "^" + query.getBoost());
+		}
+		return clauses;
+	}
+
+	/* Rocchio weighting with term text: the query's terms, plus the term
+	 * frequencies of the top numR documents times relevant / numR, minus
+	 * those of the bottom numR times irrelevant / numR. The best maxTerms
+	 * positive terms are kept, ties in term text order.
+	 */
+	private List<String> rocchio(Query original, RankedDocs first,
+								 double originalCoef, double relevantCoef,
+								 double irrelevantCoef, int numR,
+								 int maxTerms) throws IOException {
+		final Map<String, Float> weights = new HashMap<String, Float>();
+		// a term repeated in the query counts once
+		Set<String> queryTerms = new HashSet<String>();
+		for(BooleanClause clause : ((BooleanQuery) original).clauses()) {
+			queryTerms.add(((TermQuery) clause.getQuery()).getTerm().text());
+		}
+		for(String term : queryTerms) {
+			add(weights, term, (float) originalCoef);
+		}
+
+		float relevant = (float) (relevantCoef / numR);
+		float irrelevant = (float) (irrelevantCoef / numR);
+		// each document adds to a term once, in the same document order
+		for(int i = 0; i < Math.min(numR, first.length()); i++) {
+			Map<String, Integer> good = frequencies(first.docs[i]);
+			for(Map.Entry<String, Integer> term : good.entrySet()) {
+				add(weights, term.getKey(), relevant * term.getValue());
+			}
+			if(irrelevant != 0) {
+				Map<String, Integer> bad =
+					frequencies(first.docs[first.length() - i - 1]);
+				for(Map.Entry<String, Integer> term : bad.entrySet()) {
+					add(weights, term.getKey(), -irrelevant * term.getValue());
+				}
+			}
+		}
+
+		List<String> terms = new ArrayList<String>();
+		for(Map.Entry<String, Float> entry : weights.entrySet()) {
+			if(entry.getValue() > 0) {
+				terms.add(entry.getKey());
+			}
+		}
+		Collections.sort(terms, new Comparator<String>() {
+			public int compare(String a, String b) {
+				int byWeight = Float.compare(weights.get(b), weights.get(a));
+				return byWeight != 0 ? byWeight : a.compareTo(b);
+			}
+		});
+
+		List<String> clauses = new ArrayList<String>();
+		for(String term : terms.subList(0, Math.min(maxTerms, terms.size()))) {
+			clauses.add(term + "^" + weights.get(term));
+		}
+		return clauses;
+	}
+
+	private static void add(Map<String, Float> weights, String term, float weight) {
+		Float current = weights.get(term);
+		weights.put(term, (current != null ? current : 0) + weight);
+	}
+
+	private Map<String, Integer> frequencies(int doc) throws IOException {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for(String term : analyze(texts.get(doc))) {
+			Integer count = counts.get(term);
+			counts.put(term, count != null ? count + 1 : 1);
+		}
+		return counts;
+	}
+
+	private List<String> analyze(String text) throws IOException {
+		List<String> terms = new ArrayList<String>();
+		TokenStream stream = analyzer.tokenStream("tweet", text);
+		CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+		try {
+			stream.reset();
+			while(stream.incrementToken()) {
+				terms.add(term.toString());
+			}
+			stream.end();
+		} finally {
+			stream.close();
+		}
+		return terms;
+	}
+}
@@ -0,0 +1,130 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Test;
+
+/*
+ * The bounds and counts of the result cache.
+ */
+public class ResultCacheTest {
+
+	private static final RankTool TFIDF = RankTool.forName("tfidf", 24);
+
+	private final Metrics metrics = new Metrics();
+
+	@Test
+	public void evictsTheLeastRecentlyUsedPastTheByteBound() {
+		RankedDocs hits = hits(100);
+		// room for two of the entries, not three
+		ResultCache cache = new ResultCache(100, 2 * bytes("a", hits) + 10, metrics);
+
+		cache.put(key("a"), hits);
+		cache.put(key("b"), hits);
+		cache.get(key("a"));
+		cache.put(key("c"), hits);
+
+		assertSame(hits, cache.get(key("a")));
+		assertNull(cache.get(key("b")));
+		assertSame(hits, cache.get(key("c")));
+		assertEquals(1, statistic("resultCache.evictions"));
+		assertEquals(2, statistic("resultCache.entries"));
+		assertEquals(2 * bytes("a", hits), statistic("resultCache.bytes"));
+		assertEquals(3, statistic("resultCache.hits"));
+		assertEquals(1, statistic("resultCache.misses"));
+	}
+
+	@Test
+	public void evictsPastTheEntryBound() {
+		ResultCache cache = new ResultCache(2, Long.MAX_VALUE, metrics);
+		cache.put(key("a"), hits(1));
+		cache.put(key("b"), hits(1));
+		cache.put(key("c"), hits(1));
+
+		assertNull(cache.get(key("a")));
+		assertEquals(2, statistic("resultCache.entries"));
+	}
+
+	@Test
+	public void skipsHitsLargerThanTheWholeCache() {
+		ResultCache cache = new ResultCache(100, bytes("a", hits(10)), metrics);
+		cache.put(key("a"), hits(11));
+
+		assertNull(cache.get(key("a")));
+		assertEquals(0, statistic("resultCache.bytes"));
+	}
+
+	@Test
+	public void replacingAnEntryCountsItsBytesOnce() {
+		ResultCache cache = new ResultCache(100, Long.MAX_VALUE, metrics);
+		cache.put(key("a"), hits(10));
+		cache.put(key("a"), hits(20));
+
+		assertEquals(bytes("a", hits(20)), statistic("resultCache.bytes"));
+	}
+
+	@Test
+	public void estimatesQueriesByTheirTerms() {
+		BooleanQuery inner = new BooleanQuery();
+		inner.add(query("super"), BooleanClause.Occur.SHOULD);
+		inner.add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST);
+		BooleanQuery outer = new BooleanQuery();
+		outer.add(query("bowl"), BooleanClause.Occur.SHOULD);
+		outer.add(inner, BooleanClause.Occur.SHOULD);
+
+		assertEquals(64 + "bowl".length(), ResultCache.querySize(query("bowl")));
+		assertEquals(200 + 64 + "bowl".length() + 200 + 64 + "super".length()
+			+ 200, ResultCache.querySize(outer));
+		// terms are counted in UTF-8 bytes
+		assertEquals(64 + 5, ResultCache.querySize(query("caf\u00e9")));
+	}
+
+	@Test
+	public void searchesOfAnotherGenerationOrModelMiss() {
+		ResultCache cache = new ResultCache(100, Long.MAX_VALUE, metrics);
+		cache.put(key("a"), hits(1));
+
+		assertNull(cache.get(new ResultCache.Key(query("a"), null, TFIDF, 0, 2)));
+		assertNull(cache.get(new ResultCache.Key(query("a"), null, 
+			RankTool.forName("bm25", 24), 0, 1)));
+		assertEquals(2, statistic("resultCache.misses"));
+	}
+
+	@Test
+	public void clearDropsEverything() {
+		ResultCache cache = new ResultCache(100, Long.MAX_VALUE, metrics);
+		cache.put(key("a"), hits(1));
+		cache.clear();
+
+		assertNull(cache.get(key("a")));
+		assertEquals(0, statistic("resultCache.entries"));
+		assertEquals(0, statistic("resultCache.bytes"));
+	}
+
+	private long statistic(String name) {
+		Long value = metrics.getIndexStatistics().get(name);
+		return value != null ? value : 0;
+	}
+
+	// The estimate ResultCache makes of the bytes of an entry of one term
+	private static long bytes(String text, RankedDocs hits) {
+		return 200 + 64 + text.length() + hits.length() * 8L;
+	}
+
+	private static ResultCache.Key key(String text) {
+		return new ResultCache.Key(query(text), null, TFIDF, 0, 1);
+	}
+
+	private static TermQuery query(String text) {
+		return new TermQuery(new Term("tweet", text));
+	}
+
+	private static RankedDocs hits(int length) {
+		return new RankedDocs(new int[length], new float[length]);
+	}
+}
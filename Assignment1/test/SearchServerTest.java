@@ -0,0 +1,208 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * Requests to a search server over a generated corpus, answered as the
+ * processor ranks the same text.
+ */
+public class SearchServerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private TestCorpus corpus;
+	private QueryProcessor processor;
+	private SearchServer server;
+
+	@Before
+	public void start() throws IOException {
+		corpus = new TestCorpus(folder, 2000, 5, 6);
+		processor = corpus.processor(QueryProcessor.AnalyzerChoice.STANDARD);
+		processor.open();
+		server = new SearchServer(processor);
+		server.start(0, 2);
+	}
+
+	@After
+	public void stop() {
+		server.stop();
+		processor.close();
+	}
+
+	@Test
+	public void listensOnTheLoopbackAddress() {
+		assertTrue(server.getAddress().getAddress().isLoopbackAddress());
+		assertNotEquals(0, server.getAddress().getPort());
+	}
+
+	@Test
+	public void searchRanksLikeTheProcessor() throws Exception {
+		String title = corpus.titles.get(0);
+		RankedTweets expected = processor.rankText(title, null,
+			processor.getScoringOptions()).truncate(10);
+
+		Response response = request(server, "GET",
+			"/search?hits=10&q=" + URLEncoder.encode(title, "utf-8"), null);
+		assertEquals(200, response.status);
+		StringBuilder rows = new StringBuilder();
+		for(int i = 0; i < expected.length(); i++) {
+			rows.append(i + 1).append('\t').append(expected.ids[i]).append('\t')
+				.append(expected.scores[i]).append('\n');
+		}
+		assertEquals(rows.toString(), response.body);
+		assertTrue(expected.length() > 0);
+	}
+
+	@Test
+	public void searchTakesTheScoringAndTimeParameters() throws Exception {
+		String title = corpus.titles.get(1);
+		long until = corpus.queryTweetIds.get(1);
+		ScoringOptions defaults = processor.getScoringOptions();
+		ScoringOptions options = new ScoringOptions(true,
+			defaults.originalQueryCoefficient, 2.5,
+			defaults.irrelevantQueryCoefficient, 3, true, 0.5f,
+			RankTool.forName("bm25", RankTool.DEFAULT_HALF_LIFE_HOURS));
+		RankedTweets expected = processor.rankText(title, until, options);
+
+		Response response = request(server, "GET", "/search?r=1&rQCoef=2.5"
+			+ "&numR=3&t&htCoef=0.5&rank=bm25&until=" + until + "&q="
+			+ URLEncoder.encode(title, "utf-8"), null);
+		assertEquals(200, response.status);
+		String[] rows = response.body.split("\n");
+		assertEquals(expected.length(), rows.length);
+		for(int i = 0; i < rows.length; i++) {
+			String[] columns = rows[i].split("\t");
+			assertEquals(expected.ids[i], Long.parseLong(columns[1]));
+			assertTrue(expected.ids[i] <= until);
+			assertEquals(expected.scores[i], Float.parseFloat(columns[2]), 0f);
+		}
+	}
+
+	@Test
+	public void batchWritesTrecRows() throws Exception {
+		String first = corpus.titles.get(2);
+		String second = corpus.titles.get(3);
+		Response response = request(server, "POST", "/batch?hits=5",
+			"7\t" + first + "\n\n" + second + "\n");
+		assertEquals(200, response.status);
+
+		// lines without a number are numbered by their line
+		StringBuilder rows = new StringBuilder();
+		String[] nums = { "7", "3" };
+		String[] texts = { first, second };
+		for(int q = 0; q < texts.length; q++) {
+			RankedTweets expected = processor.rankText(texts[q], null,
+				processor.getScoringOptions()).truncate(5);
+			for(int i = 0; i < expected.length(); i++) {
+				rows.append(nums[q]).append("\tQ0\t").append(expected.ids[i])
+					.append('\t').append(i + 1).append('\t')
+					.append(expected.scores[i]).append("\ttestRun\n");
+			}
+		}
+		assertEquals(rows.toString(), response.body);
+	}
+
+	@Test
+	public void badParametersAreBadRequests() throws IOException {
+		assertEquals(400, request(server, "GET", "/search", null).status);
+		assertEquals(400, request(server, "GET", "/search?q=bowl&hits=all",
+			null).status);
+		assertEquals(400, request(server, "GET", "/search?q=bowl&until=today",
+			null).status);
+		assertEquals(400, request(server, "GET", "/search?q=bowl&rank=best",
+			null).status);
+		assertEquals(400, request(server, "GET", "/search?q=%22bowl",
+			null).status);
+	}
+
+	@Test
+	public void otherMethodsAreNotAllowed() throws IOException {
+		Response response = request(server, "POST", "/search?q=bowl", "");
+		assertEquals(405, response.status);
+		assertEquals("GET", response.allow);
+
+		response = request(server, "GET", "/batch", null);
+		assertEquals(405, response.status);
+		assertEquals("POST", response.allow);
+		assertEquals(405, request(server, "GET", "/ingest", null).status);
+		assertEquals(405, request(server, "DELETE", "/metrics", null).status);
+	}
+
+	@Test
+	public void metricsAreJson() throws IOException {
+		request(server, "GET", "/search?q=bowl", null);
+		Response response = request(server, "GET", "/metrics", null);
+		assertEquals(200, response.status);
+		assertTrue(response.type.startsWith("application/json"));
+		assertTrue(response.body.startsWith("{"));
+	}
+
+	// The status, headers and body of a response
+	static class Response {
+		int status;
+		String allow;
+		String type;
+		String body;
+	}
+
+	static Response request(SearchServer server, String method, String path,
+							String body) throws IOException {
+		InetSocketAddress address = server.getAddress();
+		return request(new URL("http", address.getAddress().getHostAddress(),
+			address.getPort(), path), method, body);
+	}
+
+	static Response request(URL url, String method, String body)
+			throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		try {
+			connection.setRequestMethod(method);
+			if(body != null) {
+				connection.setDoOutput(true);
+				OutputStream out = connection.getOutputStream();
+				try {
+					out.write(body.getBytes("utf-8"));
+				} finally {
+					out.close();
+				}
+			}
+
+			Response response = new Response();
+			response.status = connection.getResponseCode();
+			response.allow = connection.getHeaderField("Allow");
+			response.type = connection.getContentType();
+			InputStream in = response.status < 400 ?
+				connection.getInputStream() : connection.getErrorStream();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try {
+				byte[] buffer = new byte[4096];
+				int read;
+				while((read = in.read(buffer)) != -1) {
+					bytes.write(buffer, 0, read);
+				}
+			} finally {
+				in.close();
+			}
+			response.body = bytes.toString("utf-8");
+			return response;
+		} finally {
+			connection.disconnect();
+		}
+	}
+}
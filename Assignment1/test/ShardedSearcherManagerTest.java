@@ -0,0 +1,180 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * Refreshes of a sharded searcher: only the changed shards are reopened,
+ * and every shard reader is closed once no searcher reads it, including
+ * when making a searcher fails.
+ */
+@SuppressWarnings("deprecation")
+public class ShardedSearcherManagerTest {
+
+	private final Directory[] shards = new Directory[3];
+	private final IndexWriter[] writers = new IndexWriter[shards.length];
+	private final FailingFactory factory = new FailingFactory();
+
+	@Before
+	public void index() throws IOException {
+		for(int i = 0; i < shards.length; i++) {
+			shards[i] = new RAMDirectory();
+			writers[i] = new IndexWriter(shards[i], new IndexWriterConfig(
+				Version.LUCENE_40, new KeywordAnalyzer()));
+			for(int doc = 0; doc <= i; doc++) {
+				add(i);
+			}
+		}
+	}
+
+	@After
+	public void close() throws IOException {
+		for(IndexWriter writer : writers) {
+			writer.close();
+		}
+	}
+
+	@Test
+	public void aRefreshReopensOnlyTheChangedShards() throws IOException {
+		ShardedSearcherManager manager =
+			new ShardedSearcherManager(shards, factory);
+		IndexSearcher first = manager.acquire();
+		assertEquals(6, first.getIndexReader().numDocs());
+
+		// nothing changed, so the same searcher is handed out
+		assertTrue(manager.maybeRefresh());
+		IndexSearcher same = manager.acquire();
+		assertSame(first, same);
+		manager.release(same);
+
+		add(1);
+		assertTrue(manager.maybeRefresh());
+		IndexSearcher second = manager.acquire();
+		assertEquals(7, second.getIndexReader().numDocs());
+		List<IndexReader> before = shardReaders(first);
+		List<IndexReader> after = shardReaders(second);
+		assertSame(before.get(0), after.get(0));
+		assertNotSame(before.get(1), after.get(1));
+		assertSame(before.get(2), after.get(2));
+
+		// the old searcher still reads its own shard until it is released
+		assertEquals(6, first.getIndexReader().numDocs());
+		assertEquals(1, before.get(1).getRefCount());
+		manager.release(first);
+		assertEquals(0, before.get(1).getRefCount());
+		assertEquals(1, before.get(0).getRefCount());
+
+		manager.release(second);
+		manager.close();
+		for(IndexReader reader : after) {
+			assertEquals(0, reader.getRefCount());
+		}
+	}
+
+	@Test
+	public void aFailedRefreshKeepsNoReferences() throws IOException {
+		ShardedSearcherManager manager =
+			new ShardedSearcherManager(shards, factory);
+		IndexSearcher current = manager.acquire();
+		List<IndexReader> readers = shardReaders(current);
+		manager.release(current);
+
+		add(0);
+		factory.failing = true;
+		try {
+			manager.maybeRefresh();
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+		assertEquals(0, factory.lastReader.getRefCount());
+		// the reopened shard is closed, the others are only the current one's
+		assertEquals(0, factory.lastShards.get(0).getRefCount());
+		for(IndexReader reader : readers) {
+			assertEquals(1, reader.getRefCount());
+		}
+
+		factory.failing = false;
+		assertTrue(manager.maybeRefresh());
+		current = manager.acquire();
+		assertEquals(7, current.getIndexReader().numDocs());
+		manager.release(current);
+		manager.close();
+	}
+
+	@Test
+	public void aFailedFirstSearcherClosesTheShards() throws IOException {
+		factory.failing = true;
+		try {
+			new ShardedSearcherManager(shards, factory);
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+		assertEquals(0, factory.lastReader.getRefCount());
+		for(IndexReader reader : factory.lastShards) {
+			assertEquals(0, reader.getRefCount());
+		}
+	}
+
+	private void add(int shard) throws IOException {
+		Document doc = new Document();
+		doc.add(new StringField("shard", "" + shard, Field.Store.NO));
+		writers[shard].addDocument(doc);
+		writers[shard].commit();
+	}
+
+	private static List<IndexReader> shardReaders(IndexSearcher searcher) {
+		return shardReaders(searcher.getIndexReader());
+	}
+
+	private static List<IndexReader> shardReaders(IndexReader reader) {
+		List<IndexReader> readers = new ArrayList<IndexReader>();
+		for(IndexReaderContext shard : reader.getContext().children()) {
+			readers.add(shard.reader());
+		}
+		return readers;
+	}
+
+	/* Fails to make searchers when told to, remembering the last reader
+	 * and its shards, which cannot be listed once it is closed.
+	 */
+	private static class FailingFactory extends SearcherFactory {
+
+		boolean failing;
+		IndexReader lastReader;
+		List<IndexReader> lastShards;
+
+		@Override
+		public IndexSearcher newSearcher(IndexReader reader) throws IOException {
+			lastReader = reader;
+			lastShards = shardReaders(reader);
+			if(failing) {
+				throw new IOException("no searcher");
+			}
+			return new IndexSearcher(reader);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/*
+ * The bound and counts of the term vector cache.
+ */
+public class TermVectorCacheTest {
+
+	private final Metrics metrics = new Metrics();
+
+	@Test
+	public void vectorsAreCachedForTheirGeneration() {
+		TermVectorCache cache = new TermVectorCache(100, metrics);
+		SparseVector vector = vector();
+		cache.put(1, 7, vector);
+
+		assertSame(vector, cache.get(1, 7));
+		assertNull(cache.get(2, 7));
+		assertNull(cache.get(1, 8));
+		cache.clear();
+		assertNull(cache.get(1, 7));
+
+		assertEquals(1, statistic("termVectorCache.hits"));
+		assertEquals(3, statistic("termVectorCache.misses"));
+	}
+
+	@Test
+	public void evictsATenthPastTheBound() {
+		TermVectorCache cache = new TermVectorCache(100, metrics);
+		for(int doc = 0; doc < 100; doc++) {
+			cache.put(1, doc, vector());
+		}
+		assertEquals(100, cached(cache, 100));
+		assertEquals(0, statistic("termVectorCache.evictions"));
+
+		cache.put(1, 100, vector());
+		assertEquals(90, cached(cache, 101));
+		assertEquals(11, statistic("termVectorCache.evictions"));
+
+		// never more than the bound, and every eviction counted
+		for(int doc = 101; doc < 1000; doc++) {
+			cache.put(1, doc, vector());
+			int cached = cached(cache, doc + 1);
+			assertTrue(cached <= 100 && cached >= 90);
+		}
+		assertEquals(1000 - cached(cache, 1000),
+			statistic("termVectorCache.evictions"));
+	}
+
+	@Test
+	public void countsEveryLookupFromManyThreads() throws InterruptedException {
+		final TermVectorCache cache = new TermVectorCache(500, metrics);
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int t = 0; t < 4; t++) {
+			final Random random = new Random(t);
+			threads.add(new Thread() {
+				public void run() {
+					for(int i = 0; i < 20000; i++) {
+						int doc = random.nextInt(1000);
+						if(cache.get(1, doc) == null) {
+							cache.put(1, doc, vector());
+						}
+					}
+				}
+			});
+		}
+		for(Thread thread : threads) {
+			thread.start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(4 * 20000, statistic("termVectorCache.hits")
+			+ statistic("termVectorCache.misses"));
+		assertTrue(statistic("termVectorCache.evictions") > 0);
+	}
+
+	// How many of the first docs of generation 1 are cached
+	private static int cached(TermVectorCache cache, int docs) {
+		int cached = 0;
+		for(int doc = 0; doc < docs; doc++) {
+			if(cache.get(1, doc) != null) {
+				cached++;
+			}
+		}
+		return cached;
+	}
+
+	private long statistic(String name) {
+		Long value = metrics.getIndexStatistics().get(name);
+		return value != null ? value : 0;
+	}
+
+	private static SparseVector vector() {
+		return new SparseVector(new int[] {1}, new float[] {1});
+	}
+}
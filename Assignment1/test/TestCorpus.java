@@ -0,0 +1,154 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * A small generated corpus for the tests that run whole searches: a
+ * tweets file in the input_tweets.txt format, with ids growing with time,
+ * and a queries file in the test_queries.txt format. Words are drawn
+ * unevenly from a short list, so queries match many tweets with varied
+ * scores, and a numbered word per tweet gives a vocabulary larger than
+ * the 100 words the vocabulary file prints.
+ */
+public class TestCorpus {
+
+	static final String[] WORDS = { "super", "bowl", "packers", "steelers",
+		"game", "watch", "party", "egypt", "protest", "cairo", "news", "bbc",
+		"world", "service", "cuts", "staff", "music", "song", "album", "love",
+		"snow", "storm", "weather", "school", "phone", "apple", "android",
+		"coffee", "morning", "happy", "day", "night", "team", "win", "fans" };
+
+	// The first tweet id, in February 2011 like the TREC tweets
+	static final long FIRST_ID = 34000000000000000L;
+
+	final File tweetsFile;
+	final File queriesFile;
+	final List<Long> ids = new ArrayList<Long>();
+	final List<String> texts = new ArrayList<String>();
+	final List<String> titles = new ArrayList<String>();
+	final List<Long> queryTweetIds = new ArrayList<Long>();
+
+	private final TemporaryFolder folder;
+
+	TestCorpus(TemporaryFolder folder, int tweets, int topics, long seed)
+			throws IOException {
+		this.folder = folder;
+		Random random = new Random(seed);
+
+		long id = FIRST_ID;
+		for(int i = 0; i < tweets; i++) {
+			id += 1 + random.nextInt(1 << 24);
+			ids.add(id);
+			texts.add(text(random));
+		}
+
+		for(int i = 0; i < topics; i++) {
+			titles.add(word(random) + " " + word(random));
+			// the first topic is asked after every tweet
+			queryTweetIds.add(i == 0 ? id : ids.get(random.nextInt(tweets)));
+		}
+
+		tweetsFile = folder.newFile();
+		StringBuilder lines = new StringBuilder();
+		for(int i = 0; i < tweets; i++) {
+			lines.append(ids.get(i)).append('\t').append(texts.get(i)).append('\n');
+		}
+		write(tweetsFile, lines.toString());
+
+		queriesFile = folder.newFile();
+		StringBuilder queries = new StringBuilder();
+		for(int i = 0; i < topics; i++) {
+			queries.append("<top>\n")
+				.append("<num> Number: ").append(queryId(i)).append(" </num>\n")
+				.append("<title> ").append(titles.get(i)).append(" </title>\n")
+				.append("<querytime> Tue Feb 08 12:30:27 +0000 2011 </querytime>\n")
+				.append("<querytweettime> ").append(queryTweetIds.get(i))
+				.append(" </querytweettime>\n")
+				.append("</top>\n\n");
+		}
+		write(queriesFile, queries.toString());
+	}
+
+	// The query number of the i-th topic, such as MB001
+	static String queryId(int i) {
+		return String.format("MB%03d", i + 1);
+	}
+
+	/* A processor over the corpus, with the vocabulary and results files
+	 * in the temporary folder and every other setting at its default.
+	 */
+	QueryProcessor processor(QueryProcessor.AnalyzerChoice ac)
+			throws IOException {
+		return new QueryProcessor(tweetsFile.getPath(),
+								  queriesFile.getPath(),
+								  folder.newFile().getPath(),
+								  folder.newFile().getPath(),
+								  false,
+								  new Double[3],
+								  null,
+								  false,
+								  null,
+								  ac);
+	}
+
+	// The default scoring settings, changed by the arguments
+	static ScoringOptions options(boolean feedback, boolean hashtags,
+								 RankTool rankTool) {
+		return new ScoringOptions(feedback, 1, 5.5, 0, 5, hashtags, 0.1f,
+			rankTool);
+	}
+
+	private static String text(Random random) {
+		StringBuilder text = new StringBuilder();
+		int words = 3 + random.nextInt(8);
+		for(int i = 0; i < words; i++) {
+			if(i > 0) {
+				text.append(' ');
+			}
+			if(random.nextInt(6) == 0) {
+				text.append('#');
+			}
+			text.append(word(random));
+		}
+		return text.append(" w").append(random.nextInt(500)).toString();
+	}
+
+	// Early words are much more common than late ones
+	private static String word(Random random) {
+		double skewed = Math.pow(random.nextDouble(), 2);
+		return WORDS[(int) (skewed * WORDS.length)];
+	}
+
+	// Fails unless the runs rank the same tweets with the same scores
+	static void assertSameRun(TrecRun expected, TrecRun actual) {
+		assertEquals(expected.size(), actual.size());
+		for(int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.topic(i), actual.topic(i));
+			assertArrayEquals("topic " + expected.topic(i), 
+				expected.ids(i), actual.ids(i));
+			assertArrayEquals("topic " + expected.topic(i), 
+				expected.scores(i), actual.scores(i), 0f);
+		}
+	}
+
+	static void write(File file, String text) throws IOException {
+		Writer out = new OutputStreamWriter(new FileOutputStream(file),
+			StandardCharsets.UTF_8);
+		try {
+			out.write(text);
+		} finally {
+			out.close();
+		}
+	}
+}
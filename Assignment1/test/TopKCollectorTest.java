@@ -0,0 +1,125 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+
+@SuppressWarnings("deprecation")
+public class TopKCollectorTest {
+
+	@Test
+	public void tiesGoToTheLowerDocId() {
+		TopKCollector collector = new TopKCollector(3);
+		for(int doc : new int[] {9, 4, 7, 1, 8, 2}) {
+			collector.insert(doc, 1f);
+		}
+		collector.insert(5, 2f);
+
+		RankedDocs ranked = collector.toRankedDocs();
+		assertArrayEquals(new int[] {5, 1, 2}, ranked.docs);
+		assertArrayEquals(new float[] {2f, 1f, 1f}, ranked.scores, 0f);
+	}
+
+	@Test
+	public void keepsTheBestKInOrder() {
+		Random random = new Random(42);
+		final float[] scores = new float[5000];
+		Integer[] order = new Integer[scores.length];
+		TopKCollector collector = new TopKCollector(100);
+
+		for(int doc = 0; doc < scores.length; doc++) {
+			// few distinct scores, so there are many ties
+			scores[doc] = random.nextInt(50);
+			order[doc] = doc;
+		}
+		for(int doc : shuffled(scores.length, random)) {
+			collector.insert(doc, scores[doc]);
+		}
+
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				int byScore = Float.compare(scores[b], scores[a]);
+				return byScore != 0 ? byScore : a - b;
+			}
+		});
+		RankedDocs ranked = collector.toRankedDocs();
+		assertEquals(100, ranked.length());
+		for(int i = 0; i < 100; i++) {
+			assertEquals(order[i].intValue(), ranked.docs[i]);
+		}
+	}
+
+	@Test
+	public void ranksLikeLucene() throws Exception {
+		RAMDirectory directory = new RAMDirectory();
+		IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(
+			Version.LUCENE_40, new StandardAnalyzer(Version.LUCENE_40)));
+		Random random = new Random(7);
+		for(int i = 0; i < 500; i++) {
+			Document doc = new Document();
+			doc.add(new TextField("tweet", random.nextBoolean() ? 
+				"super bowl" : "super bowl super", Field.Store.NO));
+			writer.addDocument(doc);
+			// several segments, so doc bases are used
+			if(i % 100 == 99) {
+				writer.commit();
+			}
+		}
+		writer.close();
+
+		DirectoryReader reader = DirectoryReader.open(directory);
+		IndexSearcher searcher = new IndexSearcher(reader);
+		TopKCollector collector = new TopKCollector(50);
+		Query[] queries = { new TermQuery(new Term("tweet", "super")),
+			new ConstantScoreQuery(new TermQuery(new Term("tweet", "bowl"))) };
+
+		for(Query query : queries) {
+			TopDocs expected = searcher.search(query, 50);
+			collector.reset();
+			searcher.search(query, collector);
+			RankedDocs ranked = collector.toRankedDocs();
+
+			assertEquals(expected.scoreDocs.length, ranked.length());
+			for(int i = 0; i < ranked.length(); i++) {
+				ScoreDoc hit = expected.scoreDocs[i];
+				assertEquals(hit.doc, ranked.docs[i]);
+				assertEquals(hit.score, ranked.scores[i], 0f);
+			}
+			assertEquals(expected.totalHits, collector.getTotalHits());
+		}
+		reader.close();
+	}
+
+	private static int[] shuffled(int n, Random random) {
+		int[] values = new int[n];
+		for(int i = 0; i < n; i++) {
+			values[i] = i;
+		}
+		for(int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = values[i];
+			values[i] = values[j];
+			values[j] = swap;
+		}
+		return values;
+	}
+}
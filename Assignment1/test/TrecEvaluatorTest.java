@@ -0,0 +1,55 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+import org.junit.Test;
+
+/*
+ * Compares TrecEvaluator with trec_eval 8.1 on the run in test/data. The
+ * report starts with exactly what trec_eval -o prints, and bpref is the
+ * one trec_eval -a gives.
+ */
+public class TrecEvaluatorTest {
+
+	private static final String DATA = "test/data/";
+
+	@Test
+	public void reportMatchesTrecEval() throws IOException {
+		String expected = read("trec_eval-o.txt");
+		String report = evaluate().toString();
+
+		// trec_eval's report ends after R-Precision, ours goes on
+		assertTrue("Report differs from trec_eval -o:\n" + report,
+			report.startsWith(expected.substring(0, expected.length() - 1)));
+		assertEquals('\n', report.charAt(expected.length() - 1));
+	}
+
+	@Test
+	public void bprefMatchesTrecEval() throws IOException {
+		String[] fields = read("trec_eval-a-bpref.txt").trim().split("\\s+");
+		assertEquals("bpref", fields[0]);
+		assertEquals(fields[2], String.format(Locale.ROOT, "%.4f", 
+			evaluate().bpref()));
+	}
+
+	@Test
+	public void skipsTopicsWithoutJudgments() throws IOException {
+		// topic 9 is not judged and topic 8 not searched
+		assertEquals(7, evaluate().numQueries());
+	}
+
+	private static TrecEvaluator.Result evaluate() throws IOException {
+		return new TrecEvaluator(DATA + "qrels.txt")
+			.evaluate(TrecRun.read(DATA + "run.txt"));
+	}
+
+	private static String read(String file) throws IOException {
+		return new String(Files.readAllBytes(Paths.get(DATA + file)),
+			StandardCharsets.UTF_8);
+	}
+}
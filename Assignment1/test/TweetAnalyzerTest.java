@@ -0,0 +1,147 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+import org.tartarus.snowball.ext.PorterStemmer;
+
+/*
+ * The terms TweetAnalyzer makes of tweet text, and the stems of its
+ * cached stemmer against stemming every term.
+ */
+@SuppressWarnings("deprecation")
+public class TweetAnalyzerTest {
+
+	private final Analyzer analyzer = new TweetAnalyzer(Version.LUCENE_40);
+
+	@Test
+	public void emoticonsStandingAloneBecomeWords() throws IOException {
+		assertEquals(terms("great game emosmile emoheart emotongue"),
+			terms("great game :) <3 :p"));
+		assertEquals(terms("emosmile emofrown emocry emowink emolaugh"),
+			terms(":-)\t:[ :'(\n;-) :D"));
+		assertEquals(terms("emosmile emosmile"), terms(":) :)"));
+	}
+
+	@Test
+	public void emoticonsInsideOtherTextAreLeftAlone() throws IOException {
+		assertEquals(Arrays.asList("300", "fan"), terms("<300 fans"));
+		assertEquals(Arrays.asList("pizza"), terms(":pizza"));
+		// a colon between letters is part of the word
+		assertEquals(Arrays.asList("lol:d", "dinner"), terms("lol:D dinner"));
+		assertEquals(Arrays.asList("ok"), terms("ok:)"));
+	}
+
+	@Test
+	public void mappedEmoticonsKeepTheirOffsets() throws IOException {
+		TokenStream stream = analyzer.tokenStream("tweet", "hi :) <3");
+		OffsetAttribute offsets = stream.addAttribute(OffsetAttribute.class);
+		List<String> found = new ArrayList<String>();
+		try {
+			stream.reset();
+			while(stream.incrementToken()) {
+				found.add(offsets.startOffset() + "-" + offsets.endOffset());
+			}
+			stream.end();
+		} finally {
+			stream.close();
+		}
+		assertEquals(Arrays.asList("0-2", "3-5", "6-8"), found);
+	}
+
+	@Test
+	public void normalizesTweetText() throws IOException {
+		// stretched words, stop words, possessives and stems
+		assertEquals(terms("soo good"), terms("Soooooo GOOOOOD"));
+		assertEquals(Arrays.asList("2000000"), terms("2000000"));
+		assertEquals(Arrays.asList("packer", "fan", "cheer"),
+			terms("RT @packers fan's cheering"));
+		// links and email addresses are dropped
+		assertEquals(Arrays.asList("new"),
+			terms("news http://t.co/abc123 me@example.com"));
+	}
+
+	@Test
+	public void cachedStemsAreTheStemmersStems() throws IOException {
+		Analyzer cached = new Analyzer() {
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName,
+															 Reader reader) {
+				Tokenizer source = new WhitespaceTokenizer(Version.LUCENE_40,
+					reader);
+				return new TokenStreamComponents(source,
+					new CachedStemFilter(source));
+			}
+		};
+
+		// far more distinct terms than the cache holds, among common ones
+		Random random = new Random(23);
+		String[] common = { "running", "games", "watched", "happily", "us",
+			"fans", "connection", "generalizations", "a" };
+		for(int text = 0; text < 20; text++) {
+			StringBuilder words = new StringBuilder();
+			for(int i = 0; i < 5000; i++) {
+				if(random.nextBoolean()) {
+					words.append(common[random.nextInt(common.length)]);
+				} else {
+					for(int c = 0; c < 2 + random.nextInt(9); c++) {
+						words.append((char) ('a' + random.nextInt(26)));
+					}
+					words.append(new String[] {"", "s", "ing", "ed", "ies",
+						"ation"}[random.nextInt(6)]);
+				}
+				words.append(' ');
+			}
+
+			List<String> expected = new ArrayList<String>();
+			for(String word : words.toString().split(" ")) {
+				expected.add(stem(word));
+			}
+			assertEquals(expected, terms(cached, words.toString()));
+		}
+	}
+
+	// The stem of one word, made afresh; two letter words are kept
+	private static String stem(String word) {
+		if(word.length() <= 2) {
+			return word;
+		}
+		PorterStemmer stemmer = new PorterStemmer();
+		stemmer.setCurrent(word);
+		stemmer.stem();
+		return stemmer.getCurrent();
+	}
+
+	private List<String> terms(String text) throws IOException {
+		return terms(analyzer, text);
+	}
+
+	private static List<String> terms(Analyzer analyzer, String text)
+			throws IOException {
+		List<String> terms = new ArrayList<String>();
+		TokenStream stream = analyzer.tokenStream("tweet", text);
+		CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+		try {
+			stream.reset();
+			while(stream.incrementToken()) {
+				terms.add(term.toString());
+			}
+			stream.end();
+		} finally {
+			stream.close();
+		}
+		return terms;
+	}
+}
@@ -0,0 +1,143 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.Version;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * The indexing pipeline against adding the tweets one by one on a single
+ * thread: however the lines are spread over the workers, the index holds
+ * the same tweets, terms and postings.
+ */
+@SuppressWarnings("deprecation")
+public class TweetIndexerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_40);
+
+	@Test
+	public void buildsTheSameIndexAsASingleThread() throws IOException {
+		TestCorpus corpus = new TestCorpus(folder, 3000, 1, 2);
+		String expected = describe(indexOneByOne(corpus.tweetsFile));
+
+		for(int threads : new int[] {1, 4}) {
+			Directory directory = new RAMDirectory();
+			IndexWriter writer = writer(directory);
+			long added = new TweetIndexer(writer, threads)
+				.index(corpus.tweetsFile.getPath());
+			writer.close();
+
+			assertEquals(3000, added);
+			assertEquals(threads + " threads", expected, describe(directory));
+		}
+	}
+
+	@Test
+	public void countsOnlyTheTweetsAdded() throws IOException {
+		File tweets = folder.newFile();
+		TestCorpus.write(tweets, "1\tfirst tweet\n"
+			+ "not a tweet\n"
+			+ "x2\tbad id\n"
+			+ "3\t\n"
+			+ "\n"
+			+ "4\tsecond #tweet\r\n"
+			+ "5\tthird\ttweet");
+
+		Directory directory = new RAMDirectory();
+		IndexWriter writer = writer(directory);
+		long added = new TweetIndexer(writer, 2).index(tweets.getPath());
+		writer.close();
+
+		assertEquals(3, added);
+		assertEquals(describe(indexOneByOne(tweets)), describe(directory));
+	}
+
+	// The tweets added on this thread in file order, as the baseline did
+	private Directory indexOneByOne(File tweets) throws IOException {
+		Directory directory = new RAMDirectory();
+		IndexWriter writer = writer(directory);
+		TweetDocument tweet = new TweetDocument(analyzer);
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+			new FileInputStream(tweets), StandardCharsets.UTF_8));
+		try {
+			String line;
+			while((line = in.readLine()) != null) {
+				Document doc = tweet.set(line);
+				if(doc != null) {
+					writer.addDocument(doc);
+				}
+			}
+		} finally {
+			in.close();
+			writer.close();
+		}
+		return directory;
+	}
+
+	private IndexWriter writer(Directory directory) throws IOException {
+		return new IndexWriter(directory,
+			new IndexWriterConfig(Version.LUCENE_40, analyzer));
+	}
+
+	/* The index as text, independent of doc ids: each tweet's id, stored
+	 * text and signature in id order, then every term of the searched
+	 * fields with its document and total frequencies.
+	 */
+	private static String describe(Directory directory) throws IOException {
+		IndexReader reader = DirectoryReader.open(directory);
+		try {
+			StringBuilder text = new StringBuilder();
+			DocValueLookup ids = DocValueLookup.load(reader, "id");
+			DocValueLookup signatures = DocValueLookup.load(reader, "simhash");
+			Map<Long, String> tweets = new TreeMap<Long, String>();
+			for(int doc = 0; doc < reader.maxDoc(); doc++) {
+				tweets.put(ids.get(doc), reader.document(doc)
+					.getBinaryValue("tweet").utf8ToString() + " "
+					+ signatures.get(doc));
+			}
+			text.append(tweets).append('\n');
+
+			for(String field : new String[] {"tweet", "Hashtags"}) {
+				Terms terms = MultiFields.getTerms(reader, field);
+				if(terms == null) {
+					continue;
+				}
+				TermsEnum iterator = terms.iterator(null);
+				BytesRef term;
+				while((term = iterator.next()) != null) {
+					text.append(field).append(':').append(term.utf8ToString())
+						.append(' ').append(iterator.docFreq())
+						.append(' ').append(iterator.totalTermFreq()).append('\n');
+				}
+			}
+			return text.toString();
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,190 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * Tweets added to an open processor: pushed, posted to the server or
+ * appended to the tweets file, they are found once the searcher is
+ * refreshed and not before.
+ */
+public class TweetIngesterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private TestCorpus corpus;
+	private QueryProcessor processor;
+	private long nextId;
+
+	@Before
+	public void open() throws IOException {
+		corpus = new TestCorpus(folder, 1000, 1, 7);
+		processor = corpus.processor(QueryProcessor.AnalyzerChoice.STANDARD);
+		processor.setNearRealTime(true);
+		processor.open();
+		nextId = corpus.ids.get(corpus.ids.size() - 1) + 1;
+	}
+
+	@After
+	public void close() {
+		processor.close();
+	}
+
+	@Test
+	public void pushedTweetsAreFoundAfterARefresh() throws Exception {
+		// refreshed by hand only
+		TweetIngester ingester = processor.startIngestion(3600000, false);
+
+		assertEquals(1, ingester.add(Arrays.asList(nextId + "\tzyzzyva sighted",
+			"not a tweet", "")));
+		assertArrayEquals(new long[0], find("zyzzyva"));
+		ingester.refresh();
+		assertArrayEquals(new long[] {nextId}, find("zyzzyva"));
+	}
+
+	@Test
+	public void aTweetAddedAgainReplacesTheFirst() throws Exception {
+		TweetIngester ingester = processor.startIngestion(3600000, false);
+		long indexed = corpus.ids.get(0);
+
+		ingester.add(Collections.singletonList(indexed + "\tzyzzyva"));
+		ingester.add(Collections.singletonList(nextId + "\tquokka"));
+		ingester.add(Collections.singletonList(nextId + "\tquokka again"));
+		ingester.refresh();
+
+		assertArrayEquals(new long[] {indexed}, find("zyzzyva"));
+		assertArrayEquals(new long[] {nextId}, find("quokka"));
+		// the first text of the tweet is gone
+		String word = corpus.texts.get(0).split(" ")[0].replace("#", "");
+		for(long id : find(word)) {
+			assertNotEquals(indexed, id);
+		}
+	}
+
+	@Test
+	public void appendedLinesAreFoundWhenWhole() throws Exception {
+		processor.startIngestion(20, true);
+
+		append(nextId + "\tzyzzyva\n" + (nextId + 1) + "\tquok");
+		waitFor("zyzzyva", new long[] {nextId});
+		// the unfinished line is left for a later poll
+		assertArrayEquals(new long[0], find("quokka"));
+
+		append("ka\n");
+		waitFor("quokka", new long[] {nextId + 1});
+	}
+
+	@Test
+	public void postedTweetsAreFoundAfterARefresh() throws Exception {
+		TweetIngester ingester = processor.startIngestion(3600000, false);
+		SearchServer server = new SearchServer(processor);
+		server.setIngester(ingester);
+		server.start(0, 2);
+		try {
+			SearchServerTest.Response response = SearchServerTest.request(server,
+				"POST", "/ingest", nextId + "\tzyzzyva\nnot a tweet\n");
+			assertEquals(200, response.status);
+			assertEquals("Added 1 tweets\n", response.body);
+			assertEquals("", SearchServerTest.request(server, "GET",
+				"/search?q=zyzzyva", null).body);
+
+			ingester.refresh();
+			assertTrue(SearchServerTest.request(server, "GET",
+				"/search?q=zyzzyva", null).body.startsWith("1\t" + nextId + "\t"));
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void ingestingWhenIngestionIsOffIsABadRequest() throws IOException {
+		SearchServer server = new SearchServer(processor);
+		server.start(0, 1);
+		try {
+			assertEquals(400, SearchServerTest.request(server, "POST", "/ingest",
+				nextId + "\tzyzzyva\n").status);
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void onlyTheLoopbackAddressCanIngest() throws Exception {
+		InetAddress address = nonLoopbackAddress();
+		assumeNotNull(address);
+
+		SearchServer server = new SearchServer(processor);
+		server.setIngester(processor.startIngestion(3600000, false));
+		server.start(address.getHostAddress(), 0, 1);
+		try {
+			URL ingest = new URL("http", address.getHostAddress(),
+				server.getAddress().getPort(), "/ingest");
+			assertEquals(403, SearchServerTest.request(ingest, "POST",
+				nextId + "\tzyzzyva\n").status);
+			// searching from there is still allowed
+			assertEquals(200, SearchServerTest.request(new URL("http",
+				address.getHostAddress(), server.getAddress().getPort(),
+				"/search?q=bowl"), "GET", null).status);
+		} finally {
+			server.stop();
+		}
+	}
+
+	// The ids of every tweet found for the query, best first
+	private long[] find(String text) throws Exception {
+		return processor.rankText(text, null, processor.getScoringOptions()).ids;
+	}
+
+	// Waits up to ten seconds for the query to find just the given tweets
+	private void waitFor(String text, long[] ids) throws Exception {
+		long deadline = System.currentTimeMillis() + 10000;
+		while(!Arrays.equals(ids, find(text))
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertArrayEquals(ids, find(text));
+	}
+
+	private void append(String text) throws IOException {
+		Files.write(corpus.tweetsFile.toPath(),
+			text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+	}
+
+	// An address of this machine other than loopback, or null
+	private static InetAddress nonLoopbackAddress() throws IOException {
+		Enumeration<NetworkInterface> interfaces =
+			NetworkInterface.getNetworkInterfaces();
+		while(interfaces.hasMoreElements()) {
+			NetworkInterface network = interfaces.nextElement();
+			if(!network.isUp() || network.isLoopback()) {
+				continue;
+			}
+			for(InetAddress address : Collections.list(network.getInetAddresses())) {
+				if(address instanceof Inet4Address) {
+					return address;
+				}
+			}
+		}
+		return null;
+	}
+}
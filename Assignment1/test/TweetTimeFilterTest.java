@@ -0,0 +1,162 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * The time filter against checking every tweet's id, at the ids where a
+ * segment stops being skipped or starts being taken whole.
+ */
+@SuppressWarnings("deprecation")
+public class TweetTimeFilterTest {
+
+	private final Random random = new Random(18);
+	private final List<Long> ids = new ArrayList<Long>();
+
+	private IndexWriter writer;
+	private DirectoryReader reader;
+	private IndexSearcher searcher;
+
+	@Before
+	public void index() throws IOException {
+		Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_40);
+		IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_40,
+			analyzer);
+		config.setMergePolicy(NoMergePolicy.INSTANCE);
+		writer = new IndexWriter(new RAMDirectory(), config);
+
+		// tweets in time order, committed in segments of 150
+		TweetDocument tweet = new TweetDocument(analyzer);
+		long id = TestCorpus.FIRST_ID;
+		for(int i = 0; i < 900; i++) {
+			id += 1 + random.nextInt(1000);
+			ids.add(id);
+			writer.addDocument(tweet.set(id + "\tword " + i));
+			if(i % 150 == 149) {
+				writer.commit();
+			}
+		}
+		// an edited early tweet leaves a deleted copy in the first segment
+		// and a segment of its own
+		writer.updateDocument(TweetDocument.idTerm(ids.get(10)),
+			tweet.set(ids.get(10) + "\tedited"));
+		writer.commit();
+
+		reader = DirectoryReader.open(writer, true);
+		searcher = new IndexSearcher(reader);
+		assertEquals(7, reader.leaves().size());
+	}
+
+	@After
+	public void close() throws IOException {
+		reader.close();
+		writer.close();
+	}
+
+	@Test
+	public void keepsTheTweetsUpToTheLastIdAtEverySegmentBoundary()
+			throws IOException {
+		for(long[] bounds : segmentBounds()) {
+			for(long last : new long[] {bounds[0] - 1, bounds[0], bounds[0] + 1,
+					bounds[1] - 1, bounds[1], bounds[1] + 1}) {
+				TweetTimeFilter filter = new TweetTimeFilter(last);
+				assertEquals("id <= " + last, upTo(last),
+					found(new MatchAllDocsQuery(), filter));
+
+				int skipped = 0;
+				int whole = 0;
+				for(long[] segment : segmentBounds()) {
+					if(segment[0] > last) {
+						skipped++;
+					} else if(segment[1] <= last) {
+						whole++;
+					}
+				}
+				assertEquals(skipped, filter.skippedSegments());
+				assertEquals(whole, filter.wholeSegments());
+				assertEquals(reader.leaves().size() - skipped - whole,
+					filter.partialSegments());
+			}
+		}
+	}
+
+	@Test
+	public void agreesWithARangeQueryOnTheIds() throws IOException {
+		for(int i = 0; i < 50; i++) {
+			long last = ids.get(random.nextInt(ids.size()))
+				+ random.nextInt(3) - 1;
+			Query range = NumericRangeQuery.newLongRange("id", null, last,
+				true, true);
+			assertEquals(found(range, null),
+				found(new MatchAllDocsQuery(), new TweetTimeFilter(last)));
+		}
+		assertEquals(upTo(ids.get(0)), found(NumericRangeQuery.newLongRange(
+			"id", null, ids.get(0), true, true), null));
+	}
+
+	// The ids of the live tweets up to last, checked one by one
+	private TreeSet<Long> upTo(long last) throws IOException {
+		TreeSet<Long> expected = new TreeSet<Long>();
+		NumericDocValues values = MultiDocValues.getNumericValues(reader, "id");
+		Bits live = MultiFields.getLiveDocs(reader);
+		for(int doc = 0; doc < reader.maxDoc(); doc++) {
+			if((live == null || live.get(doc)) && values.get(doc) <= last) {
+				expected.add(values.get(doc));
+			}
+		}
+		return expected;
+	}
+
+	private TreeSet<Long> found(Query query, TweetTimeFilter filter)
+			throws IOException {
+		DocValueLookup lookup = DocValueLookup.load(reader, "id");
+		TreeSet<Long> found = new TreeSet<Long>();
+		for(ScoreDoc hit : searcher.search(query, filter, reader.maxDoc())
+				.scoreDocs) {
+			assertTrue(found.add(lookup.get(hit.doc)));
+		}
+		return found;
+	}
+
+	// The smallest and largest id of each segment, deleted tweets included
+	private List<long[]> segmentBounds() throws IOException {
+		List<long[]> bounds = new ArrayList<long[]>();
+		for(AtomicReaderContext leaf : reader.leaves()) {
+			NumericDocValues values = leaf.reader().getNumericDocValues("id");
+			long min = Long.MAX_VALUE;
+			long max = Long.MIN_VALUE;
+			for(int doc = 0; doc < leaf.reader().maxDoc(); doc++) {
+				min = Math.min(min, values.get(doc));
+				max = Math.max(max, values.get(doc));
+			}
+			bounds.add(new long[] {min, max});
+		}
+		return bounds;
+	}
+}